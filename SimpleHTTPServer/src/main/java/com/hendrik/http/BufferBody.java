@@ -0,0 +1,69 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A response body whose bytes are held in a buffer
+ *
+ * @author Hendrik Tjabben
+ */
+public class BufferBody extends ResponseBody {
+
+    /**
+     * The body's remaining bytes
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructor for a body consisting of a byte array
+     *
+     * @param data The body's bytes
+     */
+    public BufferBody(final byte[] data) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Constructor for a body consisting of a buffer's remaining bytes.
+     * The buffer's position is advanced while the body is written
+     *
+     * @param buffer The buffer holding the body's bytes
+     */
+    public BufferBody(final ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Getter for the buffer holding the body's remaining bytes
+     *
+     * @return The body's buffer
+     */
+    public ByteBuffer getBuffer() {
+        return this.buffer;
+    }
+
+    @Override
+    public long getLength() {
+        return this.buffer.remaining();
+    }
+
+    @Override
+    public boolean writeTo(final WritableByteChannel channel) throws IOException {
+        channel.write(this.buffer);
+        return !this.buffer.hasRemaining();
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        if (this.buffer.hasArray() && this.buffer.arrayOffset() == 0 && this.buffer.position() == 0
+            && this.buffer.remaining() == this.buffer.array().length) {
+            return this.buffer.array();
+        }
+
+        byte[] data = new byte[this.buffer.remaining()];
+        this.buffer.duplicate().get(data);
+        return data;
+    }
+}
@@ -0,0 +1,135 @@
+package com.hendrik.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A range of bytes of a resource as requested with the Range header field.
+ * This implementation is based on https://tools.ietf.org/html/rfc7233#section-2.1
+ *
+ * @author Hendrik Tjabben
+ */
+public class ByteRange {
+
+    /**
+     * The maximum number of ranges that are served for a single request.
+     * Requests with more ranges are answered with the whole resource
+     */
+    public static final int MAX_RANGES = 16;
+
+    /**
+     * The index of the range's first byte
+     */
+    private final long first;
+
+    /**
+     * The index of the range's last byte
+     */
+    private final long last;
+
+    /**
+     * Constructor for a new byte range
+     *
+     * @param first The index of the range's first byte
+     * @param last The index of the range's last byte
+     */
+    public ByteRange(final long first, final long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Getter for the index of the range's first byte
+     *
+     * @return The first byte's index
+     */
+    public long getFirst() {
+        return this.first;
+    }
+
+    /**
+     * Getter for the index of the range's last byte
+     *
+     * @return The last byte's index
+     */
+    public long getLast() {
+        return this.last;
+    }
+
+    /**
+     * Getter for the number of bytes in this range
+     *
+     * @return The range's length
+     */
+    public long getLength() {
+        return this.last - this.first + 1;
+    }
+
+    /**
+     * Creates the value of a Content-Range header field describing this range
+     *
+     * @param completeLength The length of the whole resource
+     * @return The Content-Range value
+     */
+    public String toContentRange(final long completeLength) {
+        return "bytes " + this.first + "-" + this.last + "/" + completeLength;
+    }
+
+    /**
+     * Parses the value of a Range header field.
+     * Ranges that do not overlap the resource are left out, ranges that exceed it are shortened
+     *
+     * @param value The Range header field's value
+     * @param completeLength The length of the resource the ranges refer to
+     * @return The satisfiable ranges in the requested order. Empty if none of them is satisfiable.
+     *         null if the value is malformed or requests too many ranges, so the Range header field has to be ignored
+     */
+    public static List<ByteRange> parse(final String value, final long completeLength) {
+
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+
+        String[] specs = value.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<ByteRange>(specs.length);
+
+        for (String spec : specs) {
+            String trimmedSpec = spec.trim();
+            int dash = trimmedSpec.indexOf('-');
+
+            if (dash == -1) {
+                return null;
+            }
+
+            try {
+                if (dash == 0) {
+                    // A suffix range requests the last bytes of the resource
+                    long suffixLength = Long.parseLong(trimmedSpec.substring(1));
+                    if (suffixLength > 0 && completeLength > 0) {
+                        ranges.add(new ByteRange(Math.max(0, completeLength - suffixLength), completeLength - 1));
+                    }
+                    continue;
+                }
+
+                long first = Long.parseLong(trimmedSpec.substring(0, dash));
+                String lastString = trimmedSpec.substring(dash + 1);
+                long last = lastString.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastString);
+
+                if (first < 0 || last < first) {
+                    return null;
+                }
+                if (first < completeLength) {
+                    ranges.add(new ByteRange(first, Math.min(last, completeLength - 1)));
+                }
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+
+        return ranges;
+    }
+}
@@ -0,0 +1,280 @@
+package com.hendrik.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A response body of unknown length that is sent with the chunked transfer coding.
+ * The body's content is pulled from a {@link Source} while it is written, so it is generated step by step
+ * and never held in memory as a whole. At most one chunk is buffered at a time.
+ * Generating content may block, e.g. on file reads. Writers that must not block can write the chunks that are
+ * ready with {@link #writeFramedTo(WritableByteChannel)} and let another thread {@link #frameChunk()} the next one.
+ *
+ * This implementation is based on https://tools.ietf.org/html/rfc7230#section-4.1
+ *
+ * @author Hendrik Tjabben
+ */
+public class ChunkedBody extends ResponseBody {
+
+    /**
+     * The maximum number of content bytes a single chunk carries
+     */
+    public static final int CHUNK_SIZE = 8 * 1024;
+
+    /**
+     * The number of bytes a chunk's size line takes. The size is written as four hex digits, padded with zeros
+     */
+    private static final int SIZE_LINE_LENGTH = 6;
+
+    /**
+     * The last chunk and the empty trailer that end a chunked body
+     */
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Digits used to encode chunk sizes
+     */
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Generates the content of a chunked body piece by piece
+     */
+    public interface Source {
+
+        /**
+         * Generates the next piece of content
+         *
+         * @return The next piece. null if all content was generated
+         * @throws IOException Thrown if the content cannot be generated
+         */
+        byte[] next() throws IOException;
+
+        /**
+         * Releases resources held by the source. Called once, whether all content was generated or not
+         */
+        default void close() {
+        }
+    }
+
+    /**
+     * The source generating the content
+     */
+    private final Source source;
+
+    /**
+     * The framed chunk that is written next
+     */
+    private final ByteBuffer chunk;
+
+    /**
+     * A piece of content that did not fit into the previous chunk. null if there is none
+     */
+    private byte[] pending;
+
+    /**
+     * The index of the first byte of the pending piece that was not framed yet
+     */
+    private int pendingOffset;
+
+    /**
+     * Whether the last chunk was framed, so nothing is left to generate
+     */
+    private boolean finished;
+
+    /**
+     * Whether the source was closed
+     */
+    private boolean closed;
+
+    /**
+     * Constructor for a new chunked body
+     *
+     * @param source The source generating the body's content
+     */
+    public ChunkedBody(final Source source) {
+        this.source = source;
+        this.chunk = ByteBuffer.allocate(SIZE_LINE_LENGTH + CHUNK_SIZE + 2 + LAST_CHUNK.length);
+        this.chunk.limit(0);
+        this.finished = false;
+        this.closed = false;
+    }
+
+    /**
+     * Getter for the source generating the content.
+     * Meant for stages that transform the content before it is framed, e.g. compression
+     *
+     * @return The source
+     */
+    public Source getSource() {
+        return this.source;
+    }
+
+    /**
+     * The length of a chunked body is not known before it was generated
+     *
+     * @return -1
+     */
+    @Override
+    public long getLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean writeTo(final WritableByteChannel channel) throws IOException {
+
+        while (!writeFramedTo(channel)) {
+            if (!needsChunk()) {
+                return false;
+            }
+            frameNextChunk();
+        }
+        return true;
+    }
+
+    /**
+     * Writes the chunk that was framed already, or as much of it as the channel takes, without generating content
+     *
+     * @param channel The channel to write to
+     * @return True if the body was written completely, false if the channel did not take all bytes or the next chunk is needed
+     * @throws IOException Thrown if an I/O error happens while writing
+     */
+    public boolean writeFramedTo(final WritableByteChannel channel) throws IOException {
+
+        if (this.chunk.hasRemaining()) {
+            channel.write(this.chunk);
+            if (this.chunk.hasRemaining()) {
+                return false;
+            }
+        }
+
+        if (this.finished) {
+            close();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the framed chunk was written completely and content is left to generate
+     *
+     * @return True if the next chunk has to be framed before anything can be written
+     */
+    public boolean needsChunk() {
+        return !this.chunk.hasRemaining() && !this.finished;
+    }
+
+    /**
+     * Generates and frames the next chunk if it is needed
+     *
+     * @throws IOException Thrown if the content cannot be generated
+     */
+    public void frameChunk() throws IOException {
+        if (needsChunk()) {
+            frameNextChunk();
+        }
+    }
+
+    /**
+     * Generates content until a chunk is full or the source is exhausted, and frames it.
+     * When the source is exhausted, the last chunk is appended
+     *
+     * @throws IOException Thrown if the content cannot be generated
+     */
+    private void frameNextChunk() throws IOException {
+
+        this.chunk.clear();
+        this.chunk.position(SIZE_LINE_LENGTH);
+
+        while (this.chunk.position() < SIZE_LINE_LENGTH + CHUNK_SIZE) {
+            if (this.pending == null) {
+                this.pending = this.source.next();
+                this.pendingOffset = 0;
+                if (this.pending == null) {
+                    this.finished = true;
+                    break;
+                }
+            }
+
+            int count = Math.min(this.pending.length - this.pendingOffset, SIZE_LINE_LENGTH + CHUNK_SIZE - this.chunk.position());
+            this.chunk.put(this.pending, this.pendingOffset, count);
+            this.pendingOffset += count;
+            if (this.pendingOffset == this.pending.length) {
+                this.pending = null;
+            }
+        }
+
+        int size = this.chunk.position() - SIZE_LINE_LENGTH;
+        int start = 0;
+
+        if (size > 0) {
+            for (int i = 0; i < 4; i++) {
+                this.chunk.put(i, HEX_DIGITS[(size >> (12 - 4 * i)) & 0xF]);
+            }
+            this.chunk.put(4, (byte) '\r');
+            this.chunk.put(5, (byte) '\n');
+            this.chunk.put((byte) '\r');
+            this.chunk.put((byte) '\n');
+        } else {
+            start = SIZE_LINE_LENGTH;
+        }
+
+        if (this.finished) {
+            this.chunk.put(LAST_CHUNK);
+        }
+
+        this.chunk.flip();
+        this.chunk.position(start);
+    }
+
+    /**
+     * Reads the body's framed bytes, as they are sent to the client
+     *
+     * @return The chunked body's bytes
+     * @throws IOException Thrown if the content cannot be generated
+     */
+    @Override
+    public byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        writeTo(Channels.newChannel(data));
+        return data.toByteArray();
+    }
+
+    /**
+     * Generates the whole remaining content without framing it.
+     * Used for clients that do not understand the chunked transfer coding
+     *
+     * @return The content that was not written yet
+     * @throws IOException Thrown if the content cannot be generated
+     */
+    public byte[] readContent() throws IOException {
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        if (this.pending != null) {
+            data.write(this.pending, this.pendingOffset, this.pending.length - this.pendingOffset);
+            this.pending = null;
+        }
+        if (!this.finished) {
+            byte[] piece;
+            while ((piece = this.source.next()) != null) {
+                data.write(piece);
+            }
+            this.finished = true;
+        }
+
+        close();
+        return data.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        if (!this.closed) {
+            this.closed = true;
+            this.source.close();
+        }
+    }
+}
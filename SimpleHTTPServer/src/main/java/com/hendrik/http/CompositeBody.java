@@ -0,0 +1,80 @@
+package com.hendrik.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * A response body that is made of several other bodies which are sent one after the other,
+ * e.g. the parts of a multipart/byteranges response
+ *
+ * @author Hendrik Tjabben
+ */
+public class CompositeBody extends ResponseBody {
+
+    /**
+     * The bodies this body consists of, in order
+     */
+    private final List<ResponseBody> parts;
+
+    /**
+     * The index of the first part that is not written completely
+     */
+    private int currentPart;
+
+    /**
+     * Constructor for a composite body
+     *
+     * @param parts The bodies this body consists of, in order
+     */
+    public CompositeBody(final List<ResponseBody> parts) {
+        this.parts = parts;
+        this.currentPart = 0;
+    }
+
+    /**
+     * Getter for the bodies this body consists of
+     *
+     * @return The parts in the order they are sent
+     */
+    public List<ResponseBody> getParts() {
+        return this.parts;
+    }
+
+    @Override
+    public long getLength() {
+        long length = 0;
+        for (ResponseBody part : this.parts) {
+            length += part.getLength();
+        }
+        return length;
+    }
+
+    @Override
+    public boolean writeTo(final WritableByteChannel channel) throws IOException {
+        while (this.currentPart < this.parts.size()) {
+            if (!this.parts.get(this.currentPart).writeTo(channel)) {
+                return false;
+            }
+            this.currentPart++;
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (ResponseBody part : this.parts) {
+            data.write(part.toByteArray());
+        }
+        return data.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        for (ResponseBody part : this.parts) {
+            part.close();
+        }
+    }
+}
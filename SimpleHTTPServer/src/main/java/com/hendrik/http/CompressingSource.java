@@ -0,0 +1,208 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a response body while it is sent, for use in a {@link ChunkedBody}.
+ * The uncompressed body is pulled in pieces of bounded size, as if it was written to a slow client,
+ * so neither the uncompressed nor the compressed body is held in memory as a whole.
+ * Supports the gzip and deflate content codings.
+ *
+ * @author Hendrik Tjabben
+ */
+public class CompressingSource implements ChunkedBody.Source {
+
+    /**
+     * The size of the pieces the uncompressed body is pulled in and the compressed body is generated in
+     */
+    private static final int PIECE_SIZE = 16 * 1024;
+
+    /**
+     * The header of a gzip member without optional fields: magic number, deflate method, no flags, no time, unknown OS
+     */
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    /**
+     * The uncompressed body
+     */
+    private final ResponseBody input;
+
+    /**
+     * The source of the uncompressed content if the body is chunked itself. null otherwise
+     */
+    private final ChunkedBody.Source content;
+
+    /**
+     * Whether the gzip format is generated, otherwise the zlib format
+     */
+    private final boolean gzip;
+
+    /**
+     * Takes the next piece of the uncompressed body. Accepts bytes until it is full
+     */
+    private final PieceChannel piece;
+
+    /**
+     * The compressor. null before the first piece is generated and after it was released
+     */
+    private Deflater deflater;
+
+    /**
+     * The checksum of the uncompressed bytes, used by gzip
+     */
+    private final CRC32 crc;
+
+    /**
+     * Whether the uncompressed body was pulled completely
+     */
+    private boolean inputDone;
+
+    /**
+     * Whether the end of the compressed body was generated
+     */
+    private boolean finished;
+
+    /**
+     * A channel that takes bytes until its buffer is full, so a body writes only a bounded piece at a time
+     */
+    private static class PieceChannel implements WritableByteChannel {
+
+        /**
+         * The bytes taken so far
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocate(PIECE_SIZE);
+
+        @Override
+        public int write(final ByteBuffer source) {
+            int count = Math.min(source.remaining(), this.buffer.remaining());
+            ByteBuffer slice = source.duplicate();
+            slice.limit(slice.position() + count);
+            this.buffer.put(slice);
+            source.position(source.position() + count);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Constructor for a new compressing source
+     *
+     * @param input The uncompressed body. Chunked bodies are compressed before they are framed. It is closed when the source is closed
+     * @param coding The content coding, {@link Compression#GZIP} or {@link Compression#DEFLATE}
+     */
+    public CompressingSource(final ResponseBody input, final String coding) {
+        this.input = input;
+        this.content = input instanceof ChunkedBody ? ((ChunkedBody) input).getSource() : null;
+        this.gzip = Compression.GZIP.equals(coding);
+        this.piece = new PieceChannel();
+        this.crc = new CRC32();
+        this.inputDone = false;
+        this.finished = false;
+    }
+
+    @Override
+    public byte[] next() throws IOException {
+
+        if (this.finished) {
+            return null;
+        }
+
+        if (this.deflater == null) {
+            this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, this.gzip);
+            if (this.gzip) {
+                return GZIP_HEADER.clone();
+            }
+        }
+
+        byte[] output = new byte[PIECE_SIZE];
+
+        while (true) {
+            int count = this.deflater.deflate(output);
+            if (count > 0) {
+                return Arrays.copyOf(output, count);
+            }
+
+            if (this.deflater.finished()) {
+                this.finished = true;
+                byte[] trailer = this.gzip ? createGzipTrailer() : null;
+                close();
+                return trailer;
+            }
+
+            if (this.deflater.needsInput() && !this.inputDone) {
+                pullPiece();
+            }
+        }
+    }
+
+    /**
+     * Pulls the next piece of the uncompressed body and hands it to the compressor
+     *
+     * @throws IOException Thrown if the uncompressed body cannot be read
+     */
+    private void pullPiece() throws IOException {
+
+        if (this.content != null) {
+            byte[] data = this.content.next();
+            if (data == null) {
+                this.inputDone = true;
+                this.deflater.finish();
+            } else {
+                this.crc.update(data, 0, data.length);
+                this.deflater.setInput(data);
+            }
+            return;
+        }
+
+        this.piece.buffer.clear();
+        this.inputDone = this.input.writeTo(this.piece);
+
+        byte[] data = this.piece.buffer.array();
+        int length = this.piece.buffer.position();
+        this.crc.update(data, 0, length);
+        this.deflater.setInput(data, 0, length);
+
+        if (this.inputDone) {
+            this.deflater.finish();
+        }
+    }
+
+    /**
+     * Creates the end of a gzip member: the checksum and the length of the uncompressed data, both little endian
+     *
+     * @return The trailer's bytes
+     */
+    private byte[] createGzipTrailer() {
+        long checksum = this.crc.getValue();
+        long size = this.deflater.getBytesRead();
+        byte[] trailer = new byte[8];
+        for (int i = 0; i < 4; i++) {
+            trailer[i] = (byte) (checksum >> (8 * i));
+            trailer[4 + i] = (byte) (size >> (8 * i));
+        }
+        return trailer;
+    }
+
+    @Override
+    public void close() {
+        this.input.close();
+        if (this.deflater != null) {
+            this.deflater.end();
+            this.deflater = null;
+            this.finished = true;
+        }
+    }
+}
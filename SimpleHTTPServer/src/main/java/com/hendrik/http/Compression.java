@@ -0,0 +1,163 @@
+package com.hendrik.http;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Decides which responses are compressed and with which content coding.
+ * Only bodies of the configured content types that are at least as large as the configured minimum size
+ * are compressed, because compressing small or already compressed data costs more than it saves.
+ *
+ * This implementation is based on https://tools.ietf.org/html/rfc7231#section-5.3.4
+ *
+ * @author Hendrik Tjabben
+ */
+public class Compression {
+
+    /**
+     * The gzip content coding
+     */
+    public static final String GZIP = "gzip";
+
+    /**
+     * The deflate content coding, i.e. the zlib format
+     */
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * The content types that are compressed by default
+     */
+    public static final List<String> DEFAULT_TYPES = Arrays.asList("text/html", "text/plain", "text/css", "text/csv",
+        "text/markdown", "text/javascript", "application/json", "application/xml", "image/svg+xml");
+
+    /**
+     * The minimum body size in bytes that is compressed by default
+     */
+    public static final long DEFAULT_MIN_SIZE = 1024;
+
+    /**
+     * The content types without parameters that are compressed. Empty if compression is disabled
+     */
+    private static volatile Set<String> types = new HashSet<String>(DEFAULT_TYPES);
+
+    /**
+     * The minimum size in bytes of bodies that are compressed. Bodies of unknown size are always compressed
+     */
+    private static volatile long minSize = DEFAULT_MIN_SIZE;
+
+    /**
+     * Configures which responses are compressed
+     *
+     * @param compressedTypes The content types without parameters that are compressed. An empty collection disables compression
+     * @param compressedMinSize The minimum size in bytes of bodies that are compressed
+     */
+    public static void configure(final Collection<String> compressedTypes, final long compressedMinSize) {
+        Set<String> lowerCaseTypes = new HashSet<String>();
+        for (String type : compressedTypes) {
+            lowerCaseTypes.add(type.trim().toLowerCase(Locale.ROOT));
+        }
+        types = lowerCaseTypes;
+        minSize = compressedMinSize;
+    }
+
+    /**
+     * Checks whether a body of a given content type and length is worth compressing
+     *
+     * @param contentType The body's content type, possibly with parameters like the charset
+     * @param length The body's length in bytes. -1 if it is not known before the body is generated
+     * @return True if the body should be compressed for clients that accept it
+     */
+    public static boolean isCompressible(final String contentType, final long length) {
+        return isCompressible(contentType) && (length < 0 || length >= minSize);
+    }
+
+    /**
+     * Checks whether bodies of a given content type are compressed at all.
+     * Responses of such types vary with the client's Accept-Encoding
+     *
+     * @param contentType The content type, possibly with parameters like the charset
+     * @return True if bodies of the type are compressed if they are large enough
+     */
+    public static boolean isCompressible(final String contentType) {
+
+        if (contentType == null) {
+            return false;
+        }
+
+        int parameters = contentType.indexOf(';');
+        String type = parameters == -1 ? contentType : contentType.substring(0, parameters);
+        return types.contains(type.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Chooses the content coding for a response from the codings the client accepts.
+     * gzip is preferred over deflate if the client rates both equally
+     *
+     * @param acceptEncoding The values of the request's Accept-Encoding field
+     * @return The chosen coding. null if the response is not compressed
+     */
+    public static String negotiate(final Optional<List<String>> acceptEncoding) {
+
+        if (!acceptEncoding.isPresent()) {
+            return null;
+        }
+
+        float gzipQuality = -1;
+        float deflateQuality = -1;
+        float wildcardQuality = -1;
+
+        for (String value : acceptEncoding.get()) {
+            int parameters = value.indexOf(';');
+            String coding = (parameters == -1 ? value : value.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+            float quality = parameters == -1 ? 1 : parseQuality(value.substring(parameters + 1));
+
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                gzipQuality = Math.max(gzipQuality, quality);
+            } else if (coding.equals(DEFLATE)) {
+                deflateQuality = Math.max(deflateQuality, quality);
+            } else if (coding.equals("*")) {
+                wildcardQuality = quality;
+            }
+        }
+
+        // Codings that are not listed explicitly are rated like the wildcard
+        if (gzipQuality < 0) {
+            gzipQuality = wildcardQuality;
+        }
+        if (deflateQuality < 0) {
+            deflateQuality = wildcardQuality;
+        }
+
+        if (gzipQuality > 0 && gzipQuality >= deflateQuality) {
+            return GZIP;
+        } else if (deflateQuality > 0) {
+            return DEFLATE;
+        }
+        return null;
+    }
+
+    /**
+     * Parses the quality value of an Accept-Encoding element
+     *
+     * @param parameters The element's parameters, e.g. q=0.5
+     * @return The quality between 0 and 1. 1 if no valid quality is given
+     */
+    private static float parseQuality(final String parameters) {
+
+        String trimmed = parameters.trim();
+        if (!trimmed.startsWith("q=")) {
+            return 1;
+        }
+
+        try {
+            return Math.max(0, Math.min(1, Float.parseFloat(trimmed.substring(2))));
+        } catch (NumberFormatException ex) {
+            return 1;
+        }
+    }
+}
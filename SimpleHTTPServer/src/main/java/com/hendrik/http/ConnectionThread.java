@@ -1,21 +1,19 @@
 package com.hendrik.http;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.Socket;
-import java.util.List;
-import java.util.Optional;
-
-import com.hendrik.http.HeaderFields.Field;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
- * A Thread that allows to serve incoming HTTP GET and HEAD requests
+ * Serves the incoming HTTP requests of one connection with blocking I/O.
+ * It is run by a dedicated thread, a virtual thread or a pooled worker, depending on the connection mode
  * 
  * @author Hendrik Tjabben
  */
-public class ConnectionThread extends Thread {
+public class ConnectionThread implements Runnable {
     
     /**
      * The socket used to exchange data with the client
@@ -49,6 +47,9 @@ public class ConnectionThread extends Thread {
     public void run() {
 
         boolean shouldServe = true;
+        ResponseWriter writer = new ResponseWriter();
+        // The parser's buffer lives as long as the connection, so bytes of a following request are kept
+        RequestParser parser = new RequestParser();
 
         try {
 
@@ -64,43 +65,75 @@ public class ConnectionThread extends Thread {
                 return;
             }
 
-            OutputStream output = clientSocket.getOutputStream();
-            DataOutputStream outputStream = new DataOutputStream(output);
+            ReadableByteChannel inputChannel = clientSocket.getChannel() != null ? clientSocket.getChannel() : Channels.newChannel(input);
+            WritableByteChannel outputChannel = clientSocket.getChannel() != null ? clientSocket.getChannel() : Channels.newChannel(clientSocket.getOutputStream());
+
+            ResponseEncoder encoder = new ResponseEncoder();
 
             while (shouldServe) {
 
-                Request request = new Request(input);
-                ResponseBuilder responseBuilder = new ResponseBuilder(request);
-                Response response = responseBuilder
-                    .setEtag()
-                    .build();
-                
-                for (String line : response.getHeaderLines()) {
-                    outputStream.writeBytes(line);
-                    outputStream.writeBytes("\r\n");
+                Request request;
+                try {
+                    request = parser.read(inputChannel);
+                } catch (RequestException ex) {
+                    encodeError(encoder, ex);
+                    shouldServe = false;
+                    request = null;
+                }
+
+                if (request == null && shouldServe) {
+                    // The client closed the connection
+                    break;
                 }
-                outputStream.writeBytes("\r\n");
-                outputStream.write(response.getData());
-                outputStream.flush();
-
-                Optional<List<String>> connectionHeader = response.getHeaderValues(Field.CONNECTION);
-
-                if (connectionHeader.isPresent()) {
-                    for (String value : connectionHeader.get()) {
-                        if (value.toLowerCase().equals("close")) {
-                            shouldServe = false; 
-                            output.close();
-                            input.close();
+
+                // Pipelined requests that were sent along with the first one are answered in the same write
+                int batchSize = 0;
+                while (request != null) {
+                    Response response = ResponseBuilder.respond(request);
+
+                    encoder.encode(response);
+                    batchSize++;
+
+                    if (response.closesConnection()) {
+                        shouldServe = false;
+                        break;
+                    }
+
+                    request = null;
+                    if (batchSize < HTTPServer.MAX_PIPELINE_DEPTH) {
+                        try {
+                            request = parser.parse(false);
+                        } catch (RequestException ex) {
+                            encodeError(encoder, ex);
+                            shouldServe = false;
                         }
                     }
                 }
+
+                writer.add(encoder.finish());
+                writer.writeFully(outputChannel);
+                encoder.reset();
             }
 
         } catch (IOException ex) {
             System.out.println("Server I/O exception while serving client: " + ex.getMessage());
             ex.printStackTrace();
         } finally {
+            parser.close();
+            writer.close();
             closeSocket(clientSocket);
         }
     }
+
+    /**
+     * Answers a request that cannot be parsed with the status code of its error.
+     * The connection is closed afterwards, because the following bytes cannot be trusted to start a new request
+     *
+     * @param encoder The encoder of the connection's responses
+     * @param ex The parse error
+     */
+    private static void encodeError(final ResponseEncoder encoder, final RequestException ex) {
+        System.out.println("Bad request: " + ex.getMessage());
+        encoder.encode(ResponseBuilder.createError(ex.getStatusCode()));
+    }
 }
@@ -6,6 +6,11 @@ package com.hendrik.http.DB;
  * @author Hendrik Tjabben
  */
 public class Comment {
+
+    /**
+     * The comment's id in hex notation. null if the comment was not stored yet
+     */
+    private final String ID;
    
     /**
      * The name of this comment's author
@@ -24,10 +29,31 @@ public class Comment {
      * @param comment This comment's content
      */
     public Comment(final String name, final String comment) {
+        this(null, name, comment);
+    }
+
+    /**
+     * Constructor for a comment that was read from the database
+     * 
+     * @param id The comment's id in hex notation
+     * @param name The name of this comment's author
+     * @param comment This comment's content
+     */
+    public Comment(final String id, final String name, final String comment) {
+        this.ID = id;
         this.NAME = name;
         this.COMMENT = comment;
     }
 
+    /**
+     * Getter for the comment's id. Comments are ordered by their ids, newer comments have greater ids
+     * 
+     * @return The id in hex notation. null if the comment was not stored yet
+     */
+    public String getId() {
+        return this.ID;
+    }
+
     /**
      * Getter for the author's name
      * 
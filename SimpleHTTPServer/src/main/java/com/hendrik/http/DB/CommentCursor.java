@@ -0,0 +1,50 @@
+package com.hendrik.http.DB;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+import com.mongodb.client.MongoCursor;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * Iterates the comments of a query while they are fetched from the database.
+ * Only one batch of documents is held at a time, so a page of comments can be rendered
+ * without copying it into a list first. The cursor has to be closed when it is not read to its end
+ * 
+ * @author Hendrik Tjabben
+ */
+public class CommentCursor implements Iterator<Comment>, Closeable {
+
+    /**
+     * The database cursor of the query
+     */
+    private final MongoCursor<Document> cursor;
+
+    /**
+     * Constructor for a new comment cursor
+     * 
+     * @param cursor The database cursor of the query
+     */
+    CommentCursor(final MongoCursor<Document> cursor) {
+        this.cursor = cursor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.cursor.hasNext();
+    }
+
+    @Override
+    public Comment next() {
+        Document comment = this.cursor.next();
+        ObjectId id = comment.getObjectId("_id");
+        return new Comment(id == null ? null : id.toHexString(), comment.getString("name"), comment.getString("comment"));
+    }
+
+    @Override
+    public void close() {
+        this.cursor.close();
+    }
+}
@@ -0,0 +1,258 @@
+package com.hendrik.http.DB;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.bson.Document;
+
+/**
+ * A write-behind queue for comments.
+ * Connections only put their comment into a bounded queue, a single background thread collects the
+ * queued comments and writes them with one insertMany per batch. A batch is written once it is full or
+ * a short linger time after its first comment arrived, so a burst of posts costs a few round trips to
+ * the database instead of one per post.
+ *
+ * When the queue is full, posting connections wait for space, and give up after a timeout.
+ * With {@link Durability#ACKNOWLEDGED}, the default, a connection additionally waits until its batch was written,
+ * but not longer than a timeout either. Concurrent posts still share a batch, and the wall page that answers
+ * the post already shows the new comment. Both waits block the calling thread, so comments are only
+ * written by the threads that handle requests, never by an event loop.
+ *
+ * @author Hendrik Tjabben
+ */
+public class CommentWriter {
+
+    /**
+     * When a comment counts as added
+     */
+    public enum Durability {
+        /**
+         * As soon as the comment is queued. Queued comments are lost if the server stops or the write fails,
+         * and the wall page that answers the post usually does not show the comment yet
+         */
+        QUEUED,
+
+        /**
+         * As soon as the database acknowledged the write of the comment's batch
+         */
+        ACKNOWLEDGED
+    }
+
+    /**
+     * The default maximum number of comments written with one insertMany
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * The default number of milliseconds a batch waits for more comments
+     */
+    public static final long DEFAULT_LINGER_MILLIS = 5;
+
+    /**
+     * The default point at which a comment counts as added
+     */
+    public static final Durability DEFAULT_DURABILITY = Durability.ACKNOWLEDGED;
+
+    /**
+     * The number of comments that may wait to be written
+     */
+    private static final int CAPACITY = 1024;
+
+    /**
+     * The number of milliseconds a connection waits for space in a full queue
+     */
+    private static final long OFFER_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * The number of milliseconds a connection waits for the database to acknowledge its comment
+     */
+    private static final long ACKNOWLEDGE_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The maximum number of comments written with one insertMany
+     */
+    private static volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * The number of milliseconds a batch waits for more comments
+     */
+    private static volatile long lingerMillis = DEFAULT_LINGER_MILLIS;
+
+    /**
+     * When a comment counts as added
+     */
+    private static volatile Durability durability = DEFAULT_DURABILITY;
+
+    /**
+     * Writes a batch of comments to the database
+     */
+    private final Consumer<List<Document>> sink;
+
+    /**
+     * The comments that wait to be written
+     */
+    private final BlockingQueue<PendingComment> queue;
+
+    /**
+     * A comment that waits to be written
+     */
+    private static class PendingComment {
+
+        /**
+         * The comment's document
+         */
+        private final Document document;
+
+        /**
+         * Completed with the result of the comment's write. null if nobody waits for it
+         */
+        private final CompletableFuture<Boolean> written;
+
+        /**
+         * Constructor for a new pending comment
+         *
+         * @param document The comment's document
+         * @param written Completed with the result of the write. null if nobody waits for it
+         */
+        private PendingComment(final Document document, final CompletableFuture<Boolean> written) {
+            this.document = document;
+            this.written = written;
+        }
+    }
+
+    /**
+     * Configures how comments are batched
+     *
+     * @param newBatchSize The maximum number of comments written with one insertMany
+     * @param newLingerMillis The number of milliseconds a batch waits for more comments
+     * @param newDurability When a comment counts as added
+     */
+    public static void configure(final int newBatchSize, final long newLingerMillis, final Durability newDurability) {
+        batchSize = newBatchSize;
+        lingerMillis = newLingerMillis;
+        durability = newDurability;
+    }
+
+    /**
+     * Constructor for a new comment writer. Its background thread is started immediately
+     *
+     * @param sink Writes a batch of comments to the database, e.g. a collection's insertMany
+     */
+    public CommentWriter(final Consumer<List<Document>> sink) {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<PendingComment>(CAPACITY);
+
+        Thread flusher = new Thread(this::writeBatches, "CommentWriter");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Queues a comment to be written
+     *
+     * @param comment The comment's document
+     * @return True if the comment was added as the configured durability demands, false if it was rejected or its write failed
+     */
+    public boolean write(final Document comment) {
+
+        PendingComment pending = new PendingComment(comment,
+            durability == Durability.ACKNOWLEDGED ? new CompletableFuture<Boolean>() : null);
+
+        try {
+            if (!this.queue.offer(pending, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                System.out.println("Comment rejected, too many comments wait to be written");
+                return false;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (pending.written == null) {
+            return true;
+        }
+
+        try {
+            return pending.written.get(ACKNOWLEDGE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            // The comment stays queued and may still be written, but the client cannot be told so
+            System.out.println("Comment not acknowledged within " + ACKNOWLEDGE_TIMEOUT_MILLIS + " ms");
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Collects queued comments into batches and writes them, until the thread is interrupted
+     */
+    private void writeBatches() {
+
+        List<PendingComment> batch = new ArrayList<PendingComment>();
+
+        while (true) {
+            try {
+                batch.add(this.queue.take());
+
+                int size = batchSize;
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while (batch.size() < size) {
+                    this.queue.drainTo(batch, size - batch.size());
+                    long wait = deadline - System.nanoTime();
+                    if (batch.size() >= size || wait <= 0) {
+                        break;
+                    }
+                    PendingComment next = this.queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException ex) {
+                return;
+            }
+
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes a batch of comments and notifies the connections waiting for them
+     *
+     * @param batch The comments to write
+     */
+    private void writeBatch(final List<PendingComment> batch) {
+
+        List<Document> documents = new ArrayList<Document>(batch.size());
+        for (PendingComment pending : batch) {
+            documents.add(pending.document);
+        }
+
+        boolean written;
+        try {
+            this.sink.accept(documents);
+            written = true;
+        } catch (Throwable ex) {
+            // Errors are caught as well, the writer's thread must survive a failed batch
+            System.out.println(batch.size() + " comments could not be written: " + ex);
+            written = false;
+        }
+
+        for (PendingComment pending : batch) {
+            if (pending.written != null) {
+                pending.written.complete(written);
+            }
+        }
+    }
+}
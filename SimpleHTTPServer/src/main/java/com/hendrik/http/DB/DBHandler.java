@@ -1,15 +1,22 @@
 package com.hendrik.http.DB;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hendrik.http.MultipartReader;
 
-import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
 
 import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
 
 /**
  * A wrapper class for a MongoDB instance that allows to store and retrive documents
@@ -33,91 +40,99 @@ public class DBHandler {
      * The collection where the comments are written to in the DB
      */
     private static MongoCollection<Document> comments = db.getCollection("comments");
+
+    /**
+     * The version of the stored comments. Increased whenever new comments were written successfully
+     */
+    private static AtomicLong commentsVersion = new AtomicLong();
+
+    /**
+     * Writes new comments in batches in the background, so concurrent posts share their round trips to the database
+     */
+    private static CommentWriter writer = new CommentWriter(documents -> {
+        comments.insertMany(documents);
+        commentsVersion.incrementAndGet();
+    });
    
     /**
-     * Adds form data read from a HTTP POST request to a MongoDB database, when the form data represents
-     * a comment made on the WALLY side
-     * At first, the form data is parsed and then added to a MongoDB instance
+     * The maximum number of bytes of a comment's name or text
+     */
+    private static final long MAX_FIELD_SIZE = 16 * 1024;
+
+    /**
+     * Adds form data streamed from the payload of a HTTP POST request to a MongoDB database, when the form data
+     * represents a comment made on the WALLY side.
+     * The multipart form data is parsed part by part while it is read, parts other than the name and the comment are skipped.
+     * The comment is written in the background, see {@link CommentWriter}
      * 
      * @param formData The form data to parse and add to the MongoDB
-     * @return True if data was successfully added, false otherwise (invalid form data that does not represent a comment)
+     * @param contentType The request's Content-Type, declaring the form data's boundary. null if it is not set
+     * @return True if data was successfully added as the configured durability demands, false otherwise
+     *         (invalid form data that does not represent a comment, or a rejected or failed write)
+     * @throws IOException Thrown if the form data cannot be read, is malformed or a field is too large
      */
-    public static boolean addComment(final String formData) {
+    public static boolean addComment(final InputStream formData, final String contentType) throws IOException {
 
-        String[] nameComment = parseFormDataString(formData);
-
-        if (nameComment[0] == "" || nameComment[1] == "") {
-            System.out.println("Name or comment not set");
+        String boundary = MultipartReader.getBoundary(contentType);
+        if (boundary == null) {
+            System.out.println("Form data is not sent as " + MultipartReader.FORM_DATA);
             return false;
         }
 
-        Document newComment = new Document("name", nameComment[0])
-                                .append("comment", nameComment[1]);
+        String name = "";
+        String comment = "";
 
-        comments.insertOne(newComment);
+        MultipartReader reader = new MultipartReader(formData, boundary, MAX_FIELD_SIZE);
+        MultipartReader.Part part;
+        while ((part = reader.nextPart()) != null) {
+            if ("username".equals(part.getName())) {
+                name = part.readString();
+            } else if ("comment".equals(part.getName())) {
+                comment = part.readString();
+            }
+        }
 
+        if (name.isEmpty() || comment.isEmpty()) {
+            System.out.println("Name or comment not set");
+            return false;
+        }
 
-        return true;
+        Document newComment = new Document("name", name)
+                                .append("comment", comment);
+
+        return writer.write(newComment);
     }
 
     /**
-     * Getter that reads all entries from the Database
+     * Getter for the version of the stored comments.
+     * Whatever was read from the comments stays valid as long as the version does not change
      * 
-     * @return A list containing all comments made so far
+     * @return The version. It only changes after new comments were written successfully
      */
-    public static List<Comment> getAllComments() {
-
-        List<Comment> result = new ArrayList<Comment>();
-
-        FindIterable<Document> allCommentsInDB = comments.find();
-        for (Document comment : allCommentsInDB) {
-            Comment newComment = new Comment((String)comment.get("name"), (String)comment.get("comment"));
-            result.add(newComment);
-        }
-
-        return result;
+    public static long getCommentsVersion() {
+        return commentsVersion.get();
     }
 
     /**
-     * Parses the form data and returns an array containing the username at [0] and the comment at [1]
+     * Reads a page of comments, newest first.
+     * Pages are addressed by the id of the last comment of the previous page instead of an offset, so every page
+     * is a single range scan of the id index, no matter how many comments the wall has. Only the name and
+     * the comment are read from each document
      * 
-     * @param formData The form data to parse
-     * @return The parsed username and comment. If it could not be parsed, the username or comment is ""
+     * @param before The id of the last comment of the previous page in hex notation. null or invalid for the first page
+     * @param pageSize The maximum number of comments
+     * @return A cursor over the page's comments. It must be closed if it is not read to its end
      */
-    private static String[] parseFormDataString(final String formData) {
+    public static CommentCursor getComments(final String before, final int pageSize) {
 
-        boolean usernameNext = false;
-        boolean commentNext = false;
-        String[] userNameComment = new String[2];
-        userNameComment[0] = "";
-        userNameComment[1] = "";
-
-        if (formData == null) {
-            return userNameComment;
-        }
-        
-        String[] lines = formData.split("\n");
-
-        for (String line : lines) {
-            if (line.length() > 1) {
-                if (commentNext) {
-                    userNameComment[1] = line;
-                    commentNext = false;
-                } else if (usernameNext) {
-                    userNameComment[0] = line;
-                    usernameNext = false;
-                }
-            }
-
-            if (line.contains("name=\"username\"")) {
-                usernameNext = true;
-            } else if (line.contains("name=\"comment\"")) {
-                commentNext = true;
-            }
-
-        }
+        Bson filter = before != null && ObjectId.isValid(before) ? Filters.lt("_id", new ObjectId(before)) : new Document();
 
-        return userNameComment;
+        return new CommentCursor(comments.find(filter)
+            .projection(Projections.include("name", "comment"))
+            .sort(Sorts.descending("_id"))
+            .limit(pageSize)
+            .batchSize(pageSize)
+            .iterator());
     }
 
 }
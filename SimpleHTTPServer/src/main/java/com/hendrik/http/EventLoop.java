@@ -0,0 +1,184 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.hendrik.http.HeaderFields.StatusCode;
+
+/**
+ * A Thread that serves many non-blocking connections using a single {@link java.nio.channels.Selector}.
+ * Every connection that is registered with an event loop is owned by it until the connection is closed.
+ * The event loop only does non-blocking I/O. Requests are handled and the chunks of generated bodies are
+ * produced by worker threads, which hand their results back to the event loop with {@link #execute(Runnable)}.
+ *
+ * @author Hendrik Tjabben
+ */
+public class EventLoop extends Thread {
+
+    /**
+     * The selector that watches all connections owned by this event loop
+     */
+    private final Selector selector;
+
+    /**
+     * Accepted connections that wait to be registered with the selector.
+     * Registration must happen on the event loop's thread, so the acceptor only enqueues them
+     */
+    private final Queue<SocketChannel> pendingChannels;
+
+    /**
+     * Tasks that wait to be run on the event loop's thread
+     */
+    private final Queue<Runnable> pendingTasks;
+
+    /**
+     * The workers that handle the requests of this event loop's connections
+     */
+    private final Executor workers;
+
+    /**
+     * Builds the responses to the requests of this event loop's connections
+     */
+    private final Function<Request, Response> responder;
+
+    /**
+     * Constructor for a new event loop
+     *
+     * @param id The event loop's id used for naming its thread
+     * @param workers The workers that handle the requests of the event loop's connections
+     * @throws IOException Thrown if the selector cannot be opened
+     */
+    public EventLoop(final int id, final Executor workers) throws IOException {
+        this(id, workers, ResponseBuilder::respond);
+    }
+
+    /**
+     * Constructor for a new event loop that answers requests with a custom responder
+     *
+     * @param id The event loop's id used for naming its thread
+     * @param workers The workers that handle the requests of the event loop's connections
+     * @param responder Builds the responses to the requests, called by the workers
+     * @throws IOException Thrown if the selector cannot be opened
+     */
+    EventLoop(final int id, final Executor workers, final Function<Request, Response> responder) throws IOException {
+        super("EventLoop-" + id);
+        this.selector = Selector.open();
+        this.pendingChannels = new ConcurrentLinkedQueue<SocketChannel>();
+        this.pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+        this.workers = workers;
+        this.responder = responder;
+    }
+
+    /**
+     * Hands a freshly accepted connection over to this event loop.
+     * Can be called from any thread
+     *
+     * @param channel The accepted connection
+     */
+    public void register(final SocketChannel channel) {
+        this.pendingChannels.add(channel);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Runs a task on the event loop's thread.
+     * Can be called from any thread
+     *
+     * @param task The task to run
+     */
+    public void execute(final Runnable task) {
+        this.pendingTasks.add(task);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Runs all pending tasks
+     */
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = this.pendingTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                System.out.println("Unexpected error in event loop task: " + ex);
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Registers all pending connections for read events
+     */
+    private void registerPendingChannels() {
+        SocketChannel channel;
+        while ((channel = this.pendingChannels.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                // Persistent connections are the default in HTTP/1.1
+                // https://www.w3.org/Protocols/rfc2616/rfc2616-sec8.html
+                channel.socket().setKeepAlive(true);
+                SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+                key.attach(new SelectorConnection(channel, key, this, this.workers, this.responder));
+            } catch (IOException ex) {
+                System.err.println("Error registering connection: " + ex.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException closeEx) {
+                    System.err.println("Error closing the channel");
+                }
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+
+        while (true) {
+            try {
+                this.selector.select();
+            } catch (IOException ex) {
+                System.out.println("Event loop I/O exception while selecting: " + ex.getMessage());
+                ex.printStackTrace();
+                return;
+            }
+
+            registerPendingChannels();
+            runPendingTasks();
+
+            Iterator<SelectionKey> selectedKeys = this.selector.selectedKeys().iterator();
+            while (selectedKeys.hasNext()) {
+                SelectionKey key = selectedKeys.next();
+                selectedKeys.remove();
+
+                SelectorConnection connection = (SelectorConnection) key.attachment();
+
+                try {
+                    if (key.isValid() && key.isReadable()) {
+                        connection.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                } catch (ClosedChannelException ex) {
+                    connection.close();
+                } catch (IOException ex) {
+                    System.out.println("Server I/O exception while serving client: " + ex.getMessage());
+                    connection.close();
+                } catch (RuntimeException ex) {
+                    // Only the connection that caused the failure is given up, the other connections of this loop are still served
+                    System.out.println("Unexpected error while serving client: " + ex);
+                    ex.printStackTrace();
+                    connection.abort(StatusCode.INTERNALERROR);
+                }
+            }
+        }
+    }
+}
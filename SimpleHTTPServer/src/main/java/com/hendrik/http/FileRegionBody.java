@@ -0,0 +1,143 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A response body that consists of a region of a file.
+ * The file is sent with {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so the operating system
+ * can copy it from the page cache to the socket without the bytes ever entering the heap.
+ *
+ * @author Hendrik Tjabben
+ */
+public class FileRegionBody extends ResponseBody {
+
+    /**
+     * The path of the file to send
+     */
+    private final Path path;
+
+    /**
+     * The position of the region's first byte in the file
+     */
+    private final long position;
+
+    /**
+     * The number of bytes the region takes
+     */
+    private final long count;
+
+    /**
+     * The number of bytes that were already written
+     */
+    private long written;
+
+    /**
+     * The opened file. null until the body is written for the first time
+     */
+    private FileChannel fileChannel;
+
+    /**
+     * Constructor for a file region body
+     *
+     * @param path The path of the file to send
+     * @param position The position of the region's first byte in the file
+     * @param count The number of bytes the region takes
+     */
+    public FileRegionBody(final Path path, final long position, final long count) {
+        this.path = path;
+        this.position = position;
+        this.count = count;
+        this.written = 0;
+    }
+
+    /**
+     * Constructor for a file region body whose file was opened already.
+     * Used for files that may be deleted before the body is written, since an open file can still be read
+     *
+     * @param path The path of the file to send
+     * @param fileChannel The opened file. It is closed when the body is closed
+     * @param position The position of the region's first byte in the file
+     * @param count The number of bytes the region takes
+     */
+    public FileRegionBody(final Path path, final FileChannel fileChannel, final long position, final long count) {
+        this(path, position, count);
+        this.fileChannel = fileChannel;
+    }
+
+    @Override
+    public long getLength() {
+        return this.count;
+    }
+
+    @Override
+    public boolean writeTo(final WritableByteChannel channel) throws IOException {
+
+        if (this.fileChannel == null) {
+            this.fileChannel = FileChannel.open(this.path, StandardOpenOption.READ);
+        }
+
+        while (this.written < this.count) {
+            long transferred = this.fileChannel.transferTo(this.position + this.written, this.count - this.written, channel);
+            if (transferred <= 0) {
+                if (this.position + this.written >= this.fileChannel.size()) {
+                    throw new IOException("File was truncated while it was sent: " + this.path);
+                }
+                return false;
+            }
+            this.written += transferred;
+        }
+
+        close();
+        return true;
+    }
+
+    @Override
+    public byte[] toByteArray() throws IOException {
+        if (this.count > Integer.MAX_VALUE) {
+            throw new IOException("File region is too large to be read into memory");
+        }
+
+        ByteBuffer data = ByteBuffer.allocate((int) this.count);
+        if (this.fileChannel != null) {
+            read(this.fileChannel, data);
+        } else {
+            try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+                read(channel, data);
+            }
+        }
+        return data.array();
+    }
+
+    /**
+     * Reads the region from a file until the buffer is full or the file ends
+     *
+     * @param channel The opened file
+     * @param data The buffer to fill
+     * @throws IOException Thrown if the file cannot be read
+     */
+    private void read(final FileChannel channel, final ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            if (channel.read(data, this.position + data.position()) == -1) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.fileChannel == null) {
+            return;
+        }
+        try {
+            this.fileChannel.close();
+        } catch (IOException ex) {
+            System.err.println("Error closing the file " + this.path);
+        }
+        this.fileChannel = null;
+    }
+}
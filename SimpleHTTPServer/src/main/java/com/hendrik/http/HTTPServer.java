@@ -2,37 +2,166 @@ package com.hendrik.http;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.management.InvalidAttributeValueException;
 
+import com.hendrik.http.DB.CommentWriter;
+import com.hendrik.http.resource.CompressedVariantCache;
+import com.hendrik.http.resource.DirectFileCache;
+import com.hendrik.http.resource.FileCache;
+import com.hendrik.http.resource.FileWatcher;
+import com.hendrik.http.resource.WallResource;
+
 /**
  * The actual HTTPServer.
- * It serves incoming requests using {@link java.net.ServerSocket}.
+ * It accepts incoming connections using {@link java.nio.channels.ServerSocketChannel} and serves them
+ * depending on the configured {@link ConnectionMode}.
  * 
  * @author Hendrik Tjabben
  */
 public class HTTPServer {
 
+    /**
+     * This enum specifies how accepted connections are served
+     */
+    public enum ConnectionMode {
+        /**
+         * Every connection is served by its own {@link ConnectionThread} (legacy mode)
+         */
+        THREAD,
+
+        /**
+         * Every connection is served by the {@link ConnectionThread} logic running on a virtual thread.
+         * Falls back to platform threads when the Java runtime does not support virtual threads (before Java 21)
+         */
+        VIRTUAL,
+
+        /**
+         * Connections are served by a bounded {@link WorkerPool}. Connections exceeding its capacity are rejected
+         */
+        POOL,
+
+        /**
+         * Connections are served by a small number of non-blocking {@link EventLoop}s
+         */
+        SELECTOR
+    };
+
     /**
      * System specific newLine character
      */
     public static final String NEW_LINE = System.getProperty("line.separator");
 
+    /**
+     * The maximum number of pipelined requests that are answered with a single write
+     */
+    public static final int MAX_PIPELINE_DEPTH = 32;
+
     /**
      * The root directory from which the server serves files and subdirectories
      */
     private static String rootDirectory = null;
 
     /**
-     * The server socket used for incoming connections
+     * The server socket channel used for incoming connections
      */
-    private ServerSocket serverSocket;
-    
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * The way accepted connections are served
+     */
+    private ConnectionMode connectionMode = ConnectionMode.THREAD;
+
+    /**
+     * The number of event loops used in {@link ConnectionMode#SELECTOR} mode
+     */
+    private int eventLoopCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The number of worker threads used in {@link ConnectionMode#POOL} mode, and to handle requests in {@link ConnectionMode#SELECTOR} mode
+     */
+    private int workerCount = 200;
+
+    /**
+     * The number of connections that may wait for a worker in {@link ConnectionMode#POOL} mode,
+     * and the number of connections whose requests may wait for a worker in {@link ConnectionMode#SELECTOR} mode
+     */
+    private int queueDepth = 100;
+
+    /**
+     * The number of bytes the in-memory file cache may hold. 0 disables the cache
+     */
+    private long fileCacheSize = 64L * 1024 * 1024;
+
+    /**
+     * The number of bytes the off-heap file cache may hold. 0 disables the cache
+     */
+    private long directCacheSize = 0;
+
+    /**
+     * The content types without parameters whose bodies are compressed. Empty if compression is disabled
+     */
+    private List<String> compressionTypes = Compression.DEFAULT_TYPES;
+
+    /**
+     * The minimum number of bytes a body must have to be compressed
+     */
+    private long compressionMinSize = Compression.DEFAULT_MIN_SIZE;
+
+    /**
+     * The directory holding compressed variants of static files
+     */
+    private Path variantCacheDirectory = Paths.get(System.getProperty("java.io.tmpdir"), "simple-http-server-variants");
+
+    /**
+     * The number of bytes the compressed variants may take on disk. 0 disables the disk cache
+     */
+    private long variantCacheSize = 256L * 1024 * 1024;
+
+    /**
+     * The number of bytes above which request payloads are moved to a temporary file
+     */
+    private long bodySpillThreshold = RequestBodyReader.DEFAULT_SPILL_THRESHOLD;
+
+    /**
+     * The maximum number of bytes a request payload may have
+     */
+    private long maxBodySize = RequestBodyReader.DEFAULT_MAX_SIZE;
+
+    /**
+     * The maximum number of comments written to the database at once
+     */
+    private int commentBatchSize = CommentWriter.DEFAULT_BATCH_SIZE;
+
+    /**
+     * The number of milliseconds a batch of comments waits for more comments
+     */
+    private long commentLingerMillis = CommentWriter.DEFAULT_LINGER_MILLIS;
+
+    /**
+     * When a posted comment counts as added
+     */
+    private CommentWriter.Durability commentDurability = CommentWriter.DEFAULT_DURABILITY;
+
+    /**
+     * The number of comments shown per page of the wall
+     */
+    private int wallPageSize = WallResource.DEFAULT_PAGE_SIZE;
+
     /**
      * Constructor for HTTPServer.
      * It does a check for the desired port regarding the allowed range.
@@ -57,7 +186,8 @@ public class HTTPServer {
         HTTPServer.rootDirectory = rootDirectory;
 
         try {
-            serverSocket = new ServerSocket(port); 
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
             System.out.println("The server is started on port " + port);
         } catch (IOException ex) {
             System.out.println("Error creating webserver on port " + port + ". Exception: " + ex.getMessage());
@@ -100,21 +230,365 @@ public class HTTPServer {
         return "HTTP/1.1";
     }
 
+    /**
+     * Sets the way accepted connections are served
+     * 
+     * @param connectionMode The connection mode to use
+     */
+    public void setConnectionMode(final ConnectionMode connectionMode) {
+        this.connectionMode = connectionMode;
+    }
+
+    /**
+     * Sets the number of event loops used in {@link ConnectionMode#SELECTOR} mode
+     * 
+     * @param eventLoopCount The number of event loops. Must be at least 1
+     * @throws InvalidAttributeValueException Thrown when the event loop count is below 1
+     */
+    public void setEventLoopCount(final int eventLoopCount) throws InvalidAttributeValueException {
+        if (eventLoopCount < 1) {
+            throw new InvalidAttributeValueException("At least one event loop is required");
+        }
+        this.eventLoopCount = eventLoopCount;
+    }
+
+    /**
+     * Sets the number of worker threads used in {@link ConnectionMode#POOL} mode, and to handle requests in {@link ConnectionMode#SELECTOR} mode
+     * 
+     * @param workerCount The number of worker threads. Must be at least 1
+     * @throws InvalidAttributeValueException Thrown when the worker count is below 1
+     */
+    public void setWorkerCount(final int workerCount) throws InvalidAttributeValueException {
+        if (workerCount < 1) {
+            throw new InvalidAttributeValueException("At least one worker is required");
+        }
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Sets the number of connections that may wait for a worker in {@link ConnectionMode#POOL} and {@link ConnectionMode#SELECTOR} mode
+     * 
+     * @param queueDepth The queue depth. Must be at least 1
+     * @throws InvalidAttributeValueException Thrown when the queue depth is below 1
+     */
+    public void setQueueDepth(final int queueDepth) throws InvalidAttributeValueException {
+        if (queueDepth < 1) {
+            throw new InvalidAttributeValueException("The queue depth must be at least 1");
+        }
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Sets the number of bytes the in-memory file cache may hold
+     * 
+     * @param fileCacheSize The cache's capacity in bytes. 0 disables the cache
+     * @throws InvalidAttributeValueException Thrown when the capacity is negative
+     */
+    public void setFileCacheSize(final long fileCacheSize) throws InvalidAttributeValueException {
+        if (fileCacheSize < 0) {
+            throw new InvalidAttributeValueException("The file cache size cannot be negative");
+        }
+        this.fileCacheSize = fileCacheSize;
+    }
+
+    /**
+     * Sets the number of bytes the off-heap cache for large files may hold.
+     * The memory is allocated outside of the heap, so it is not limited by -Xmx but by -XX:MaxDirectMemorySize
+     * 
+     * @param directCacheSize The cache's capacity in bytes. 0 disables the cache
+     * @throws InvalidAttributeValueException Thrown when the capacity is negative
+     */
+    public void setDirectCacheSize(final long directCacheSize) throws InvalidAttributeValueException {
+        if (directCacheSize < 0) {
+            throw new InvalidAttributeValueException("The off-heap cache size cannot be negative");
+        }
+        this.directCacheSize = directCacheSize;
+    }
+
+    /**
+     * Sets the content types whose bodies are compressed for clients that accept compressed responses
+     * 
+     * @param compressionTypes The content types without parameters, e.g. text/html. An empty list disables compression
+     */
+    public void setCompressionTypes(final List<String> compressionTypes) {
+        this.compressionTypes = compressionTypes;
+    }
+
+    /**
+     * Sets the minimum size of bodies that are compressed. Smaller bodies are not worth the effort
+     * 
+     * @param compressionMinSize The minimum number of bytes
+     * @throws InvalidAttributeValueException Thrown when the size is negative
+     */
+    public void setCompressionMinSize(final long compressionMinSize) throws InvalidAttributeValueException {
+        if (compressionMinSize < 0) {
+            throw new InvalidAttributeValueException("The minimum compression size cannot be negative");
+        }
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    /**
+     * Sets the directory that holds compressed variants of static files
+     * 
+     * @param variantCacheDirectory The directory. It is created if it does not exist
+     */
+    public void setVariantCacheDirectory(final Path variantCacheDirectory) {
+        this.variantCacheDirectory = variantCacheDirectory;
+    }
+
+    /**
+     * Sets the capacity of the disk cache for compressed variants of static files
+     * 
+     * @param variantCacheSize The cache's capacity in bytes. 0 disables the cache
+     * @throws InvalidAttributeValueException Thrown when the size is negative
+     */
+    public void setVariantCacheSize(final long variantCacheSize) throws InvalidAttributeValueException {
+        if (variantCacheSize < 0) {
+            throw new InvalidAttributeValueException("The compressed variant cache size cannot be negative");
+        }
+        this.variantCacheSize = variantCacheSize;
+    }
+
+    /**
+     * Sets the number of bytes above which request payloads are moved to a temporary file instead of being held in memory
+     * 
+     * @param bodySpillThreshold The number of bytes
+     * @throws InvalidAttributeValueException Thrown when the threshold is negative
+     */
+    public void setBodySpillThreshold(final long bodySpillThreshold) throws InvalidAttributeValueException {
+        if (bodySpillThreshold < 0) {
+            throw new InvalidAttributeValueException("The request body spill threshold cannot be negative");
+        }
+        this.bodySpillThreshold = bodySpillThreshold;
+    }
+
+    /**
+     * Sets the maximum size of request payloads. Connections sending larger payloads are closed
+     * 
+     * @param maxBodySize The maximum number of bytes
+     * @throws InvalidAttributeValueException Thrown when the size is negative
+     */
+    public void setMaxBodySize(final long maxBodySize) throws InvalidAttributeValueException {
+        if (maxBodySize < 0) {
+            throw new InvalidAttributeValueException("The maximum request body size cannot be negative");
+        }
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Sets the maximum number of comments written to the database at once
+     * 
+     * @param commentBatchSize The maximum number of comments
+     * @throws InvalidAttributeValueException Thrown when the batch size is below 1
+     */
+    public void setCommentBatchSize(final int commentBatchSize) throws InvalidAttributeValueException {
+        if (commentBatchSize < 1) {
+            throw new InvalidAttributeValueException("The comment batch size must be at least 1");
+        }
+        this.commentBatchSize = commentBatchSize;
+    }
+
+    /**
+     * Sets how long a batch of comments waits for more comments before it is written
+     * 
+     * @param commentLingerMillis The number of milliseconds
+     * @throws InvalidAttributeValueException Thrown when the time is negative
+     */
+    public void setCommentLinger(final long commentLingerMillis) throws InvalidAttributeValueException {
+        if (commentLingerMillis < 0) {
+            throw new InvalidAttributeValueException("The comment linger time cannot be negative");
+        }
+        this.commentLingerMillis = commentLingerMillis;
+    }
+
+    /**
+     * Sets when a posted comment counts as added: once it is queued, or once the database acknowledged its write
+     * 
+     * @param commentDurability The durability
+     */
+    public void setCommentDurability(final CommentWriter.Durability commentDurability) {
+        this.commentDurability = commentDurability;
+    }
+
+    /**
+     * Sets the number of comments shown per page of the wall
+     * 
+     * @param wallPageSize The number of comments
+     * @throws InvalidAttributeValueException Thrown when the page size is below 1
+     */
+    public void setWallPageSize(final int wallPageSize) throws InvalidAttributeValueException {
+        if (wallPageSize < 1) {
+            throw new InvalidAttributeValueException("The wall's page size must be at least 1");
+        }
+        this.wallPageSize = wallPageSize;
+    }
+
     /**
      * Starts to accept and serve incoming requests.
-     * Spawns a new thread so that multiple connections can be served in parallel.
+     * Depending on the connection mode, every connection gets its own thread or
+     * is handed to one of the event loops.
      * 
      * @throws IOException Thrown if an IO error happens while waiting for connections
      */
     public void serve() throws IOException {
+        enableFileCache();
+        Compression.configure(this.compressionTypes, this.compressionMinSize);
+        enableVariantCache();
+        RequestBodyReader.configure(this.bodySpillThreshold, this.maxBodySize);
+        CommentWriter.configure(this.commentBatchSize, this.commentLingerMillis, this.commentDurability);
+        WallResource.configure(this.wallPageSize);
+
+        switch (this.connectionMode) {
+            case SELECTOR:
+                serveWithEventLoops();
+                break;
+            case VIRTUAL:
+                serveWithExecutor(createVirtualThreadExecutor());
+                break;
+            case POOL:
+                serveWithWorkerPool();
+                break;
+            default:
+                serveWithThreads();
+        }
+    }
+
+    /**
+     * Watches the root directory for changes and enables the in-memory and off-heap file caches.
+     * Without a working watch service, files are not cached, because changes could not be noticed
+     */
+    private void enableFileCache() {
+        if (this.fileCacheSize == 0 && this.directCacheSize == 0) {
+            return;
+        }
+
+        try {
+            FileWatcher.watch(Paths.get(getRootDirectory()));
+            if (this.fileCacheSize > 0) {
+                FileCache.enable(this.fileCacheSize);
+                System.out.println("Caching files in memory with a capacity of " + this.fileCacheSize + " bytes");
+            }
+            if (this.directCacheSize > 0) {
+                DirectFileCache.enable(this.directCacheSize);
+                System.out.println("Caching large files off-heap with a capacity of " + this.directCacheSize + " bytes");
+            }
+        } catch (IOException ex) {
+            System.out.println("The root directory cannot be watched for changes. Files are not cached: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Enables the disk cache for compressed variants of static files, unless compression is disabled altogether
+     */
+    private void enableVariantCache() {
+        if (this.variantCacheSize == 0 || this.compressionTypes.isEmpty()) {
+            return;
+        }
+
+        try {
+            CompressedVariantCache.enable(this.variantCacheDirectory, this.variantCacheSize);
+            System.out.println("Caching compressed files in " + this.variantCacheDirectory + " with a capacity of " + this.variantCacheSize + " bytes");
+        } catch (IOException ex) {
+            System.out.println("The compressed variant cache cannot be used. Files are compressed while they are sent: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Spawns a new thread for every connection so that multiple connections can be served in parallel.
+     * 
+     * @throws IOException Thrown if an IO error happens while waiting for connections
+     */
+    private void serveWithThreads() throws IOException {
         while (true) {
-            Socket socket = serverSocket.accept();
+            SocketChannel channel = serverChannel.accept();
             System.out.println("New connection");
-            new ConnectionThread(socket).start();
+            new Thread(new ConnectionThread(channel.socket())).start();
+        }
+    }
+
+    /**
+     * Runs the blocking {@link ConnectionThread} logic of every connection on the given executor
+     * instead of starting a dedicated platform thread for it.
+     * 
+     * @param executor The executor that runs the connections
+     * @throws IOException Thrown if an IO error happens while waiting for connections
+     */
+    private void serveWithExecutor(final ExecutorService executor) throws IOException {
+        try {
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                executor.execute(new ConnectionThread(channel.socket()));
+            }
+        } finally {
+            executor.shutdown();
         }
     }
 
+    /**
+     * Serves connections with a bounded worker pool that sheds load once its queue is full.
+     * The pool's statistics are exposed over JMX.
+     * 
+     * @throws IOException Thrown if an IO error happens while waiting for connections
+     */
+    private void serveWithWorkerPool() throws IOException {
+        WorkerPool workerPool = new WorkerPool(this.workerCount, this.queueDepth);
+        workerPool.registerMBean();
+        System.out.println("Serving connections with " + this.workerCount + " workers and a queue depth of " + this.queueDepth);
+
+        try {
+            while (true) {
+                workerPool.serve(serverChannel.accept());
+            }
+        } finally {
+            workerPool.shutdown();
+        }
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for every task.
+     * The factory method is looked up reflectively, so the server still runs on Java runtimes without virtual threads
+     * 
+     * @return A virtual thread per task executor, or a cached platform thread pool if virtual threads are not supported
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            System.out.println("Virtual threads are not supported by this Java runtime. Falling back to platform threads");
+            return Executors.newCachedThreadPool();
+        }
+    }
 
+    /**
+     * Distributes accepted connections round robin over a fixed number of event loops.
+     * Each event loop owns its connections for their whole lifetime. The requests of all event loops
+     * are handled by a shared, fixed number of workers, so blocking work never stalls an event loop.
+     * Connections whose requests find all workers busy and the queue full are answered with 503 Service Unavailable.
+     * 
+     * @throws IOException Thrown if an IO error happens while waiting for connections
+     */
+    private void serveWithEventLoops() throws IOException {
+        ExecutorService workers = new ThreadPoolExecutor(this.workerCount, this.workerCount, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(this.queueDepth), new ThreadPoolExecutor.AbortPolicy());
+        EventLoop[] eventLoops = new EventLoop[this.eventLoopCount];
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(i, workers);
+            eventLoops[i].start();
+        }
+        System.out.println("Serving connections with " + eventLoops.length + " event loops, " + this.workerCount
+            + " workers and a queue depth of " + this.queueDepth);
 
+        try {
+            int next = 0;
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                eventLoops[next].register(channel);
+                next = (next + 1) % eventLoops.length;
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
 
 }
\ No newline at end of file
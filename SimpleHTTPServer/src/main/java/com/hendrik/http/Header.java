@@ -1,29 +1,45 @@
 package com.hendrik.http;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 /**
  * Class representing HTTP Header
- * This class is used as generic header for both requests and responses
+ * This class is used as generic header for both requests and responses.
+ * The values are stored in an array indexed by the field's ordinal. The value lists are kept when the header is cleared,
+ * so a header that is reused for all requests of a connection does not allocate anything but the values themselves
  * 
  * @author Hendrik Tjabben
  */
 public class Header {
 
     /**
-     * All header lines
+     * The values of all fields, indexed by the field's ordinal. Lists are created when a field is set for the first time
+     * and are empty while the field is not set
      */
-    private Map<HeaderFields.Field, List<String>> headerEntries;
+    private final List<String>[] headerEntries;
 
     /**
      * Basic constructor for a new Header instance
      */
+    @SuppressWarnings("unchecked")
     public Header() {
-        this.headerEntries = new HashMap<HeaderFields.Field, List<String>>();
+        // Arrays of a generic type cannot be created, the array only ever holds lists of strings
+        this.headerEntries = (List<String>[]) new List<?>[HeaderFields.FIELDS.length];
+    }
+
+    /**
+     * Removes all entries, so the header can be reused for another message.
+     * The value lists are kept and refilled
+     */
+    public void clear() {
+        for (List<String> values : this.headerEntries) {
+            if (values != null) {
+                values.clear();
+            }
+        }
     }
 
     /**
@@ -35,18 +51,23 @@ public class Header {
     public void addEntry(final HeaderFields.Field field, final String value) {
 
         if (field != null) {
+            getOrCreateValues(field).add(value);
+        }
+    }
 
-            if (this.headerEntries.containsKey(field)) {
-                List<String> currentEntries = this.headerEntries.get(field);
-                currentEntries.add(value);
-                this.headerEntries.put(field, currentEntries);
-            } else {
-                List<String> newEntryList = new ArrayList<String>();
-                newEntryList.add(value);
-                this.headerEntries.put(field, newEntryList);
-            }
-
+    /**
+     * Gets the value list of a field, creating it if the field was never set
+     * 
+     * @param field The field to get the list for
+     * @return The field's list of values
+     */
+    private List<String> getOrCreateValues(final HeaderFields.Field field) {
+        List<String> values = this.headerEntries[field.ordinal()];
+        if (values == null) {
+            values = new ArrayList<String>(1);
+            this.headerEntries[field.ordinal()] = values;
         }
+        return values;
     }
 
     /**
@@ -56,41 +77,143 @@ public class Header {
      * @return True if the line was added, false otherwise
      */
     public boolean addEntryWhenSupported(final String line) {
+        byte[] lineBytes = line.getBytes(StandardCharsets.ISO_8859_1);
+        return addEntryWhenSupported(lineBytes, 0, lineBytes.length);
+    }
 
-        // String lineNoSpaces = line.replaceAll(" ", "");
+    /**
+     * Parses a header line that is stored in a byte range.
+     * When the line represents a supported header field, it is added.
+     * Strings are only created for the values of supported fields
+     * 
+     * @param bytes The array containing the line
+     * @param offset The index of the line's first byte
+     * @param length The number of bytes the line takes, excluding the line break
+     * @return True if the line was added, false otherwise
+     */
+    public boolean addEntryWhenSupported(final byte[] bytes, final int offset, final int length) {
 
-        String[] keyValue = line.split(":", 2);
+        int end = offset + length;
+        int colon = offset;
+        while (colon < end && bytes[colon] != ':') {
+            colon++;
+        }
 
-        if (keyValue.length != 2) {
+        if (colon == end) {
             return false;
         }
 
-        HeaderFields.Field field = HeaderFields.getFieldForString(keyValue[0]);
+        int nameStart = skipSpaces(bytes, offset, colon);
+        int nameEnd = colon;
+        while (nameEnd > nameStart && isSpace(bytes[nameEnd - 1])) {
+            nameEnd--;
+        }
+
+        HeaderFields.Field field = HeaderFields.getFieldForBytes(bytes, nameStart, nameEnd - nameStart);
         if (field == null) {
             return false;
         }
 
-        String valueLine = keyValue[1].trim();
-
-        if (!HeaderFields.isDateField(field)) {
-            valueLine = valueLine.replaceAll(" ", "");
+        int valueStart = skipSpaces(bytes, colon + 1, end);
+        int valueEnd = end;
+        while (valueEnd > valueStart && isSpace(bytes[valueEnd - 1])) {
+            valueEnd--;
         }
 
-        List<String> newEntryList = new ArrayList<String>();
-        if (HeaderFields.allowsMultipleValues(field)) {
-            String[] valueList = valueLine.split(",");
+        boolean keepSpaces = HeaderFields.isDateField(field);
 
-            for (String value : valueList) {
-                newEntryList.add(value);
+        // A repeated field replaces the earlier values
+        List<String> newEntryList = getOrCreateValues(field);
+        newEntryList.clear();
+        if (HeaderFields.allowsMultipleValues(field)) {
+            int elementStart = valueStart;
+            for (int i = valueStart; i <= valueEnd; i++) {
+                if (i == valueEnd || bytes[i] == ',') {
+                    newEntryList.add(decodeValue(bytes, elementStart, i, keepSpaces));
+                    elementStart = i + 1;
+                }
             }
         } else {
-            newEntryList.add(valueLine);
+            newEntryList.add(decodeValue(bytes, valueStart, valueEnd, keepSpaces));
         }
 
-        this.headerEntries.put(field, newEntryList);
         return true;
     }
+
+    /**
+     * Creates the string for a header value stored in a byte range
+     * 
+     * @param bytes The array containing the value
+     * @param start The index of the value's first byte
+     * @param end The index after the value's last byte
+     * @param keepSpaces Whether spaces are part of the value (e.g. for dates) or should be removed
+     * @return The decoded value
+     */
+    private static String decodeValue(final byte[] bytes, final int start, final int end, final boolean keepSpaces) {
+
+        int spaces = 0;
+        if (!keepSpaces) {
+            for (int i = start; i < end; i++) {
+                if (bytes[i] == ' ') {
+                    spaces++;
+                }
+            }
+        }
+
+        if (spaces == 0) {
+            return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+
+        byte[] valueBytes = new byte[end - start - spaces];
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] != ' ') {
+                valueBytes[index++] = bytes[i];
+            }
+        }
+        return new String(valueBytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Skips spaces and tabs in a byte range
+     * 
+     * @param bytes The array to scan
+     * @param start The index to start at
+     * @param end The index after the range's last byte
+     * @return The index of the first byte that is neither space nor tab, or end
+     */
+    private static int skipSpaces(final byte[] bytes, final int start, final int end) {
+        int index = start;
+        while (index < end && isSpace(bytes[index])) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Checks whether a byte is a space or a tab
+     * 
+     * @param value The byte to check
+     * @return True for spaces and tabs, false otherwise
+     */
+    private static boolean isSpace(final byte value) {
+        return value == ' ' || value == '\t';
+    }
     
+    /**
+     * Get the values of a field without wrapping them
+     * 
+     * @param field The header entry to get the values for
+     * @return The field's values. null if the field is not set
+     */
+    List<String> getValueList(final HeaderFields.Field field) {
+        List<String> values = this.headerEntries[field.ordinal()];
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        return values;
+    }
+
     /**
      * Get the first value for a specific header field
      * 
@@ -98,11 +221,12 @@ public class Header {
      * @return An optional containing the first value for the requested field. Empty if field not set in header
      */
     public Optional<String> getValue(final HeaderFields.Field field) {
-        if (!this.headerEntries.containsKey(field)) {
+        List<String> values = getValueList(field);
+        if (values == null) {
             return Optional.empty();
         }
 
-        return Optional.of(this.headerEntries.get(field).get(0));
+        return Optional.of(values.get(0));
     }
 
     /**
@@ -112,11 +236,7 @@ public class Header {
      * @return An optional containing all values for the requested field. Empty if field not set in header
      */
     public Optional<List<String>> getValues(final HeaderFields.Field field) {
-        if (!this.headerEntries.containsKey(field)) {
-            return Optional.empty();
-        }
-
-        return Optional.of(this.headerEntries.get(field));
+        return Optional.ofNullable(getValueList(field));
     }
 
     /**
@@ -126,13 +246,13 @@ public class Header {
      * @return The header line in an optional. Empty if field not set in header
      */
     public Optional<String> getLine(final HeaderFields.Field field) {
-        Optional<List<String>> values = getValues(field);
+        List<String> values = getValueList(field);
 
-        if (!values.isPresent()) {
+        if (values == null) {
             return Optional.empty();
         }
 
-        String flattenedLine = String.join(",", values.get());
+        String flattenedLine = String.join(",", values);
 
         StringBuilder entryBuilder = new StringBuilder()
             .append(HeaderFields.toString(field))
@@ -143,18 +263,21 @@ public class Header {
     }
 
     /**
-     * Get all lines for this header
+     * Get all lines for this header, in the order of the fields' ordinals
      * 
      * @return All lines that are set in this header
      */
     public List<String> getLines() {
         List<String> result = new ArrayList<String>();
 
-        for (Map.Entry<HeaderFields.Field, List<String>> entry : this.headerEntries.entrySet()) {
-            result.add(getLine(entry.getKey()).get());
+        for (HeaderFields.Field field : HeaderFields.FIELDS) {
+            Optional<String> line = getLine(field);
+            if (line.isPresent()) {
+                result.add(line.get());
+            }
         }
 
         return result;
     }
 
-}
\ No newline at end of file
+}
@@ -1,5 +1,9 @@
 package com.hendrik.http;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class with convenience methods and enums for HTTP Header fields
  * 
@@ -41,6 +45,16 @@ public class HeaderFields{
          */
         OK,
 
+        /**
+         * The request was successful and the response contains the requested ranges of the resource
+         */
+        PARTIAL_CONTENT,
+
+        /**
+         * None of the requested ranges overlaps the resource
+         */
+        RANGE_NOT_SATISFIABLE,
+
         /**
          * The server has not found the requested resource
          */
@@ -66,10 +80,20 @@ public class HeaderFields{
          */
         PRECONDITION_FAILED,
 
+        /**
+         * The request's payload is larger than the server accepts
+         */
+        PAYLOAD_TOO_LARGE,
+
         /**
          * The server had an internal error
          */
-        INTERNALERROR
+        INTERNALERROR,
+
+        /**
+         * The server is currently overloaded and does not accept the request
+         */
+        SERVICE_UNAVAILABLE
     };
 
     /**
@@ -83,6 +107,8 @@ public class HeaderFields{
         switch(statusCode) {
             case OK:
                 return "200 OK";
+            case PARTIAL_CONTENT:
+                return "206 Partial Content";
             case NOTMODIFIED:
                 return "304 Not Modified";
             case BADREQUEST:
@@ -90,9 +116,15 @@ public class HeaderFields{
             case NOTFOUND:
                 return "404 Not Found";
             case PRECONDITION_FAILED:
-                return "413 Precondition Failed";
+                return "412 Precondition Failed";
+            case PAYLOAD_TOO_LARGE:
+                return "413 Payload Too Large";
+            case RANGE_NOT_SATISFIABLE:
+                return "416 Range Not Satisfiable";
             case INTERNALERROR:
                 return "500 Internal Server Error";
+            case SERVICE_UNAVAILABLE:
+                return "503 Service Unavailable";
             default:
                 return "501 Not Implemented";
 
@@ -147,7 +179,52 @@ public class HeaderFields{
         /**
          * Header field that expresses the connection type (keep-alive or close)
          */
-        CONNECTION
+        CONNECTION,
+
+        /**
+         * The number of seconds a client should wait before retrying the request
+         */
+        RETRY_AFTER,
+
+        /**
+         * The byte ranges of the resource the client requests
+         */
+        RANGE,
+
+        /**
+         * Header field that makes a Range request conditional on an entity tag or date
+         */
+        IF_RANGE,
+
+        /**
+         * Announces the range units the server supports for a resource
+         */
+        ACCEPT_RANGES,
+
+        /**
+         * The range of the resource that a partial response's body contains
+         */
+        CONTENT_RANGE,
+
+        /**
+         * The transfer coding applied to the message body, e.g. chunked for bodies of unknown length
+         */
+        TRANSFER_ENCODING,
+
+        /**
+         * The content codings, e.g. gzip, the client accepts
+         */
+        ACCEPT_ENCODING,
+
+        /**
+         * The content coding that was applied to the response body
+         */
+        CONTENT_ENCODING,
+
+        /**
+         * The request fields the response's representation depends on
+         */
+        VARY
 
     };
 
@@ -177,33 +254,163 @@ public class HeaderFields{
                 return "If-Modified-Since";
             case CONNECTION:
                 return "Connection";
+            case RETRY_AFTER:
+                return "Retry-After";
+            case RANGE:
+                return "Range";
+            case IF_RANGE:
+                return "If-Range";
+            case ACCEPT_RANGES:
+                return "Accept-Ranges";
+            case CONTENT_RANGE:
+                return "Content-Range";
+            case TRANSFER_ENCODING:
+                return "Transfer-Encoding";
+            case ACCEPT_ENCODING:
+                return "Accept-Encoding";
+            case CONTENT_ENCODING:
+                return "Content-Encoding";
+            case VARY:
+                return "Vary";
             default:
                 return null;
         }
     }
 
+    /**
+     * All supported fields, indexed by their ordinal. Shared, so lookups do not copy {@link Field#values()}
+     */
+    static final Field[] FIELDS = Field.values();
+
+    /**
+     * The header string representations of all supported fields, indexed by the field's ordinal
+     */
+    private static final String[] FIELD_STRINGS = createFieldStrings();
+
+    /**
+     * The header string representations of all supported fields as bytes, indexed by the field's ordinal
+     */
+    private static final byte[][] FIELD_NAMES = createFieldNames();
+
+    /**
+     * The supported fields grouped by the length of their names, so a name is only compared with names of its length
+     */
+    private static final Field[][] FIELDS_BY_LENGTH = createFieldsByLength();
+
+    /**
+     * Collects the string representations of all fields
+     * 
+     * @return The fields' names, indexed by the field's ordinal
+     */
+    private static String[] createFieldStrings() {
+        String[] names = new String[FIELDS.length];
+        for (Field field : FIELDS) {
+            names[field.ordinal()] = toString(field);
+        }
+        return names;
+    }
+
+    /**
+     * Encodes the string representations of all fields
+     * 
+     * @return The fields' names as bytes, indexed by the field's ordinal
+     */
+    private static byte[][] createFieldNames() {
+        byte[][] names = new byte[FIELDS.length][];
+        for (Field field : FIELDS) {
+            names[field.ordinal()] = FIELD_STRINGS[field.ordinal()].getBytes(StandardCharsets.US_ASCII);
+        }
+        return names;
+    }
+
+    /**
+     * Groups the fields by the length of their names
+     * 
+     * @return The fields, indexed by the length of their names. Lengths without fields map to empty arrays
+     */
+    private static Field[][] createFieldsByLength() {
+        int maxLength = 0;
+        for (byte[] name : FIELD_NAMES) {
+            maxLength = Math.max(maxLength, name.length);
+        }
+
+        List<List<Field>> groups = new ArrayList<List<Field>>(maxLength + 1);
+        for (int length = 0; length <= maxLength; length++) {
+            groups.add(new ArrayList<Field>());
+        }
+        for (Field field : FIELDS) {
+            groups.get(FIELD_NAMES[field.ordinal()].length).add(field);
+        }
+
+        Field[][] fieldsByLength = new Field[maxLength + 1][];
+        for (int length = 0; length <= maxLength; length++) {
+            fieldsByLength[length] = groups.get(length).toArray(new Field[0]);
+        }
+        return fieldsByLength;
+    }
+
+    /**
+     * Gets the supported field whose name is stored in a byte range, ignoring the case.
+     * Only names of the same length are compared, and no memory is allocated
+     * 
+     * @param bytes The array containing the field's name
+     * @param offset The index of the name's first byte
+     * @param length The number of bytes the name takes
+     * @return The field with the given name. null if the field is not supported
+     */
+    public static Field getFieldForBytes(final byte[] bytes, final int offset, final int length) {
+
+        if (length >= FIELDS_BY_LENGTH.length) {
+            return null;
+        }
+
+        for (Field field : FIELDS_BY_LENGTH[length]) {
+            byte[] name = FIELD_NAMES[field.ordinal()];
+
+            int i = 0;
+            while (i < length && toLowerCase(name[i]) == toLowerCase(bytes[offset + i])) {
+                i++;
+            }
+            if (i == length) {
+                return field;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Converts an ASCII letter to lower case
+     * 
+     * @param value The byte to convert
+     * @return The lower case letter if value is an upper case letter, value otherwise
+     */
+    private static byte toLowerCase(final byte value) {
+        if (value >= 'A' && value <= 'Z') {
+            return (byte) (value + ('a' - 'A'));
+        }
+        return value;
+    }
+
+    /**
+     * Gets the supported field with a given name, ignoring the case.
+     * Only names of the same length are compared, and no memory is allocated
+     * 
+     * @param fieldString The field's name
+     * @return The field with the given name. null if the field is not supported
+     */
     public static Field getFieldForString(final String fieldString) {
 
-        if (fieldString.toLowerCase().equals(toString(Field.CONTENT_TYPE).toLowerCase())) {
-            return Field.CONTENT_TYPE;
-        } else if (fieldString.toLowerCase().equals(toString(Field.CONTENT_LENGTH).toLowerCase())) {
-            return Field.CONTENT_LENGTH;
-        } else if (fieldString.toLowerCase().equals(toString(Field.SERVER).toLowerCase())) {
-            return Field.SERVER;
-        } else if (fieldString.toLowerCase().equals(toString(Field.DATE).toLowerCase())) {
-            return Field.DATE;
-        } else if (fieldString.toLowerCase().equals(toString(Field.ENTITIY_TAG).toLowerCase())) {
-            return Field.ENTITIY_TAG;
-        } else if (fieldString.toLowerCase().equals(toString(Field.IF_MATCH).toLowerCase())) {
-            return Field.IF_MATCH;
-        } else if (fieldString.toLowerCase().equals(toString(Field.IF_NONE_MATCH).toLowerCase())) {
-            return Field.IF_NONE_MATCH;
-        } else if (fieldString.toLowerCase().equals(toString(Field.IF_MODIFIED_SINCE).toLowerCase())) {
-            return Field.IF_MODIFIED_SINCE;
-        } else if (fieldString.toLowerCase().equals(toString(Field.CONNECTION).toLowerCase())) {
-            return Field.CONNECTION;
+        if (fieldString.length() >= FIELDS_BY_LENGTH.length) {
+            return null;
         }
-        
+
+        for (Field field : FIELDS_BY_LENGTH[fieldString.length()]) {
+            if (FIELD_STRINGS[field.ordinal()].equalsIgnoreCase(fieldString)) {
+                return field;
+            }
+        }
+
         return null;
     }
 
@@ -215,7 +422,7 @@ public class HeaderFields{
      */
     public static boolean allowsMultipleValues(final Field field) {
 
-        if (field == Field.IF_MATCH || field == Field.IF_NONE_MATCH) {
+        if (field == Field.IF_MATCH || field == Field.IF_NONE_MATCH || field == Field.ACCEPT_ENCODING) {
             return true;
         }
         
@@ -223,14 +430,15 @@ public class HeaderFields{
     }
 
     /**
-     * Check whether the specified header field represents a date
+     * Check whether the specified header field represents a date.
+     * If-Range is included because it carries either a date or an entity tag
      * 
      * @param field The field to check for
      * @return True if a RFC1123 Date is represented by this field, false otherwise
      */
     public static boolean isDateField(final Field field) {
 
-        if (field == Field.IF_MODIFIED_SINCE || field == Field.DATE) {
+        if (field == Field.IF_MODIFIED_SINCE || field == Field.DATE || field == Field.IF_RANGE) {
             return true;
         }
         return false;
@@ -2,9 +2,14 @@ package com.hendrik.http;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
 
 import javax.management.InvalidAttributeValueException;
 
+import com.hendrik.http.DB.CommentWriter;
+
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -33,6 +38,11 @@ public class Main {
      */
     private static String DEFAULT_ROOT_DIR = "./";
 
+    /**
+     * The default connection mode to use when no other is specified
+     */
+    private static final String DEFAULT_MODE = "thread";
+
     /**
      * Main hook for the HTTP Server
      * The options parsing is taken from https://stackoverflow.com/questions/367706/how-do-i-parse-command-line-arguments-in-java
@@ -55,6 +65,70 @@ public class Main {
         rootDirOption.setRequired(false);
         options.addOption(rootDirOption);
 
+        Option modeOption = new Option("m", "mode", true, "How connections are served: thread (one thread per connection), virtual (one virtual thread per connection), pool (bounded worker pool) or selector (non-blocking event loops)");
+        modeOption.setRequired(false);
+        options.addOption(modeOption);
+
+        Option eventLoopsOption = new Option("l", "event-loops", true, "The number of event loops used in selector mode. Defaults to the number of processors");
+        eventLoopsOption.setRequired(false);
+        options.addOption(eventLoopsOption);
+
+        Option workersOption = new Option("w", "workers", true, "The number of worker threads used in pool mode, and to handle requests in selector mode");
+        workersOption.setRequired(false);
+        options.addOption(workersOption);
+
+        Option queueDepthOption = new Option("q", "queue-depth", true, "The number of connections that may wait for a worker in pool and selector mode");
+        queueDepthOption.setRequired(false);
+        options.addOption(queueDepthOption);
+
+        Option cacheSizeOption = new Option("c", "cache-size", true, "The number of megabytes the in-memory file cache may hold. 0 disables the cache");
+        cacheSizeOption.setRequired(false);
+        options.addOption(cacheSizeOption);
+
+        Option directCacheSizeOption = new Option("o", "direct-cache-size", true, "The number of megabytes of off-heap memory used to cache large files. 0 (default) disables the cache");
+        directCacheSizeOption.setRequired(false);
+        options.addOption(directCacheSizeOption);
+
+        Option compressionTypesOption = new Option("z", "compression-types", true, "Comma separated content types that are compressed for clients accepting gzip or deflate, e.g. text/html,application/json. none disables compression");
+        compressionTypesOption.setRequired(false);
+        options.addOption(compressionTypesOption);
+
+        Option compressionMinSizeOption = new Option("s", "compression-min-size", true, "The minimum number of bytes a response body needs to be compressed. Defaults to 1024");
+        compressionMinSizeOption.setRequired(false);
+        options.addOption(compressionMinSizeOption);
+
+        Option variantCacheOption = new Option("g", "compression-cache", true, "The directory in which compressed variants of static files are kept. Defaults to a directory in the system's temporary directory");
+        variantCacheOption.setRequired(false);
+        options.addOption(variantCacheOption);
+
+        Option variantCacheSizeOption = new Option("k", "compression-cache-size", true, "The number of megabytes the compressed variants may take on disk. 0 disables the cache");
+        variantCacheSizeOption.setRequired(false);
+        options.addOption(variantCacheSizeOption);
+
+        Option bodySpillThresholdOption = new Option("b", "body-spill-threshold", true, "The number of bytes above which request bodies are buffered in a temporary file. Defaults to 65536");
+        bodySpillThresholdOption.setRequired(false);
+        options.addOption(bodySpillThresholdOption);
+
+        Option maxBodySizeOption = new Option("x", "max-body-size", true, "The maximum number of megabytes a request body may have. Defaults to 16");
+        maxBodySizeOption.setRequired(false);
+        options.addOption(maxBodySizeOption);
+
+        Option commentBatchSizeOption = new Option("n", "comment-batch-size", true, "The maximum number of comments written to the database at once. Defaults to 64");
+        commentBatchSizeOption.setRequired(false);
+        options.addOption(commentBatchSizeOption);
+
+        Option commentLingerOption = new Option("e", "comment-linger", true, "The number of milliseconds a batch of comments waits for more comments. Defaults to 5");
+        commentLingerOption.setRequired(false);
+        options.addOption(commentLingerOption);
+
+        Option commentDurabilityOption = new Option("y", "comment-durability", true, "When a posted comment counts as added: queued or acknowledged. Defaults to acknowledged");
+        commentDurabilityOption.setRequired(false);
+        options.addOption(commentDurabilityOption);
+
+        Option wallPageSizeOption = new Option("a", "wall-page-size", true, "The number of comments shown per page of the wall. Defaults to 50");
+        wallPageSizeOption.setRequired(false);
+        options.addOption(wallPageSizeOption);
+
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine cmd;
@@ -75,8 +149,155 @@ public class Main {
 
             String rootDir = cmd.getOptionValue("directory", DEFAULT_ROOT_DIR);
 
+            String modeString = cmd.getOptionValue("mode", DEFAULT_MODE);
+            HTTPServer.ConnectionMode mode = HTTPServer.ConnectionMode.THREAD;
+
+            if (modeString.toLowerCase().equals("selector")) {
+                mode = HTTPServer.ConnectionMode.SELECTOR;
+            } else if (modeString.toLowerCase().equals("virtual")) {
+                mode = HTTPServer.ConnectionMode.VIRTUAL;
+            } else if (modeString.toLowerCase().equals("pool")) {
+                mode = HTTPServer.ConnectionMode.POOL;
+            } else if (!modeString.toLowerCase().equals("thread")) {
+                System.err.println("Error: Mode must be one of thread, virtual, pool or selector");
+                System.exit(1);
+            }
+
             try {
                 server = new HTTPServer(port, rootDir);
+                server.setConnectionMode(mode);
+
+                if (cmd.hasOption("event-loops")) {
+                    try {
+                        server.setEventLoopCount(Integer.parseInt(cmd.getOptionValue("event-loops")));
+                    } catch (NumberFormatException ex) {
+                        System.err.println("Error: Number of event loops must be a number");
+                        System.exit(1);
+                    }
+                }
+
+                if (cmd.hasOption("workers")) {
+                    try {
+                        server.setWorkerCount(Integer.parseInt(cmd.getOptionValue("workers")));
+                    } catch (NumberFormatException ex) {
+                        System.err.println("Error: Number of workers must be a number");
+                        System.exit(1);
+                    }
+                }
+
+                if (cmd.hasOption("queue-depth")) {
+                    try {
+                        server.setQueueDepth(Integer.parseInt(cmd.getOptionValue("queue-depth")));
+                    } catch (NumberFormatException ex) {
+                        System.err.println("Error: Queue depth must be a number");
+                        System.exit(1);
+                    }
+                }
+
+                if (cmd.hasOption("cache-size")) {
+                    try {
+                        server.setFileCacheSize(Long.parseLong(cmd.getOptionValue("cache-size")) * 1024 * 1024);
+                    } catch (NumberFormatException ex) {
+                        System.err.println("Error: Cache size must be a number");
+                        System.exit(1);
+                    }
+                }
+
+                if (cmd.hasOption("direct-cache-size")) {
+                    try {
+                        server.setDirectCacheSize(Long.parseLong(cmd.getOptionValue("direct-cache-size")) * 1024 * 1024);
+                    } catch (NumberFormatException ex) {
+                        System.err.println("Error: Off-heap cache size must be a number");
+                        System.exit(1);
+                    }
+                }
+
+                if (cmd.hasOption("compression-types")) {
+                    String types = cmd.getOptionValue("compression-types");
+                    if (types.toLowerCase().equals("none")) {
+                        server.setCompressionTypes(Collections.<String>emptyList());
+                    } else {
+                        server.setCompressionTypes(Arrays.asList(types.split(",")));
+                    }
+                }
+
+                if (cmd.hasOption("compression-min-size")) {
+                    try {
+                        server.setCompressionMinSize(Long.parseLong(cmd.getOptionValue("compression-min-size")));
+                    } catch (NumberFormatException ex) {
+                        System.err.println("Error: Minimum compression size must be a number");
+                        System.exit(1);
+                    }
+                }
+
+                if (cmd.hasOption("compression-cache")) {
+                    server.setVariantCacheDirectory(Paths.get(cmd.getOptionValue("compression-cache")));
+                }
+
+                if (cmd.hasOption("compression-cache-size")) {
+                    try {
+                        server.setVariantCacheSize(Long.parseLong(cmd.getOptionValue("compression-cache-size")) * 1024 * 1024);
+                    } catch (NumberFormatException ex) {
+                        System.err.println("Error: Compressed variant cache size must be a number");
+                        System.exit(1);
+                    }
+                }
+
+                if (cmd.hasOption("body-spill-threshold")) {
+                    try {
+                        server.setBodySpillThreshold(Long.parseLong(cmd.getOptionValue("body-spill-threshold")));
+                    } catch (NumberFormatException ex) {
+                        System.err.println("Error: Request body spill threshold must be a number");
+                        System.exit(1);
+                    }
+                }
+
+                if (cmd.hasOption("max-body-size")) {
+                    try {
+                        server.setMaxBodySize(Long.parseLong(cmd.getOptionValue("max-body-size")) * 1024 * 1024);
+                    } catch (NumberFormatException ex) {
+                        System.err.println("Error: Maximum request body size must be a number");
+                        System.exit(1);
+                    }
+                }
+
+                if (cmd.hasOption("comment-batch-size")) {
+                    try {
+                        server.setCommentBatchSize(Integer.parseInt(cmd.getOptionValue("comment-batch-size")));
+                    } catch (NumberFormatException ex) {
+                        System.err.println("Error: Comment batch size must be a number");
+                        System.exit(1);
+                    }
+                }
+
+                if (cmd.hasOption("comment-linger")) {
+                    try {
+                        server.setCommentLinger(Long.parseLong(cmd.getOptionValue("comment-linger")));
+                    } catch (NumberFormatException ex) {
+                        System.err.println("Error: Comment linger time must be a number");
+                        System.exit(1);
+                    }
+                }
+
+                if (cmd.hasOption("comment-durability")) {
+                    String durabilityString = cmd.getOptionValue("comment-durability").toLowerCase();
+                    if (durabilityString.equals("queued")) {
+                        server.setCommentDurability(CommentWriter.Durability.QUEUED);
+                    } else if (!durabilityString.equals("acknowledged")) {
+                        System.err.println("Error: Comment durability must be one of queued or acknowledged");
+                        System.exit(1);
+                    }
+                }
+
+                if (cmd.hasOption("wall-page-size")) {
+                    try {
+                        server.setWallPageSize(Integer.parseInt(cmd.getOptionValue("wall-page-size")));
+                    } catch (NumberFormatException ex) {
+                        System.err.println("Error: Wall page size must be a number");
+                        System.exit(1);
+                    }
+                }
+
                 server.serve();
             } catch (InvalidAttributeValueException ex) {
                 System.out.println("The server prohibits to use the specified parameters.");
@@ -0,0 +1,516 @@
+package com.hendrik.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A streaming reader for multipart/form-data payloads.
+ * The payload is scanned for the boundary delimiter over a fixed buffer, so parts are never held as a whole.
+ * Parts are returned one after another by {@link #nextPart()}, and a part's content is read as a stream.
+ * Content that is not read is skipped when the next part is requested, so the reader's memory use
+ * does not depend on the size of the payload. Every part's content is bounded by a maximum size.
+ *
+ * This implementation is based on https://tools.ietf.org/html/rfc7578 and https://tools.ietf.org/html/rfc2046#section-5.1.1
+ *
+ * @author Hendrik Tjabben
+ */
+public class MultipartReader {
+
+    /**
+     * The media type of form data payloads
+     */
+    public static final String FORM_DATA = "multipart/form-data";
+
+    /**
+     * The default capacity of the reader's buffer
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The maximum length of a part's header line
+     */
+    private static final int MAX_LINE_LENGTH = 1024;
+
+    /**
+     * The maximum number of header lines a part may have
+     */
+    private static final int MAX_HEADER_LINES = 16;
+
+    /**
+     * The stream the payload is read from
+     */
+    private final InputStream input;
+
+    /**
+     * The delimiter preceding every part: CRLF, two dashes and the boundary
+     */
+    private final byte[] delimiter;
+
+    /**
+     * The maximum number of bytes a part's content may have
+     */
+    private final long maxPartSize;
+
+    /**
+     * The buffered bytes of the payload
+     */
+    private final byte[] buffer;
+
+    /**
+     * The index of the first unread buffered byte
+     */
+    private int position;
+
+    /**
+     * The index after the last buffered byte
+     */
+    private int limit;
+
+    /**
+     * Whether the stream reached its end
+     */
+    private boolean endOfStream;
+
+    /**
+     * Whether the content in front of the next delimiter was read completely
+     */
+    private boolean partEnded;
+
+    /**
+     * Whether the closing delimiter was read
+     */
+    private boolean finished;
+
+    /**
+     * The part whose content is read
+     */
+    private Part current;
+
+    /**
+     * A part of a multipart payload. Its content can only be read until the next part is requested
+     */
+    public class Part {
+
+        /**
+         * The name of the form field the part belongs to. null if the part does not declare one
+         */
+        private final String name;
+
+        /**
+         * The name of the file the part was sent from. null if the part is no file
+         */
+        private final String fileName;
+
+        /**
+         * The part's content type. null if the part does not declare one
+         */
+        private final String contentType;
+
+        /**
+         * The stream reading the part's content
+         */
+        private final InputStream content;
+
+        /**
+         * The number of content bytes read so far
+         */
+        private long length;
+
+        /**
+         * Constructor for a new part
+         *
+         * @param name The form field's name
+         * @param fileName The file name
+         * @param contentType The content type
+         */
+        private Part(final String name, final String fileName, final String contentType) {
+            this.name = name;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.content = new PartStream();
+            this.length = 0;
+        }
+
+        /**
+         * Getter for the name of the form field the part belongs to
+         *
+         * @return The field's name. null if the part does not declare one
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Getter for the name of the file the part was sent from
+         *
+         * @return The file name. null if the part is no file
+         */
+        public String getFileName() {
+            return this.fileName;
+        }
+
+        /**
+         * Getter for the part's content type
+         *
+         * @return The content type. null if the part does not declare one
+         */
+        public String getContentType() {
+            return this.contentType;
+        }
+
+        /**
+         * Getter for the stream reading the part's content.
+         * It ends at the next delimiter and throws an IOException once the part exceeds the maximum size
+         *
+         * @return The content stream
+         */
+        public InputStream getContent() {
+            return this.content;
+        }
+
+        /**
+         * Reads the rest of the part's content as UTF-8 text
+         *
+         * @return The text
+         * @throws IOException Thrown if the content cannot be read or exceeds the maximum size
+         */
+        public String readString() throws IOException {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] chunk = new byte[1024];
+            int count;
+            while ((count = this.content.read(chunk, 0, chunk.length)) != -1) {
+                output.write(chunk, 0, count);
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * The stream reading a part's content from the reader's buffer
+         */
+        private class PartStream extends InputStream {
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(final byte[] bytes, final int offset, final int count) throws IOException {
+                if (MultipartReader.this.current != Part.this) {
+                    return -1;
+                }
+
+                int read = readContent(bytes, offset, count);
+                if (read > 0) {
+                    Part.this.length += read;
+                    if (Part.this.length > MultipartReader.this.maxPartSize) {
+                        throw new IOException("Multipart part too large: " + Part.this.name);
+                    }
+                }
+                return read;
+            }
+        }
+    }
+
+    /**
+     * Extracts the boundary from a request's Content-Type
+     *
+     * @param contentType The request's Content-Type value. May be null
+     * @return The boundary. null if the payload is no form data or does not declare a boundary
+     */
+    public static String getBoundary(final String contentType) {
+
+        if (contentType == null) {
+            return null;
+        }
+
+        String[] parameters = contentType.split(";");
+        if (!parameters[0].trim().equalsIgnoreCase(FORM_DATA)) {
+            return null;
+        }
+
+        for (int i = 1; i < parameters.length; i++) {
+            String boundary = getParameter(parameters[i], "boundary");
+            if (boundary != null && !boundary.isEmpty()) {
+                return boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Constructor for a new multipart reader
+     *
+     * @param input The stream to read the payload from
+     * @param boundary The payload's boundary, see {@link #getBoundary(String)}
+     * @param maxPartSize The maximum number of bytes a part's content may have
+     */
+    public MultipartReader(final InputStream input, final String boundary, final long maxPartSize) {
+        this.input = input;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.maxPartSize = maxPartSize;
+        this.buffer = new byte[Math.max(BUFFER_SIZE, 2 * this.delimiter.length)];
+
+        // The first delimiter is not preceded by a line break, so the preamble is treated as an unnamed part ending in one
+        this.buffer[0] = '\r';
+        this.buffer[1] = '\n';
+        this.position = 0;
+        this.limit = 2;
+        this.endOfStream = false;
+        this.partEnded = false;
+        this.finished = false;
+        this.current = null;
+    }
+
+    /**
+     * Moves to the next part. The rest of the current part is skipped
+     *
+     * @return The next part. null after the last part
+     * @throws IOException Thrown if the payload cannot be read or is no valid multipart payload
+     */
+    public Part nextPart() throws IOException {
+
+        this.current = null;
+
+        if (this.finished) {
+            return null;
+        }
+
+        skipContent();
+
+        // The delimiter is followed by two dashes for the last part, otherwise by a line break
+        this.position += this.delimiter.length;
+        this.partEnded = false;
+        if (!ensureBuffered(2)) {
+            throw new IOException("Multipart payload ends after a delimiter");
+        }
+        if (this.buffer[this.position] == '-' && this.buffer[this.position + 1] == '-') {
+            this.finished = true;
+            return null;
+        }
+        readLine();
+
+        String name = null;
+        String fileName = null;
+        String contentType = null;
+
+        int lines = 0;
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            if (++lines > MAX_HEADER_LINES) {
+                throw new IOException("Multipart part has too many header lines");
+            }
+
+            int colon = line.indexOf(':');
+            if (colon == -1) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+
+            if (field.equalsIgnoreCase("Content-Disposition")) {
+                String[] parameters = value.split(";");
+                for (int i = 1; i < parameters.length; i++) {
+                    String parameter = getParameter(parameters[i], "name");
+                    if (parameter != null) {
+                        name = parameter;
+                    }
+                    parameter = getParameter(parameters[i], "filename");
+                    if (parameter != null) {
+                        fileName = parameter;
+                    }
+                }
+            } else if (field.equalsIgnoreCase("Content-Type")) {
+                contentType = value;
+            }
+        }
+
+        this.current = new Part(name, fileName, contentType);
+        return this.current;
+    }
+
+    /**
+     * Reads content bytes up to the next delimiter. Bytes that may be the beginning of the delimiter are kept buffered
+     *
+     * @param bytes The array to read into
+     * @param offset The index to read to
+     * @param count The maximum number of bytes to read
+     * @return The number of bytes read. -1 if the next delimiter is reached
+     * @throws IOException Thrown if the payload cannot be read or ends before the next delimiter
+     */
+    private int readContent(final byte[] bytes, final int offset, final int count) throws IOException {
+
+        if (this.partEnded || this.finished) {
+            return -1;
+        }
+
+        while (true) {
+            int delimiterIndex = indexOfDelimiter();
+            int available;
+
+            if (delimiterIndex != -1) {
+                available = delimiterIndex - this.position;
+                if (available == 0) {
+                    this.partEnded = true;
+                    return -1;
+                }
+            } else {
+                // A delimiter may begin in the buffer's last bytes
+                available = this.limit - this.position - (this.delimiter.length - 1);
+            }
+
+            if (available > 0) {
+                int read = Math.min(available, count);
+                System.arraycopy(this.buffer, this.position, bytes, offset, read);
+                this.position += read;
+                return read;
+            }
+
+            if (!fill()) {
+                throw new IOException("Multipart payload ends inside a part");
+            }
+        }
+    }
+
+    /**
+     * Skips content bytes up to the next delimiter without copying them
+     *
+     * @throws IOException Thrown if the payload cannot be read or ends before the next delimiter
+     */
+    private void skipContent() throws IOException {
+
+        while (!this.partEnded) {
+            int delimiterIndex = indexOfDelimiter();
+            if (delimiterIndex != -1) {
+                this.position = delimiterIndex;
+                this.partEnded = true;
+                return;
+            }
+
+            // A delimiter may begin in the buffer's last bytes
+            this.position = Math.max(this.position, this.limit - (this.delimiter.length - 1));
+            if (!fill()) {
+                throw new IOException("Multipart payload ends inside a part");
+            }
+        }
+    }
+
+    /**
+     * Searches the buffered bytes for the delimiter
+     *
+     * @return The delimiter's index. -1 if the buffered bytes do not contain it completely
+     */
+    private int indexOfDelimiter() {
+
+        int last = this.limit - this.delimiter.length;
+        for (int i = this.position; i <= last; i++) {
+            if (this.buffer[i] != '\r') {
+                continue;
+            }
+            int j = 1;
+            while (j < this.delimiter.length && this.buffer[i + j] == this.delimiter[j]) {
+                j++;
+            }
+            if (j == this.delimiter.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a line of a part's header, excluding its line break
+     *
+     * @return The line decoded as UTF-8
+     * @throws IOException Thrown if the payload ends or the line is too long
+     */
+    private String readLine() throws IOException {
+
+        int scanned = 0;
+        while (true) {
+            for (int i = this.position + scanned; i < this.limit; i++) {
+                if (this.buffer[i] == '\n') {
+                    int end = i > this.position && this.buffer[i - 1] == '\r' ? i - 1 : i;
+                    String line = new String(this.buffer, this.position, end - this.position, StandardCharsets.UTF_8);
+                    this.position = i + 1;
+                    return line;
+                }
+            }
+            scanned = this.limit - this.position;
+
+            if (scanned > MAX_LINE_LENGTH) {
+                throw new IOException("Multipart header line too long");
+            }
+            if (!fill()) {
+                throw new IOException("Multipart payload ends inside a part's header");
+            }
+        }
+    }
+
+    /**
+     * Makes sure that a number of bytes is buffered
+     *
+     * @param count The number of bytes
+     * @return True if the bytes are buffered, false if the payload ends before
+     * @throws IOException Thrown if the payload cannot be read
+     */
+    private boolean ensureBuffered(final int count) throws IOException {
+        while (this.limit - this.position < count) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the unread bytes to the buffer's front and reads more bytes behind them
+     *
+     * @return True if bytes were read, false if the payload ended
+     * @throws IOException Thrown if the payload cannot be read
+     */
+    private boolean fill() throws IOException {
+
+        if (this.endOfStream) {
+            return false;
+        }
+
+        if (this.position > 0) {
+            System.arraycopy(this.buffer, this.position, this.buffer, 0, this.limit - this.position);
+            this.limit -= this.position;
+            this.position = 0;
+        }
+
+        int read = this.input.read(this.buffer, this.limit, this.buffer.length - this.limit);
+        if (read == -1) {
+            this.endOfStream = true;
+            return false;
+        }
+        this.limit += read;
+        return true;
+    }
+
+    /**
+     * Gets the value of a header parameter if it has a certain name
+     *
+     * @param parameter The parameter, e.g. name="comment"
+     * @param name The expected name, ignoring the case
+     * @return The parameter's value without quotes. null if the parameter has another name
+     */
+    private static String getParameter(final String parameter, final String name) {
+
+        int equals = parameter.indexOf('=');
+        if (equals == -1 || !parameter.substring(0, equals).trim().equalsIgnoreCase(name)) {
+            return null;
+        }
+
+        String value = parameter.substring(equals + 1).trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
@@ -1,9 +1,8 @@
 package com.hendrik.http;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.channels.Channels;
 
 import com.hendrik.http.DB.DBHandler;
 
@@ -37,20 +36,18 @@ public class Request extends HTTPMessage {
      * @throws IOException An I/O error happened while parsing the stream
      */
     public Request(final InputStream inputStream) throws IOException {
-        super(new Header());
-
-        if (inputStream == null) {
-            System.out.println("Request created from empty input Stream");
-            this.method = HeaderFields.RequestMethod.UNSUPPORTED;
-            this.uri = "";
-            this.httpVersion = "";
-            return;
-        }
+        this(inputStream == null ? null : new RequestParser().read(Channels.newChannel(inputStream)));
+    }
 
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-        String statusLine = reader.readLine();
+    /**
+     * Create a new Request from a request that was parsed before
+     * 
+     * @param parsed The parsed request. null if the input stream was empty
+     */
+    private Request(final Request parsed) {
+        super(parsed == null ? new Header() : parsed.header);
 
-        if (statusLine == null || statusLine == "") {
+        if (parsed == null) {
             System.out.println("Request created from empty input Stream");
             this.method = HeaderFields.RequestMethod.UNSUPPORTED;
             this.uri = "";
@@ -58,41 +55,43 @@ public class Request extends HTTPMessage {
             return;
         }
 
-        String[] splittedStatusLine = statusLine.split("\\s+");
-
-        if (splittedStatusLine[0].toUpperCase().equals("GET")) {
-            this.method = HeaderFields.RequestMethod.GET;
-        } else if (splittedStatusLine[0].toUpperCase().equals("HEAD")) {
-            this.method = HeaderFields.RequestMethod.HEAD;
-        } else if (splittedStatusLine[0].toUpperCase().equals("POST")) {
-            this.method = HeaderFields.RequestMethod.POST;
-        }
-        else {
-            this.method = HeaderFields.RequestMethod.UNSUPPORTED;
-        }
-
-        this.uri = splittedStatusLine[1];
-        this.httpVersion = splittedStatusLine[2];
-
-        String line;
-        while ( (line = reader.readLine()) != null) {
-            if (line.equals("")) {
-                break;
-            }
-            this.header.addEntryWhenSupported(line);
-        }
-
-        // Based on
-        // https://stackoverflow.com/questions/3033755/reading-post-data-from-html-form-sent-to-serversocket
-        if (getMethod() == HeaderFields.RequestMethod.POST) {
+        this.method = parsed.method;
+        this.uri = parsed.uri;
+        this.httpVersion = parsed.httpVersion;
+        this.body = parsed.body;
+    }
 
-            StringBuilder payloadBuilder = new StringBuilder();
-            while (reader.ready()) {
-                payloadBuilder.append((char) reader.read());
+    /**
+     * Create a new Request from the parts tokenized by a {@link RequestParser}.
+     * The multipart form data of POST requests is streamed into a comment on the wall. The payload is released afterwards
+     * 
+     * @param method The request's method
+     * @param uri The requested URI
+     * @param httpVersion The request's HTTP version
+     * @param header The request's header
+     * @param payload The request's payload. {@link RequestBody#EMPTY} if the request has none
+     */
+    Request(final HeaderFields.RequestMethod method, final String uri, final String httpVersion, final Header header,
+        final RequestBody payload) {
+        super(header);
+
+        this.method = method;
+        this.uri = uri;
+        this.httpVersion = httpVersion;
+        this.body = new byte[0];
+
+        try {
+            if (this.method == HeaderFields.RequestMethod.POST) {
+                try (InputStream formData = payload.openStream()) {
+                    DBHandler.addComment(formData, header.getValue(HeaderFields.Field.CONTENT_TYPE).orElse(null));
+                } catch (IOException ex) {
+                    // The payload was framed completely, so the connection can go on with its next request
+                    System.out.println("Comment could not be read: " + ex.getMessage());
+                }
             }
-            DBHandler.addComment(payloadBuilder.toString());
+        } finally {
+            payload.release();
         }
-
     }
 
     /**
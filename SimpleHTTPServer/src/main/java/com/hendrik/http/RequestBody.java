@@ -0,0 +1,158 @@
+package com.hendrik.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The payload of a request.
+ * Small payloads are held in memory. Once a payload grows beyond the spill threshold, it is moved
+ * to a temporary file and the rest is appended there, so large uploads never occupy the heap.
+ * The payload is read as a stream, no matter where it is stored.
+ *
+ * @author Hendrik Tjabben
+ */
+public class RequestBody {
+
+    /**
+     * An empty payload, for requests without one
+     */
+    public static final RequestBody EMPTY = new RequestBody(0, 0);
+
+    /**
+     * The number of bytes above which a payload is moved to a temporary file
+     */
+    private final long spillThreshold;
+
+    /**
+     * The bytes of a payload held in memory. null after the payload was moved to a file
+     */
+    private ByteArrayOutputStream memory;
+
+    /**
+     * The temporary file holding a large payload. null while the payload is held in memory
+     */
+    private Path file;
+
+    /**
+     * The stream appending to the temporary file. null if there is no file or it was completed
+     */
+    private OutputStream fileOut;
+
+    /**
+     * The number of bytes received so far
+     */
+    private long length;
+
+    /**
+     * Constructor for a new, empty payload
+     *
+     * @param expectedLength The number of bytes the payload will have. -1 if it is not known in advance
+     * @param spillThreshold The number of bytes above which the payload is moved to a temporary file
+     */
+    public RequestBody(final long expectedLength, final long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+        int initialSize = expectedLength >= 0 && expectedLength <= spillThreshold ? (int) expectedLength : 1024;
+        this.memory = new ByteArrayOutputStream(Math.max(initialSize, 1));
+        this.length = 0;
+    }
+
+    /**
+     * Appends received bytes to the payload
+     *
+     * @param bytes The array containing the bytes
+     * @param offset The index of the first byte
+     * @param count The number of bytes
+     * @throws IOException Thrown if the temporary file cannot be written
+     */
+    public void write(final byte[] bytes, final int offset, final int count) throws IOException {
+
+        if (this.memory != null && this.length + count > this.spillThreshold) {
+            this.file = Files.createTempFile("request", ".body");
+            this.fileOut = Files.newOutputStream(this.file);
+            this.memory.writeTo(this.fileOut);
+            this.memory = null;
+        }
+
+        if (this.memory != null) {
+            this.memory.write(bytes, offset, count);
+        } else {
+            this.fileOut.write(bytes, offset, count);
+        }
+        this.length += count;
+    }
+
+    /**
+     * Completes the payload after its last byte was received
+     *
+     * @throws IOException Thrown if the temporary file cannot be written
+     */
+    public void finish() throws IOException {
+        if (this.fileOut != null) {
+            this.fileOut.close();
+            this.fileOut = null;
+        }
+    }
+
+    /**
+     * Getter for the payload's length
+     *
+     * @return The number of bytes received
+     */
+    public long getLength() {
+        return this.length;
+    }
+
+    /**
+     * Checks whether the payload was moved to a temporary file
+     *
+     * @return True if the payload is stored in a file, false if it is held in memory
+     */
+    public boolean isSpilled() {
+        return this.file != null;
+    }
+
+    /**
+     * Opens a stream reading the payload from its beginning.
+     * Must only be called after the payload was completed
+     *
+     * @return A stream of the payload's bytes
+     * @throws IOException Thrown if the temporary file cannot be opened
+     */
+    public InputStream openStream() throws IOException {
+        if (this.file != null) {
+            return Files.newInputStream(this.file);
+        }
+        if (this.memory == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        return new ByteArrayInputStream(this.memory.toByteArray());
+    }
+
+    /**
+     * Releases the payload. A temporary file is deleted
+     */
+    public void release() {
+
+        this.memory = null;
+
+        if (this.file == null) {
+            return;
+        }
+
+        try {
+            if (this.fileOut != null) {
+                this.fileOut.close();
+                this.fileOut = null;
+            }
+            Files.deleteIfExists(this.file);
+        } catch (IOException ex) {
+            System.out.println("Temporary request body " + this.file + " cannot be deleted: " + ex.getMessage());
+        }
+        this.file = null;
+    }
+}
@@ -0,0 +1,305 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import com.hendrik.http.HeaderFields.StatusCode;
+
+/**
+ * Reads the payload of a request from the bytes a connection receives, piece by piece.
+ * Exactly the number of bytes declared by Content-Length is read, or the chunks of a payload sent with
+ * the chunked transfer coding are decoded until the last chunk. Bytes after the payload are left alone,
+ * they belong to the connection's next request. The payload is bounded by a maximum size and is moved
+ * to a temporary file once it exceeds the spill threshold, see {@link RequestBody}.
+ *
+ * This implementation is based on https://tools.ietf.org/html/rfc7230#section-3.3.3
+ *
+ * @author Hendrik Tjabben
+ */
+public class RequestBodyReader {
+
+    /**
+     * The default number of bytes above which payloads are moved to a temporary file
+     */
+    public static final long DEFAULT_SPILL_THRESHOLD = 64 * 1024;
+
+    /**
+     * The default maximum number of bytes a payload may have
+     */
+    public static final long DEFAULT_MAX_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * The maximum length of a chunk's size line or a trailer line
+     */
+    private static final int MAX_LINE_LENGTH = 1024;
+
+    /**
+     * The number of bytes above which payloads are moved to a temporary file
+     */
+    private static volatile long spillThreshold = DEFAULT_SPILL_THRESHOLD;
+
+    /**
+     * The maximum number of bytes a payload may have
+     */
+    private static volatile long maxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * The parts of a chunked payload the reader can be in
+     */
+    private enum State {
+        /**
+         * Reading the payload's bytes, or a chunk's bytes
+         */
+        DATA,
+
+        /**
+         * Reading a chunk's size line
+         */
+        CHUNK_SIZE,
+
+        /**
+         * Reading the line break after a chunk's bytes
+         */
+        CHUNK_END,
+
+        /**
+         * Reading the trailer lines after the last chunk
+         */
+        TRAILER,
+
+        /**
+         * The payload is complete
+         */
+        DONE
+    }
+
+    /**
+     * The payload that is filled
+     */
+    private final RequestBody body;
+
+    /**
+     * Whether the payload is sent with the chunked transfer coding
+     */
+    private final boolean chunked;
+
+    /**
+     * The part of the payload that is read next
+     */
+    private State state;
+
+    /**
+     * The number of bytes that are left in the payload or the current chunk
+     */
+    private long remaining;
+
+    /**
+     * The size of the chunk whose size line is read
+     */
+    private long chunkSize;
+
+    /**
+     * The number of bytes of the current size or trailer line, excluding its line break
+     */
+    private int lineLength;
+
+    /**
+     * Whether a chunk extension is skipped in the current size line
+     */
+    private boolean inExtension;
+
+    /**
+     * Configures how payloads are stored and bounded
+     *
+     * @param newSpillThreshold The number of bytes above which payloads are moved to a temporary file
+     * @param newMaxSize The maximum number of bytes a payload may have
+     */
+    public static void configure(final long newSpillThreshold, final long newMaxSize) {
+        spillThreshold = newSpillThreshold;
+        maxSize = newMaxSize;
+    }
+
+    /**
+     * Creates a reader for a request's payload as it is described by the request's header
+     *
+     * @param header The request's header
+     * @return The reader. null if the request has no payload
+     * @throws IOException Thrown if the payload is too large or its framing is invalid
+     */
+    public static RequestBodyReader forHeader(final Header header) throws IOException {
+
+        Optional<String> transferEncoding = header.getValue(HeaderFields.Field.TRANSFER_ENCODING);
+        if (transferEncoding.isPresent()) {
+            // Chunked must be the final coding. Other codings are not supported
+            if (!transferEncoding.get().trim().equalsIgnoreCase("chunked")) {
+                throw new RequestException(StatusCode.NOTIMPLEMENTED, "Unsupported transfer coding: " + transferEncoding.get());
+            }
+            return new RequestBodyReader(-1);
+        }
+
+        Optional<String> contentLength = header.getValue(HeaderFields.Field.CONTENT_LENGTH);
+        if (!contentLength.isPresent()) {
+            return null;
+        }
+
+        long length;
+        try {
+            length = Long.parseLong(contentLength.get().trim());
+        } catch (NumberFormatException ex) {
+            throw new RequestException(StatusCode.BADREQUEST, "Invalid Content-Length: " + contentLength.get());
+        }
+        if (length < 0) {
+            throw new RequestException(StatusCode.BADREQUEST, "Invalid Content-Length: " + contentLength.get());
+        }
+        if (length == 0) {
+            return null;
+        }
+        if (length > maxSize) {
+            throw new RequestException(StatusCode.PAYLOAD_TOO_LARGE, "Request body too large: " + length + " bytes");
+        }
+
+        return new RequestBodyReader(length);
+    }
+
+    /**
+     * Constructor for a new body reader
+     *
+     * @param contentLength The payload's declared length. -1 if it is sent with the chunked transfer coding
+     */
+    public RequestBodyReader(final long contentLength) {
+        this.chunked = contentLength < 0;
+        this.body = new RequestBody(contentLength, spillThreshold);
+        this.state = this.chunked ? State.CHUNK_SIZE : State.DATA;
+        this.remaining = contentLength;
+    }
+
+    /**
+     * Reads as much of the payload as a range of received bytes contains
+     *
+     * @param bytes The array containing the received bytes
+     * @param offset The index of the first received byte
+     * @param length The number of received bytes
+     * @return The number of bytes that belong to the payload. Bytes after them belong to the next request
+     * @throws IOException Thrown if the payload is too large, its framing is invalid or it cannot be stored
+     */
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+
+        int index = offset;
+        int end = offset + length;
+
+        while (index < end && this.state != State.DONE) {
+            switch (this.state) {
+                case DATA:
+                    int count = (int) Math.min(this.remaining, end - index);
+                    this.body.write(bytes, index, count);
+                    index += count;
+                    this.remaining -= count;
+                    if (this.remaining == 0) {
+                        this.state = this.chunked ? State.CHUNK_END : State.DONE;
+                    }
+                    break;
+                case CHUNK_SIZE:
+                    readSizeLine(bytes[index++]);
+                    break;
+                case CHUNK_END:
+                    byte value = bytes[index++];
+                    if (value == '\n') {
+                        this.state = State.CHUNK_SIZE;
+                    } else if (value != '\r') {
+                        throw new RequestException(StatusCode.BADREQUEST, "Chunk is longer than its declared size");
+                    }
+                    break;
+                default:
+                    readTrailer(bytes[index++]);
+            }
+        }
+
+        if (this.state == State.DONE) {
+            this.body.finish();
+        }
+
+        return index - offset;
+    }
+
+    /**
+     * Reads one byte of a chunk's size line. The chunk's size is hex encoded, extensions are ignored
+     *
+     * @param value The byte to read
+     * @throws IOException Thrown if the size line is invalid or the payload gets too large
+     */
+    private void readSizeLine(final byte value) throws IOException {
+
+        if (value == '\n') {
+            if (this.lineLength == 0) {
+                throw new RequestException(StatusCode.BADREQUEST, "Missing chunk size");
+            }
+            if (this.chunkSize == 0) {
+                this.state = State.TRAILER;
+            } else {
+                this.state = State.DATA;
+                this.remaining = this.chunkSize;
+            }
+            this.chunkSize = 0;
+            this.lineLength = 0;
+            this.inExtension = false;
+            return;
+        }
+
+        if (++this.lineLength > MAX_LINE_LENGTH) {
+            throw new RequestException(StatusCode.BADREQUEST, "Chunk size line too long");
+        }
+
+        if (this.inExtension || value == '\r' || value == ' ' || value == '\t') {
+            return;
+        }
+        if (value == ';') {
+            this.inExtension = true;
+            return;
+        }
+
+        int digit = Character.digit(value, 16);
+        if (digit == -1) {
+            throw new RequestException(StatusCode.BADREQUEST, "Invalid chunk size");
+        }
+        this.chunkSize = this.chunkSize * 16 + digit;
+        if (this.body.getLength() + this.chunkSize > maxSize) {
+            throw new RequestException(StatusCode.PAYLOAD_TOO_LARGE, "Request body too large");
+        }
+    }
+
+    /**
+     * Reads one byte of the trailer. Trailer fields are ignored, an empty line ends the payload
+     *
+     * @param value The byte to read
+     * @throws IOException Thrown if a trailer line is too long
+     */
+    private void readTrailer(final byte value) throws IOException {
+
+        if (value == '\n') {
+            if (this.lineLength == 0) {
+                this.state = State.DONE;
+            }
+            this.lineLength = 0;
+        } else if (value != '\r' && ++this.lineLength > MAX_LINE_LENGTH) {
+            throw new RequestException(StatusCode.BADREQUEST, "Trailer line too long");
+        }
+    }
+
+    /**
+     * Checks whether the whole payload was read
+     *
+     * @return True if the payload is complete
+     */
+    public boolean isComplete() {
+        return this.state == State.DONE;
+    }
+
+    /**
+     * Getter for the payload that is read
+     *
+     * @return The payload. Complete once {@link #isComplete()} returns true
+     */
+    public RequestBody getBody() {
+        return this.body;
+    }
+}
@@ -0,0 +1,41 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+
+import com.hendrik.http.HeaderFields.StatusCode;
+
+/**
+ * Thrown if a request cannot be parsed because the client sent it malformed or too large.
+ * Carries the status code the client is answered with before the connection is closed
+ *
+ * @author Hendrik Tjabben
+ */
+public class RequestException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The status code the client is answered with
+     */
+    private final StatusCode statusCode;
+
+    /**
+     * Constructor for a new request exception
+     *
+     * @param statusCode The status code the client is answered with
+     * @param message The exception's message
+     */
+    public RequestException(final StatusCode statusCode, final String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Getter for the status code the client is answered with
+     *
+     * @return The status code
+     */
+    public StatusCode getStatusCode() {
+        return this.statusCode;
+    }
+}
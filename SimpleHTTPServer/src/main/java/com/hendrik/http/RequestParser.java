@@ -0,0 +1,444 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import com.hendrik.http.HeaderFields.StatusCode;
+
+/**
+ * An incremental parser for HTTP requests that works on a single reusable buffer per connection.
+ * The request line and header lines are tokenized in place, so strings are only created for the
+ * parts that the server actually uses. Bytes following a parsed request stay in the buffer
+ * and are the beginning of the connection's next request. The header of parsed requests is reused
+ * as well, so a request has to be answered before the connection's next request is parsed.
+ * A request's payload is read exactly as its header declares it, see {@link RequestBodyReader},
+ * and may span many reads.
+ *
+ * @author Hendrik Tjabben
+ */
+public class RequestParser {
+
+    /**
+     * The default capacity of the parser's buffer. A request's header must fit into it
+     */
+    public static final int DEFAULT_CAPACITY = 16 * 1024;
+
+    /**
+     * The request method GET as bytes
+     */
+    private static final byte[] GET = "GET".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The request method HEAD as bytes
+     */
+    private static final byte[] HEAD = "HEAD".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The request method POST as bytes
+     */
+    private static final byte[] POST = "POST".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The message of the exception thrown if a request's header does not fit into the buffer
+     */
+    private static final String HEADER_TOO_LARGE = "Request header too large";
+
+    /**
+     * The buffer holding the connection's unconsumed bytes.
+     * Between calls it is always in write mode, so its position marks the end of the buffered bytes
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The index up to which the buffered bytes were already searched for the end of a header
+     */
+    private int scanOffset;
+
+    /**
+     * The header that is filled for every parsed request
+     */
+    private final Header header;
+
+    /**
+     * The method of the request whose payload is read
+     */
+    private HeaderFields.RequestMethod method;
+
+    /**
+     * The URI of the request whose payload is read
+     */
+    private String uri;
+
+    /**
+     * The HTTP version of the request whose payload is read
+     */
+    private String version;
+
+    /**
+     * The reader of the current request's payload. null while no payload is read
+     */
+    private RequestBodyReader bodyReader;
+
+    /**
+     * Constructor for a new request parser with the default capacity
+     */
+    public RequestParser() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for a new request parser
+     *
+     * @param capacity The capacity of the parser's buffer
+     */
+    public RequestParser(final int capacity) {
+        this.buffer = ByteBuffer.allocate(capacity);
+        this.scanOffset = 0;
+        this.header = new Header();
+    }
+
+    /**
+     * Getter for the parser's buffer. Bytes read from the connection have to be put into it
+     *
+     * @return The buffer in write mode
+     */
+    public ByteBuffer getBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * Checks whether there are bytes buffered that do not belong to a parsed request yet
+     *
+     * @return True if unconsumed bytes are buffered, false otherwise
+     */
+    public boolean hasBufferedBytes() {
+        return this.buffer.position() > 0;
+    }
+
+    /**
+     * Reads from a blocking channel until a complete request is buffered and parses it
+     *
+     * @param channel The channel to read from
+     * @return The parsed request. null if the channel reached its end before a request was sent
+     * @throws IOException Thrown if reading fails, the request's header exceeds the buffer's capacity or its payload is invalid
+     */
+    public Request read(final ReadableByteChannel channel) throws IOException {
+
+        Request request = parse(false);
+
+        while (request == null) {
+            if (!this.buffer.hasRemaining()) {
+                throw new RequestException(StatusCode.BADREQUEST, HEADER_TOO_LARGE);
+            }
+            if (channel.read(this.buffer) == -1) {
+                return parse(true);
+            }
+            request = parse(false);
+        }
+
+        return request;
+    }
+
+    /**
+     * Parses the next request from the buffered bytes when its header and payload are complete.
+     * The parsed bytes are removed from the buffer. The returned request's header is cleared by the next call
+     *
+     * @param endOfStream Whether no more bytes will arrive. If so, the buffered bytes are parsed even without a terminating empty line
+     * @return The parsed request. null if the buffered bytes do not contain a complete request yet
+     * @throws IOException Thrown if the buffer is full without containing a complete header, or the payload is invalid or incomplete.
+     * A {@link RequestException} names the status code the client is answered with
+     */
+    public Request parse(final boolean endOfStream) throws IOException {
+
+        if (this.bodyReader == null) {
+            if (!parseHeader(endOfStream)) {
+                return null;
+            }
+
+            this.bodyReader = RequestBodyReader.forHeader(this.header);
+            if (this.bodyReader == null) {
+                return new Request(this.method, this.uri, this.version, this.header, RequestBody.EMPTY);
+            }
+        }
+
+        // The payload's bytes are moved out of the buffer as they arrive, so it never fills up while a payload is read
+        try {
+            consume(this.bodyReader.read(this.buffer.array(), 0, this.buffer.position()));
+        } catch (IOException | RuntimeException ex) {
+            close();
+            throw ex;
+        }
+
+        if (!this.bodyReader.isComplete()) {
+            if (endOfStream) {
+                close();
+                throw new RequestException(StatusCode.BADREQUEST, "Request body incomplete");
+            }
+            return null;
+        }
+
+        RequestBody body = this.bodyReader.getBody();
+        this.bodyReader = null;
+
+        return new Request(this.method, this.uri, this.version, this.header, body);
+    }
+
+    /**
+     * Releases the payload of a request that is still being read, e.g. because its connection is closed.
+     * A payload that was spilled to disk is deleted
+     */
+    public void close() {
+        if (this.bodyReader != null) {
+            this.bodyReader.getBody().release();
+            this.bodyReader = null;
+        }
+    }
+
+    /**
+     * Parses the next request's header from the buffered bytes when it is complete.
+     * The header's bytes are removed from the buffer
+     *
+     * @param endOfStream Whether no more bytes will arrive. If so, the buffered bytes are parsed even without a terminating empty line
+     * @return True if a header was parsed, false if the buffered bytes do not contain a complete header yet
+     * @throws IOException Thrown if the buffer is full without containing a complete header
+     */
+    private boolean parseHeader(final boolean endOfStream) throws IOException {
+
+        byte[] bytes = this.buffer.array();
+        int end = this.buffer.position();
+
+        // Empty lines in front of a request line are ignored
+        int start = 0;
+        while (start < end && (bytes[start] == '\r' || bytes[start] == '\n')) {
+            start++;
+        }
+
+        int headerEnd = findHeaderEnd(bytes, Math.max(start, this.scanOffset), end);
+
+        if (headerEnd == -1) {
+            if (endOfStream && start < end) {
+                headerEnd = end;
+            } else if (!this.buffer.hasRemaining()) {
+                throw new RequestException(StatusCode.BADREQUEST, HEADER_TOO_LARGE);
+            } else {
+                this.scanOffset = Math.max(start, end - 3);
+                return false;
+            }
+        }
+
+        this.header.clear();
+        tokenizeHeader(bytes, start, headerEnd);
+
+        consume(headerEnd);
+
+        return true;
+    }
+
+    /**
+     * Searches a byte range for the empty line that terminates a request's header.
+     * Both CRLF and LF line endings are accepted
+     *
+     * @param bytes The array to search
+     * @param from The index to start searching at
+     * @param end The index after the last buffered byte
+     * @return The index after the empty line. -1 if the header is not complete yet
+     */
+    private static int findHeaderEnd(final byte[] bytes, final int from, final int end) {
+
+        for (int i = from; i < end - 1; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            if (bytes[i + 1] == '\n') {
+                return i + 2;
+            }
+            if (i + 2 < end && bytes[i + 1] == '\r' && bytes[i + 2] == '\n') {
+                return i + 3;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Tokenizes the request line and header lines of a complete header.
+     * The request line's tokens are kept until the request's payload is read, the supported header lines are added to the header
+     *
+     * @param bytes The array containing the header
+     * @param start The index of the request line's first byte
+     * @param end The index after the header's last byte
+     */
+    private void tokenizeHeader(final byte[] bytes, final int start, final int end) {
+
+        int lineEnd = findLineEnd(bytes, start, end);
+        int contentEnd = trimLineBreak(bytes, start, lineEnd);
+
+        int methodEnd = indexOfSpace(bytes, start, contentEnd);
+        int uriStart = skipSpaces(bytes, methodEnd, contentEnd);
+        int uriEnd = indexOfSpace(bytes, uriStart, contentEnd);
+        int versionStart = skipSpaces(bytes, uriEnd, contentEnd);
+        int versionEnd = indexOfSpace(bytes, versionStart, contentEnd);
+
+        this.method = parseMethod(bytes, start, methodEnd);
+        this.uri = new String(bytes, uriStart, uriEnd - uriStart, StandardCharsets.UTF_8);
+        this.version = parseVersion(bytes, versionStart, versionEnd);
+
+        if (this.uri.isEmpty() || this.version.isEmpty()) {
+            this.method = HeaderFields.RequestMethod.UNSUPPORTED;
+        }
+
+        int lineStart = lineEnd + 1;
+        while (lineStart < end) {
+            lineEnd = findLineEnd(bytes, lineStart, end);
+            contentEnd = trimLineBreak(bytes, lineStart, lineEnd);
+
+            if (contentEnd == lineStart) {
+                break;
+            }
+            this.header.addEntryWhenSupported(bytes, lineStart, contentEnd - lineStart);
+
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /**
+     * Maps the method token of a request line to the supported request methods, ignoring the case
+     *
+     * @param bytes The array containing the token
+     * @param start The index of the token's first byte
+     * @param end The index after the token's last byte
+     * @return The request method. UNSUPPORTED if the method is not supported
+     */
+    private static HeaderFields.RequestMethod parseMethod(final byte[] bytes, final int start, final int end) {
+        if (equalsIgnoreCase(GET, bytes, start, end)) {
+            return HeaderFields.RequestMethod.GET;
+        } else if (equalsIgnoreCase(HEAD, bytes, start, end)) {
+            return HeaderFields.RequestMethod.HEAD;
+        } else if (equalsIgnoreCase(POST, bytes, start, end)) {
+            return HeaderFields.RequestMethod.POST;
+        }
+        return HeaderFields.RequestMethod.UNSUPPORTED;
+    }
+
+    /**
+     * Decodes the HTTP version token of a request line.
+     * The common versions are returned as constants
+     *
+     * @param bytes The array containing the token
+     * @param start The index of the token's first byte
+     * @param end The index after the token's last byte
+     * @return The HTTP version
+     */
+    private static String parseVersion(final byte[] bytes, final int start, final int end) {
+        if (end - start == 8 && bytes[start + 5] == '1' && bytes[start + 6] == '.') {
+            if (bytes[start + 7] == '1') {
+                return "HTTP/1.1";
+            } else if (bytes[start + 7] == '0') {
+                return "HTTP/1.0";
+            }
+        }
+        return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Compares a token to an expected value, ignoring the case of ASCII letters
+     *
+     * @param expected The expected value in upper case
+     * @param bytes The array containing the token
+     * @param start The index of the token's first byte
+     * @param end The index after the token's last byte
+     * @return True if the token matches the expected value
+     */
+    private static boolean equalsIgnoreCase(final byte[] expected, final byte[] bytes, final int start, final int end) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            byte value = bytes[start + i];
+            if (value >= 'a' && value <= 'z') {
+                value = (byte) (value - ('a' - 'A'));
+            }
+            if (value != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the line feed that ends the line starting at an index
+     *
+     * @param bytes The array to search
+     * @param start The index of the line's first byte
+     * @param end The index after the last byte to search
+     * @return The index of the line feed, or end if the line is not terminated
+     */
+    private static int findLineEnd(final byte[] bytes, final int start, final int end) {
+        int index = start;
+        while (index < end && bytes[index] != '\n') {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Excludes a trailing carriage return from a line
+     *
+     * @param bytes The array containing the line
+     * @param start The index of the line's first byte
+     * @param lineEnd The index of the line feed ending the line
+     * @return The index after the line's last content byte
+     */
+    private static int trimLineBreak(final byte[] bytes, final int start, final int lineEnd) {
+        if (lineEnd > start && bytes[lineEnd - 1] == '\r') {
+            return lineEnd - 1;
+        }
+        return lineEnd;
+    }
+
+    /**
+     * Finds the next space or tab in a byte range
+     *
+     * @param bytes The array to search
+     * @param start The index to start at
+     * @param end The index after the range's last byte
+     * @return The index of the next space or tab, or end
+     */
+    private static int indexOfSpace(final byte[] bytes, final int start, final int end) {
+        int index = start;
+        while (index < end && bytes[index] != ' ' && bytes[index] != '\t') {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Skips spaces and tabs in a byte range
+     *
+     * @param bytes The array to scan
+     * @param start The index to start at
+     * @param end The index after the range's last byte
+     * @return The index of the first byte that is neither space nor tab, or end
+     */
+    private static int skipSpaces(final byte[] bytes, final int start, final int end) {
+        int index = start;
+        while (index < end && (bytes[index] == ' ' || bytes[index] == '\t')) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Removes parsed bytes from the front of the buffer and keeps the remaining ones for the next request
+     *
+     * @param length The number of bytes to remove
+     */
+    private void consume(final int length) {
+        this.buffer.flip();
+        this.buffer.position(length);
+        this.buffer.compact();
+        this.scanOffset = 0;
+    }
+}
@@ -1,7 +1,10 @@
 package com.hendrik.http;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Class representing a HTTP Response message
@@ -15,6 +18,17 @@ public class Response extends HTTPMessage {
      */
     private HeaderFields.StatusCode statusCode;
 
+    /**
+     * The payload that is sent to the client
+     */
+    private ResponseBody responseBody;
+
+    /**
+     * Whether the general header fields Server and Date are sent with this response.
+     * They are not stored in the header, but written from their shared encodings, see {@link ServerClock}
+     */
+    private boolean generalFields;
+
     /**
      * Constructor for a new Response
      * 
@@ -23,11 +37,38 @@ public class Response extends HTTPMessage {
      * @param body The new response's body
      */
     public Response(final HeaderFields.StatusCode statusCode, final Header header, final byte[] body) {
+        this(statusCode, header, new BufferBody(body));
+        this.body = body;
+    }
+
+    /**
+     * Constructor for a new Response whose body is not necessarily held in memory
+     * 
+     * @param statusCode The status code for this response
+     * @param header The new response's headers
+     * @param responseBody The new response's body
+     */
+    public Response(final HeaderFields.StatusCode statusCode, final Header header, final ResponseBody responseBody) {
         super(header);
 
         this.statusCode = statusCode;
         this.header = header;
-        this.body = body;
+        this.responseBody = responseBody;
+        this.generalFields = false;
+    }
+
+    /**
+     * Constructor for a new Response that may carry the general header fields Server and Date
+     * 
+     * @param statusCode The status code for this response
+     * @param header The new response's headers
+     * @param responseBody The new response's body
+     * @param generalFields Whether the Server and Date fields are sent with the response
+     */
+    public Response(final HeaderFields.StatusCode statusCode, final Header header, final ResponseBody responseBody,
+        final boolean generalFields) {
+        this(statusCode, header, responseBody);
+        this.generalFields = generalFields;
     }
 
     /**
@@ -46,14 +87,60 @@ public class Response extends HTTPMessage {
     }
 
     /**
-     * Getter for the data that are trasmitted as payload for this respond
+     * Getter for the data that are trasmitted as payload for this respond.
+     * Bodies that are not held in memory, like files, are read when this is called for the first time
      * 
      * @return The response's payload bytes
      */
     public byte[] getData() {
+        if (this.body == null) {
+            try {
+                this.body = this.responseBody.toByteArray();
+            } catch (IOException ex) {
+                System.err.println("Response body could not be read: " + ex.getMessage());
+                this.body = "".getBytes();
+            }
+        }
         return this.body;
     }
 
+    /**
+     * Getter for the payload in the form it is sent to the client
+     * 
+     * @return The response's body
+     */
+    public ResponseBody getBody() {
+        return this.responseBody;
+    }
+
+    /**
+     * Checks whether the general header fields Server and Date are sent with this response
+     * 
+     * @return True if the fields are written from their shared encodings when the response is encoded
+     */
+    public boolean hasGeneralFields() {
+        return this.generalFields;
+    }
+
+    @Override
+    public Optional<List<String>> getHeaderValues(final HeaderFields.Field headerField) {
+        if (this.generalFields && headerField == HeaderFields.Field.SERVER) {
+            return Optional.of(Collections.singletonList(HTTPServer.getServerInfo()));
+        }
+        if (this.generalFields && headerField == HeaderFields.Field.DATE) {
+            return Optional.of(Collections.singletonList(ServerClock.getDate()));
+        }
+        return super.getHeaderValues(headerField);
+    }
+
+    @Override
+    public Optional<String> getHeaderLine(final HeaderFields.Field headerField) {
+        if (this.generalFields && (headerField == HeaderFields.Field.SERVER || headerField == HeaderFields.Field.DATE)) {
+            return Optional.of(HeaderFields.toString(headerField) + ": " + getHeaderValues(headerField).get().get(0));
+        }
+        return super.getHeaderLine(headerField);
+    }
+
     /**
      * Getter for all header lines that are included in this response.
      * Used to write the header lines to the outstream
@@ -65,10 +152,51 @@ public class Response extends HTTPMessage {
 
         result.add(createStatusLine());
         result.addAll(header.getLines());
+        if (this.generalFields) {
+            result.add(getHeaderLine(HeaderFields.Field.SERVER).get());
+            result.add(getHeaderLine(HeaderFields.Field.DATE).get());
+        }
 
         return result;
 
     }
 
+    /**
+     * Encodes this response's header lines and body as they are sent to the client
+     * 
+     * @return The encoded response
+     */
+    public byte[] toBytes() {
+        return ResponseEncoder.toBytes(this);
+    }
+
+    /**
+     * Getter for this response's status code
+     * 
+     * @return The response's status code
+     */
+    public HeaderFields.StatusCode getStatusCode() {
+        return this.statusCode;
+    }
+
+    /**
+     * Checks whether the connection should be closed after this response was sent
+     * 
+     * @return True if the response carries a Connection: close header, false otherwise
+     */
+    public boolean closesConnection() {
+        Optional<List<String>> connectionHeader = getHeaderValues(HeaderFields.Field.CONNECTION);
+
+        if (connectionHeader.isPresent()) {
+            for (String value : connectionHeader.get()) {
+                if (value.toLowerCase().equals("close")) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
 
 }
\ No newline at end of file
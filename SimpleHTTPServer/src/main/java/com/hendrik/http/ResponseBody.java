@@ -0,0 +1,45 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The payload of a response.
+ * A body is written to the client in as many steps as the client's channel requires, so it keeps track of
+ * the bytes already written. Therefore, a body instance belongs to exactly one response.
+ *
+ * @author Hendrik Tjabben
+ */
+public abstract class ResponseBody {
+
+    /**
+     * Getter for the number of bytes this body consists of
+     *
+     * @return The body's length in bytes
+     */
+    public abstract long getLength();
+
+    /**
+     * Writes the body's remaining bytes, or as many of them as the channel takes
+     *
+     * @param channel The channel to write to
+     * @return True if the body was written completely, false if the channel did not take all bytes
+     * @throws IOException Thrown if an I/O error happens while writing
+     */
+    public abstract boolean writeTo(WritableByteChannel channel) throws IOException;
+
+    /**
+     * Reads the whole body into memory. Meant for callers that need the payload itself, not for sending it
+     *
+     * @return The body's bytes
+     * @throws IOException Thrown if an I/O error happens while reading the body
+     */
+    public abstract byte[] toByteArray() throws IOException;
+
+    /**
+     * Releases resources held by this body, e.g. open files.
+     * Bodies without such resources do not have to override this
+     */
+    public void close() {
+    }
+}
@@ -2,13 +2,15 @@ package com.hendrik.http;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
-import java.time.OffsetDateTime;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 
 import com.hendrik.http.HeaderFields.Field;
 import com.hendrik.http.HeaderFields.RequestMethod;
@@ -24,6 +26,11 @@ import com.hendrik.http.resource.Resource;
  */
 public class ResponseBuilder {
 
+    /**
+     * The prefix that marks an entity tag as weak
+     */
+    private static final String WEAK_PREFIX = "W/";
+
     /**
      * Used to set the final result immutable.
      * Further setters do not change the final response after this is set to true.
@@ -46,7 +53,33 @@ public class ResponseBuilder {
     /**
      * The desired body for the final response
      */
-    private byte[] body;
+    private ResponseBody body;
+
+    /**
+     * The length of the body the final response describes.
+     * For HEAD requests this is set although no body is sent
+     */
+    private long contentLength;
+
+    /**
+     * The resource's entity tag. null until it is needed for the first time
+     */
+    private String etag;
+
+    /**
+     * The content coding the response body is compressed with. null if it is not compressed
+     */
+    private String contentCoding;
+
+    /**
+     * Whether the content coding was negotiated already
+     */
+    private boolean contentCodingNegotiated;
+
+    /**
+     * The ranges of the resource that are sent. null if the whole resource is sent
+     */
+    private List<ByteRange> ranges;
 
     /**
      * The request for which the response should be build
@@ -67,7 +100,8 @@ public class ResponseBuilder {
         this.request = request;
         this.isImmutable = false;
         this.header = new Header();
-        this.body = "".getBytes();
+        this.body = new BufferBody("".getBytes());
+        this.contentLength = 0;
 
         try {
             this.resource = Resource.createFromURI(request.getURI());
@@ -99,6 +133,43 @@ public class ResponseBuilder {
         }
     }
 
+    /**
+     * Builds the response to a request with all features this server supports.
+     * A request that makes the builder fail unexpectedly is answered with 500 Internal Server Error
+     * and closes its connection, so the failure never reaches the thread that serves the connection
+     * 
+     * @param request The request to answer
+     * @return The response to send
+     */
+    public static Response respond(final Request request) {
+        try {
+            return new ResponseBuilder(request)
+                .setEtag()
+                .setRange()
+                .build();
+        } catch (RuntimeException ex) {
+            System.out.println("Error building the response for " + request.getURI() + ": " + ex);
+            return createError(StatusCode.INTERNALERROR);
+        }
+    }
+
+    /**
+     * Creates a response that reports an error and asks the client to close the connection
+     * 
+     * @param statusCode The error's status code
+     * @return The error response
+     */
+    public static Response createError(final StatusCode statusCode) {
+        byte[] body = HeaderFields.toString(statusCode).getBytes();
+
+        Header header = new Header();
+        header.addEntry(Field.CONTENT_TYPE, "text/plain; charset=utf-8");
+        header.addEntry(Field.CONTENT_LENGTH, String.valueOf(body.length));
+        header.addEntry(Field.CONNECTION, "close");
+
+        return new Response(statusCode, header, new BufferBody(body), true);
+    }
+
     /**
      * Adds Etag informations to the response.
      * 
@@ -125,9 +196,10 @@ public class ResponseBuilder {
                 boolean starMatchProvided = false;
 
                 try {
-                    String bodyHash = hashBytes(this.resource.getData());
+                    String bodyHash = getResourceETag();
                     for (String etag : ifMatchEntries.get()) {
-                        if (etag.equals(bodyHash)) {
+                        // If-Match uses the strong comparison, weak entity tags never match
+                        if (!isWeak(bodyHash) && etag.equals(bodyHash)) {
                             didMatch = true;
                         }
                         if (etag.equals("*")) {
@@ -154,9 +226,10 @@ public class ResponseBuilder {
                 boolean starMatchProvided = false;
 
                 try {
-                    String bodyHash = hashBytes(this.resource.getData());
+                    String bodyHash = getResourceETag();
                     for (String etag : ifNoneMatchEntries.get()) {
-                        if (etag.equals(bodyHash)) {
+                        // If-None-Match uses the weak comparison, which ignores whether the entity tags are weak
+                        if (bodyHash != null && toOpaqueTag(etag).equals(toOpaqueTag(bodyHash))) {
                             didMatch = true;
                         }
                         if (etag.equals("*")) {
@@ -188,7 +261,7 @@ public class ResponseBuilder {
                 }
 
             }
-            if (shouldPerformIfModifiedSince && ifModifiedSinceEntries.isPresent()) { // My assumption here is that the passed date is always parseable by the server
+            if (shouldPerformIfModifiedSince && ifModifiedSinceEntries.isPresent()) { // Dates that cannot be parsed are ignored
                 for (String isModifiedSinceDate : ifModifiedSinceEntries.get()) {
                     boolean dateValid = isDateValid(isModifiedSinceDate);
                     if (!dateValid) {
@@ -207,6 +280,61 @@ public class ResponseBuilder {
         return this;
     }
 
+    /**
+     * Adds byte range information to the response.
+     * Must be called after {@link #setEtag()}, because ranges are only sent when the whole resource would be sent otherwise.
+     * 
+     * Range requests are supported for GET requests to resources that support ranges. If-Range is respected.
+     * 
+     * This implementation is based on https://tools.ietf.org/html/rfc7233
+     * 
+     * @return A response builder with set range information
+     */
+    public ResponseBuilder setRange() {
+
+        if (this.isImmutable || this.statusCode != StatusCode.OK || this.request.getMethod() != RequestMethod.GET
+            || !this.resource.supportsRanges()) {
+            return this;
+        }
+
+        Optional<List<String>> rangeEntries = this.request.getHeaderValues(Field.RANGE);
+        Optional<List<String>> ifRangeEntries = this.request.getHeaderValues(Field.IF_RANGE);
+
+        if (!rangeEntries.isPresent()) {
+            return this;
+        }
+
+        try {
+            // If the resource changed, the client's ranges refer to an outdated version. It gets the whole resource instead
+            if (ifRangeEntries.isPresent() && !isIfRangeFulfilled(ifRangeEntries.get().get(0))) {
+                return this;
+            }
+
+            long length = this.resource.getLength();
+            List<ByteRange> requestedRanges = ByteRange.parse(rangeEntries.get().get(0), length);
+
+            if (requestedRanges == null) {
+                return this;
+            }
+
+            if (requestedRanges.isEmpty()) {
+                this.statusCode = StatusCode.RANGE_NOT_SATISFIABLE;
+                this.header.addEntry(Field.CONTENT_RANGE, "bytes */" + length);
+                this.isImmutable = true;
+                return this;
+            }
+
+            this.ranges = requestedRanges;
+            this.statusCode = StatusCode.PARTIAL_CONTENT;
+
+        } catch (IOException ex) {
+            this.statusCode = StatusCode.INTERNALERROR;
+            this.isImmutable = true;
+        }
+
+        return this;
+    }
+
     /**
      * Builds the final result by setting general header fields, as well as the response body's
      * content type and data
@@ -216,61 +344,273 @@ public class ResponseBuilder {
     public Response build() {
 
         try {
-            byte[] resourceBody = this.resource.getData();
-
             if (this.statusCode == StatusCode.OK) {
                 this.header.addEntry(Field.CONTENT_TYPE, resource.getContentType());
-                this.setBody(resourceBody);
+                if (getContentCoding() != null) {
+                    this.header.addEntry(Field.CONTENT_ENCODING, getContentCoding());
+                }
+                if (this.request.getMethod() == RequestMethod.HEAD) {
+                    this.contentLength = getHeadLength();
+                }
+                // Clients older than HTTP/1.1 get generated content as a whole, so their HEAD responses need its length
+                if (this.request.getMethod() != RequestMethod.HEAD || (this.contentLength < 0 && !supportsChunked())) {
+                    this.setBody(toSupportedBody(createResourceBody()));
+                }
+            } else if (this.statusCode == StatusCode.PARTIAL_CONTENT) {
+                this.setPartialBody();
+            } else if (this.statusCode == StatusCode.NOTMODIFIED) {
+                // A 304 response never has a body, clients expect the next response right after its header
+                this.body = new BufferBody("".getBytes());
             } else {
                 this.header.addEntry(Field.CONTENT_TYPE, "text/plain; charset=utf-8");
-                this.setBody(HeaderFields.toString(this.statusCode).getBytes());
+                this.setBody(new BufferBody(HeaderFields.toString(this.statusCode).getBytes()));
             }
 
-            if (this.resource.exists()) {
-                this.header.addEntry(Field.ENTITIY_TAG, hashBytes(this.resource.getData()));
+            if (this.resource.exists() && getResourceETag() != null) {
+                this.header.addEntry(Field.ENTITIY_TAG, getResourceETag());
+            }
+            if (this.resource.supportsRanges()) {
+                this.header.addEntry(Field.ACCEPT_RANGES, "bytes");
+            }
+            // Range requests are answered uncompressed, but the same URI yields a compressed full response,
+            // so caches must key every response to a compressible resource on Accept-Encoding
+            if (this.resource.exists() && Compression.isCompressible(this.resource.getContentType())) {
+                this.header.addEntry(Field.VARY, HeaderFields.toString(Field.ACCEPT_ENCODING));
+            }
+            // The Content-Length of a 304 response would describe the representation the client already has
+            if (this.statusCode != StatusCode.NOTMODIFIED) {
+                if (this.contentLength < 0) {
+                    this.header.addEntry(Field.TRANSFER_ENCODING, "chunked");
+                } else {
+                    this.header.addEntry(Field.CONTENT_LENGTH, String.valueOf(this.contentLength));
+                }
             }
-            this.header.addEntry(Field.CONTENT_LENGTH, String.valueOf(this.body.length));
-            this.header.addEntry(Field.SERVER, HTTPServer.getServerInfo());
-            this.header.addEntry(Field.DATE, DateTimeFormatter.RFC_1123_DATE_TIME.format(OffsetDateTime.now()));
 
         } catch (IOException e) {
             this.header.addEntry(Field.CONTENT_TYPE, "text/plain; charset=utf-8");
-            this.setBody(HeaderFields.toString(StatusCode.INTERNALERROR).getBytes());
+            this.setBody(new BufferBody(HeaderFields.toString(StatusCode.INTERNALERROR).getBytes()));
         }
 
 
-        return new Response(this.statusCode, this.header, this.body);
+        // Server and Date are written by the encoder from their shared encodings
+        return new Response(this.statusCode, this.header, this.body, true);
     }
 
     /**
-     * Sets the body for the final response
-     * HEAD requests should not contain a body
+     * Creates the body that carries the whole resource, compressed if a content coding was negotiated.
+     * This is the only place where the resource's body is created, and it is only called if the body is sent
      * 
-     * @param data The data to set as the response body
+     * @return The resource's body
+     * @throws IOException Thrown if the resource's body cannot be accessed
      */
-    private void setBody(final byte[] data) {
+    private ResponseBody createResourceBody() throws IOException {
 
-        if (this.request.getMethod() != RequestMethod.HEAD) {
-            this.body = data;
+        if (getContentCoding() == null) {
+            return this.resource.getBody();
+        }
+
+        // A variant that was compressed in advance is preferred over compressing the body while it is sent
+        ResponseBody encodedBody = this.resource.getEncodedBody(getContentCoding());
+        if (encodedBody != null) {
+            return encodedBody;
+        }
+        return new ChunkedBody(new CompressingSource(this.resource.getBody(), getContentCoding()));
+    }
+
+    /**
+     * Determines the length of the body a GET request would get, without creating the body.
+     * Compressed bodies only have a known length if a variant was compressed in advance
+     * 
+     * @return The body's length in bytes. -1 if it is only known once the body is generated
+     * @throws IOException Thrown if the resource's length cannot be determined
+     */
+    private long getHeadLength() throws IOException {
+
+        if (getContentCoding() == null) {
+            return this.resource.getLength();
+        }
+
+        ResponseBody encodedBody = this.resource.getEncodedBody(getContentCoding());
+        if (encodedBody == null) {
+            return -1;
+        }
+        encodedBody.close();
+        return encodedBody.getLength();
+    }
+
+    /**
+     * Sets the requested ranges of the resource as body for the final response.
+     * A single range is sent as it is, several ranges are sent as multipart/byteranges
+     * 
+     * @throws IOException Thrown if the resource's ranges cannot be accessed
+     */
+    private void setPartialBody() throws IOException {
+
+        long length = this.resource.getLength();
+
+        if (this.ranges.size() == 1) {
+            ByteRange range = this.ranges.get(0);
+            this.header.addEntry(Field.CONTENT_TYPE, this.resource.getContentType());
+            this.header.addEntry(Field.CONTENT_RANGE, range.toContentRange(length));
+            this.setBody(this.resource.getBody(range.getFirst(), range.getLength()));
+            return;
+        }
+
+        String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        List<ResponseBody> parts = new ArrayList<ResponseBody>(2 * this.ranges.size() + 1);
+
+        for (int i = 0; i < this.ranges.size(); i++) {
+            ByteRange range = this.ranges.get(i);
+            String partHeader = (i > 0 ? "\r\n" : "") + "--" + boundary + "\r\n"
+                + HeaderFields.toString(Field.CONTENT_TYPE) + ": " + this.resource.getContentType() + "\r\n"
+                + HeaderFields.toString(Field.CONTENT_RANGE) + ": " + range.toContentRange(length) + "\r\n\r\n";
+
+            parts.add(new BufferBody(partHeader.getBytes(StandardCharsets.ISO_8859_1)));
+            parts.add(this.resource.getBody(range.getFirst(), range.getLength()));
+        }
+        parts.add(new BufferBody(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1)));
+
+        this.header.addEntry(Field.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+        this.setBody(new CompositeBody(parts));
+    }
+
+    /**
+     * Getter for the resource's entity tag.
+     * It is determined once per response, no matter how many checks need it
+     * 
+     * @return The resource's entity tag
+     * @throws IOException Thrown if the resource's entity tag cannot be determined
+     */
+    private String getResourceETag() throws IOException {
+        if (this.etag == null) {
+            this.etag = this.resource.getETag();
+            // Each content coding is a different representation, so it needs its own entity tag.
+            // The compressed bytes depend on whether they were compressed while sending, in advance or by another tool,
+            // so they are only semantically equivalent and their entity tag is weak
+            if (this.etag != null && getContentCoding() != null) {
+                this.etag = WEAK_PREFIX + this.etag + "-" + getContentCoding();
+            }
+        }
+        return this.etag;
+    }
+
+    /**
+     * Checks whether an entity tag is weak
+     * 
+     * @param etag The entity tag
+     * @return True if the entity tag is weak
+     */
+    private static boolean isWeak(final String etag) {
+        return etag != null && etag.startsWith(WEAK_PREFIX);
+    }
+
+    /**
+     * Strips the weakness indicator from an entity tag, as the weak comparison does
+     * 
+     * @param etag The entity tag
+     * @return The entity tag without weakness indicator
+     */
+    private static String toOpaqueTag(final String etag) {
+        return isWeak(etag) ? etag.substring(WEAK_PREFIX.length()) : etag;
+    }
+
+    /**
+     * Queries whether the response's content coding is negotiated with the client.
+     * Only whole representations of GET and HEAD requests are compressed, range requests are served uncompressed
+     * 
+     * @return True if the response may be compressed, depending on the resource and the client
+     */
+    private boolean isNegotiable() {
+        return (this.request.getMethod() == RequestMethod.GET || this.request.getMethod() == RequestMethod.HEAD)
+            && !this.request.getHeaderValues(Field.RANGE).isPresent();
+    }
+
+    /**
+     * Getter for the content coding the response body is compressed with.
+     * It is negotiated once per response from the resource's content type and length and the client's Accept-Encoding
+     * 
+     * @return The content coding. null if the body is not compressed
+     * @throws IOException Thrown if the resource's length cannot be determined
+     */
+    private String getContentCoding() throws IOException {
+
+        if (!this.contentCodingNegotiated) {
+            this.contentCodingNegotiated = true;
+            if (this.resource.exists() && isNegotiable()
+                && Compression.isCompressible(this.resource.getContentType(), this.resource.getLength())) {
+                this.contentCoding = Compression.negotiate(this.request.getHeaderValues(Field.ACCEPT_ENCODING));
+            }
+        }
+
+        return this.contentCoding;
+    }
+
+    /**
+     * Checks whether the condition of an If-Range header field is fulfilled, so the requested ranges may be sent
+     * 
+     * @param value The If-Range value, either an entity tag or a date
+     * @return True if the resource still has the given entity tag or was not modified after the given date
+     * @throws IOException Thrown if the resource's entity tag cannot be determined
+     */
+    private boolean isIfRangeFulfilled(final String value) throws IOException {
+
+        // Entity tags of this server never contain spaces, dates always do
+        if (value.indexOf(' ') == -1) {
+            return !isWeak(value) && value.equals(getResourceETag());
+        }
+
+        return !this.resource.wasModifiedAfter(value);
+    }
+
+    /**
+     * Makes sure the client can receive a body.
+     * Clients older than HTTP/1.1 do not understand the chunked transfer coding,
+     * so they get the content of chunked bodies as a whole
+     * 
+     * @param data The body the resource provided
+     * @return The body to send
+     * @throws IOException Thrown if the content of a chunked body cannot be generated
+     */
+    private ResponseBody toSupportedBody(final ResponseBody data) throws IOException {
+
+        if (!(data instanceof ChunkedBody) || supportsChunked()) {
+            return data;
         }
 
+        return new BufferBody(((ChunkedBody) data).readContent());
+    }
+
+    /**
+     * Checks whether the client understands the chunked transfer coding
+     * 
+     * @return True for HTTP/1.1 clients
+     */
+    private boolean supportsChunked() {
+        return "HTTP/1.1".equals(this.request.getVersion());
     }
 
     /**
-     * Convenience method to hash a byte array.
-     * This is used for etag checks
+     * Sets the body for the final response
+     * HEAD requests should not contain a body, but their Content-Length describes it
      * 
-     * @param bytes The byte array to hash
-     * @return The hash code for the provided byte array
+     * @param data The data to set as the response body
      */
-    private static String hashBytes(final byte[] bytes) {
-        String bodyHash = String.valueOf(Arrays.hashCode(bytes));
-        return bodyHash;
+    private void setBody(final ResponseBody data) {
+
+        this.contentLength = data.getLength();
+
+        if (this.request.getMethod() != RequestMethod.HEAD) {
+            this.body = data;
+        } else {
+            data.close();
+        }
+
     }
 
     /**
      * Check whether a specified date string is valid
      * The date is invalid when it is later than the server's current time (following RFC2616)
+     * or when it cannot be parsed
      * 
      * @param date The date string to check
      * @return True if the date string is valid, false otherwise
@@ -280,7 +620,12 @@ public class ResponseBuilder {
         ZonedDateTime now = ZonedDateTime.now();
         Timestamp nowTimestamp = Timestamp.valueOf(now.toLocalDateTime());
 
-        ZonedDateTime passedDate = ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME);
+        ZonedDateTime passedDate;
+        try {
+            passedDate = ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME);
+        } catch (DateTimeParseException ex) {
+            return false;
+        }
         Timestamp passedTimestamp = Timestamp.valueOf(passedDate.toLocalDateTime());
         //the value 0 if the two Timestamp objects are equal;
         // a value less than 0 if this Timestamp object is before the given argument;
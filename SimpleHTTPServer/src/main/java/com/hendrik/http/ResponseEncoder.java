@@ -0,0 +1,319 @@
+package com.hendrik.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes responses into byte buffers that can be written to a channel as they are.
+ * Status lines, header names, constant header lines and frequently used header values are
+ * encoded only once and copied from byte[] constants, the Date line is taken from the
+ * {@link ServerClock}. An encoder is meant to be reused for all responses of a
+ * connection: it collects the responses of a batch in its buffer, so header and body of
+ * several responses go out with a single (gathering) write. Bodies that are not held in
+ * memory, like files, are passed on as they are and written by themselves.
+ *
+ * @author Hendrik Tjabben
+ */
+public class ResponseEncoder {
+
+    /**
+     * The capacity of the encoder's reusable buffer
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Buffered bodies up to this size are copied behind the header. Larger bodies are written from their own buffer
+     */
+    private static final int MAX_COPIED_BODY_SIZE = 2 * 1024;
+
+    /**
+     * Line break used in HTTP messages
+     */
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    /**
+     * The status lines for all status codes including their line breaks, indexed by the status code's ordinal
+     */
+    private static final byte[][] STATUS_LINES = createStatusLines();
+
+    /**
+     * The header field names for all fields followed by ": ", indexed by the field's ordinal
+     */
+    private static final byte[][] FIELD_PREFIXES = createFieldPrefixes();
+
+    /**
+     * The header lines that are the same for all responses, encoded as a single block
+     */
+    private static final byte[] CONSTANT_FIELDS = createConstantFields();
+
+    /**
+     * Encoded header values that are sent with many responses
+     */
+    private static final Map<String, byte[]> COMMON_VALUES = createCommonValues();
+
+    /**
+     * The buffer that is reused for every batch
+     */
+    private final ByteBuffer reusableBuffer;
+
+    /**
+     * The buffer that is currently written to.
+     * This is only a different one than the reusable buffer when a batch does not fit into it
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * The index of the current buffer's first byte that is not part of the output yet
+     */
+    private int segmentStart;
+
+    /**
+     * The finished parts of the current batch
+     */
+    private final List<ResponseBody> output;
+
+    /**
+     * Constructor for a new response encoder
+     */
+    public ResponseEncoder() {
+        this.reusableBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.output = new ArrayList<ResponseBody>();
+        reset();
+    }
+
+    /**
+     * Appends a response to the current batch
+     *
+     * @param response The response to encode
+     */
+    public void encode(final Response response) {
+
+        put(STATUS_LINES[response.getStatusCode().ordinal()]);
+
+        for (HeaderFields.Field field : HeaderFields.FIELDS) {
+            List<String> values = response.header.getValueList(field);
+            if (values == null) {
+                continue;
+            }
+
+            put(FIELD_PREFIXES[field.ordinal()]);
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    putByte((byte) ',');
+                }
+                putValue(values.get(i));
+            }
+            put(CRLF);
+        }
+        if (response.hasGeneralFields()) {
+            put(CONSTANT_FIELDS);
+            put(ServerClock.getDateLine());
+        }
+        put(CRLF);
+
+        encodeBody(response.getBody());
+    }
+
+    /**
+     * Appends a body to the current batch.
+     * The parts of composite bodies are added one by one, so small parts are copied as well
+     *
+     * @param body The body to encode
+     */
+    private void encodeBody(final ResponseBody body) {
+
+        if (body instanceof CompositeBody) {
+            for (ResponseBody part : ((CompositeBody) body).getParts()) {
+                encodeBody(part);
+            }
+        } else if (body instanceof BufferBody && body.getLength() <= MAX_COPIED_BODY_SIZE) {
+            put(((BufferBody) body).getBuffer().duplicate());
+        } else if (body.getLength() != 0) {
+            sealSegment();
+            this.output.add(body);
+        }
+    }
+
+    /**
+     * Finishes the current batch
+     *
+     * @return The parts of all encoded responses in order. Buffered parts are valid until {@link #reset()} is called
+     */
+    public List<ResponseBody> finish() {
+        sealSegment();
+        return this.output;
+    }
+
+    /**
+     * Discards the current batch, so the encoder's buffer can be reused.
+     * Must not be called before the parts returned by {@link #finish()} are written
+     */
+    public void reset() {
+        this.output.clear();
+        this.reusableBuffer.clear();
+        this.buffer = this.reusableBuffer;
+        this.segmentStart = 0;
+    }
+
+    /**
+     * Convenience method to encode a single response
+     *
+     * @param response The response to encode
+     * @return The encoded response
+     */
+    public static byte[] toBytes(final Response response) {
+        ResponseEncoder encoder = new ResponseEncoder();
+        encoder.encode(response);
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (ResponseBody part : encoder.finish()) {
+            try {
+                result.write(part.toByteArray());
+            } catch (IOException ex) {
+                System.err.println("Response body could not be read: " + ex.getMessage());
+            }
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Writes a header value. Frequently used values are copied from their cached encoding
+     *
+     * @param value The value to write
+     */
+    private void putValue(final String value) {
+        byte[] common = COMMON_VALUES.get(value);
+        if (common != null) {
+            put(common);
+            return;
+        }
+
+        ensureRemaining(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            this.buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    /**
+     * Writes bytes to the current buffer
+     *
+     * @param bytes The bytes to write
+     */
+    private void put(final byte[] bytes) {
+        ensureRemaining(bytes.length);
+        this.buffer.put(bytes);
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer to the current buffer
+     *
+     * @param bytes The buffer to copy
+     */
+    private void put(final ByteBuffer bytes) {
+        ensureRemaining(bytes.remaining());
+        this.buffer.put(bytes);
+    }
+
+    /**
+     * Writes a single byte to the current buffer
+     *
+     * @param value The byte to write
+     */
+    private void putByte(final byte value) {
+        ensureRemaining(1);
+        this.buffer.put(value);
+    }
+
+    /**
+     * Makes sure that the current buffer is able to take a number of bytes.
+     * If not, the bytes written so far are added to the output and a new buffer is started
+     *
+     * @param length The number of bytes to write
+     */
+    private void ensureRemaining(final int length) {
+        if (this.buffer.remaining() >= length) {
+            return;
+        }
+        sealSegment();
+        this.buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, length));
+        this.segmentStart = 0;
+    }
+
+    /**
+     * Adds the bytes written to the current buffer since the last seal to the output
+     */
+    private void sealSegment() {
+        if (this.buffer.position() == this.segmentStart) {
+            return;
+        }
+        ByteBuffer segment = this.buffer.duplicate();
+        segment.position(this.segmentStart);
+        segment.limit(this.buffer.position());
+        this.output.add(new BufferBody(segment));
+        this.segmentStart = this.buffer.position();
+    }
+
+    /**
+     * Encodes the status lines for all status codes
+     *
+     * @return The status lines, indexed by the status code's ordinal
+     */
+    private static byte[][] createStatusLines() {
+        HeaderFields.StatusCode[] statusCodes = HeaderFields.StatusCode.values();
+        byte[][] statusLines = new byte[statusCodes.length][];
+        for (HeaderFields.StatusCode statusCode : statusCodes) {
+            String statusLine = HTTPServer.getHTTPVersion() + " " + HeaderFields.toString(statusCode) + "\r\n";
+            statusLines[statusCode.ordinal()] = statusLine.getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return statusLines;
+    }
+
+    /**
+     * Encodes the names of all header fields
+     *
+     * @return The field names followed by ": ", indexed by the field's ordinal
+     */
+    private static byte[][] createFieldPrefixes() {
+        byte[][] prefixes = new byte[HeaderFields.FIELDS.length][];
+        for (HeaderFields.Field field : HeaderFields.FIELDS) {
+            prefixes[field.ordinal()] = (HeaderFields.toString(field) + ": ").getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return prefixes;
+    }
+
+    /**
+     * Encodes the header lines that are the same for all responses
+     *
+     * @return The encoded lines, including their line breaks
+     */
+    private static byte[] createConstantFields() {
+        String lines = HeaderFields.toString(HeaderFields.Field.SERVER) + ": " + HTTPServer.getServerInfo() + "\r\n";
+        return lines.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Encodes header values that are sent with many responses
+     *
+     * @return The encoded values by their string representation
+     */
+    private static Map<String, byte[]> createCommonValues() {
+        Map<String, byte[]> values = new HashMap<String, byte[]>();
+        String[] common = {
+            HTTPServer.getServerInfo(),
+            "text/html; charset=utf-8",
+            "text/plain; charset=utf-8",
+            "close",
+            "keep-alive"
+        };
+        for (String value : common) {
+            values.put(value, value.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,168 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Writes the encoded responses of a connection to its channel.
+ * Consecutive buffered parts are sent with a single gathering write, other bodies such as files
+ * write themselves. Works with blocking and non-blocking channels: when a non-blocking channel
+ * does not take all bytes, the remaining parts stay queued until the next call.
+ * A writer that must not block does not generate the content of chunked bodies: it stops at a chunked body
+ * whose next chunk is needed and leaves framing the chunk to the caller, see {@link #getStarvedBody()}.
+ *
+ * @author Hendrik Tjabben
+ */
+public class ResponseWriter {
+
+    /**
+     * The maximum number of buffers that are passed to a single gathering write
+     */
+    private static final int MAX_GATHERED_BUFFERS = 64;
+
+    /**
+     * The parts that still have to be written, in order
+     */
+    private final Deque<ResponseBody> pendingParts;
+
+    /**
+     * Whether the content of chunked bodies is generated while writing
+     */
+    private final boolean generatesChunks;
+
+    /**
+     * Constructor for a new response writer that generates the content of chunked bodies while writing
+     */
+    public ResponseWriter() {
+        this(true);
+    }
+
+    /**
+     * Constructor for a new response writer
+     *
+     * @param generatesChunks Whether the content of chunked bodies is generated while writing
+     */
+    public ResponseWriter(final boolean generatesChunks) {
+        this.pendingParts = new ArrayDeque<ResponseBody>();
+        this.generatesChunks = generatesChunks;
+    }
+
+    /**
+     * Queues parts for writing
+     *
+     * @param parts The parts to append, e.g. the output of a {@link ResponseEncoder}
+     */
+    public void add(final List<ResponseBody> parts) {
+        this.pendingParts.addAll(parts);
+    }
+
+    /**
+     * Checks whether all queued parts were written
+     *
+     * @return True if nothing is left to write
+     */
+    public boolean isEmpty() {
+        return this.pendingParts.isEmpty();
+    }
+
+    /**
+     * Getter for the chunked body whose next chunk has to be framed before writing can continue.
+     * Only a writer that does not generate chunks stops at such a body
+     *
+     * @return The chunked body at the head of the queue if it needs its next chunk, null otherwise
+     */
+    public ChunkedBody getStarvedBody() {
+        ResponseBody head = this.pendingParts.peek();
+        if (head instanceof ChunkedBody && ((ChunkedBody) head).needsChunk()) {
+            return (ChunkedBody) head;
+        }
+        return null;
+    }
+
+    /**
+     * Writes as many queued parts as the channel takes
+     *
+     * @param channel The channel to write to
+     * @return True if all parts were written, false if parts are left because the channel did not take them
+     *     or a chunked body needs its next chunk
+     * @throws IOException Thrown if an I/O error happens while writing
+     */
+    public boolean write(final WritableByteChannel channel) throws IOException {
+
+        while (!this.pendingParts.isEmpty()) {
+            ResponseBody head = this.pendingParts.peek();
+
+            if (head instanceof BufferBody && channel instanceof GatheringByteChannel) {
+                if (!writeBuffers((GatheringByteChannel) channel)) {
+                    return false;
+                }
+                continue;
+            }
+
+            boolean written = !this.generatesChunks && head instanceof ChunkedBody
+                ? ((ChunkedBody) head).writeFramedTo(channel)
+                : head.writeTo(channel);
+            if (!written) {
+                return false;
+            }
+            this.pendingParts.poll().close();
+        }
+
+        return true;
+    }
+
+    /**
+     * Blocks until all queued parts are written to a blocking channel
+     *
+     * @param channel The blocking channel to write to
+     * @throws IOException Thrown if an I/O error happens while writing
+     */
+    public void writeFully(final WritableByteChannel channel) throws IOException {
+        while (!write(channel)) {
+            // A blocking channel only returns early if a transfer was partial, so simply continue
+        }
+    }
+
+    /**
+     * Writes the leading buffered parts with a single gathering write
+     *
+     * @param channel The channel to write to
+     * @return True if all leading buffered parts were written
+     * @throws IOException Thrown if an I/O error happens while writing
+     */
+    private boolean writeBuffers(final GatheringByteChannel channel) throws IOException {
+
+        int count = 0;
+        ByteBuffer[] buffers = new ByteBuffer[Math.min(this.pendingParts.size(), MAX_GATHERED_BUFFERS)];
+        for (ResponseBody part : this.pendingParts) {
+            if (!(part instanceof BufferBody) || count == buffers.length) {
+                break;
+            }
+            buffers[count++] = ((BufferBody) part).getBuffer();
+        }
+
+        channel.write(buffers, 0, count);
+
+        while (!this.pendingParts.isEmpty() && this.pendingParts.peek() instanceof BufferBody
+            && !((BufferBody) this.pendingParts.peek()).getBuffer().hasRemaining()) {
+            this.pendingParts.poll().close();
+            count--;
+        }
+
+        return count == 0;
+    }
+
+    /**
+     * Releases all parts that were not written, e.g. when the connection is closed
+     */
+    public void close() {
+        while (!this.pendingParts.isEmpty()) {
+            this.pendingParts.poll().close();
+        }
+    }
+}
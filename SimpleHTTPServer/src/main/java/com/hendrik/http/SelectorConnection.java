@@ -0,0 +1,371 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import com.hendrik.http.HeaderFields.StatusCode;
+
+/**
+ * A non-blocking HTTP connection that is owned by an {@link EventLoop}.
+ * It buffers incoming bytes until a complete request is available and queues the
+ * encoded responses until the socket is able to take them.
+ *
+ * Parsing the requests and building their responses may block, e.g. on file reads or database queries,
+ * so it is done by a worker thread. The same holds for generating the chunks of a {@link ChunkedBody},
+ * e.g. compressing a file or rendering a directory listing, so a worker frames each chunk once the previous
+ * one was written. The event loop only reads and writes the channel. While a worker handles the connection's
+ * requests or produces a chunk, the connection neither reads nor writes, so the parser, the encoder and the
+ * bodies are never used by two threads at the same time.
+ *
+ * @author Hendrik Tjabben
+ */
+public class SelectorConnection {
+
+    /**
+     * The connection's channel
+     */
+    private final SocketChannel channel;
+
+    /**
+     * The selection key of this connection's channel
+     */
+    private final SelectionKey key;
+
+    /**
+     * The event loop that owns this connection
+     */
+    private final EventLoop loop;
+
+    /**
+     * The workers that parse the requests and build their responses
+     */
+    private final Executor workers;
+
+    /**
+     * Builds the responses to the requests, called by the workers
+     */
+    private final Function<Request, Response> responder;
+
+    /**
+     * The parser that buffers bytes read from the channel until they form a complete request
+     */
+    private final RequestParser parser;
+
+    /**
+     * The encoder that serializes the responses of this connection
+     */
+    private final ResponseEncoder encoder;
+
+    /**
+     * Holds the encoded responses until the channel took them
+     */
+    private final ResponseWriter writer;
+
+    /**
+     * Whether the connection should be closed as soon as all pending responses are written.
+     * Set by the worker that handles the requests
+     */
+    private boolean closeAfterWrite;
+
+    /**
+     * Whether a worker currently handles the buffered requests or produces the next chunk of a body
+     */
+    private boolean handling;
+
+    /**
+     * Constructor for a new selector connection
+     *
+     * @param channel The connection's non-blocking channel
+     * @param key The selection key of the connection's channel
+     * @param loop The event loop that owns the connection
+     * @param workers The workers that parse the requests and build their responses
+     * @param responder Builds the responses to the requests, called by the workers
+     */
+    public SelectorConnection(final SocketChannel channel, final SelectionKey key, final EventLoop loop, final Executor workers,
+        final Function<Request, Response> responder) {
+        this.channel = channel;
+        this.key = key;
+        this.loop = loop;
+        this.workers = workers;
+        this.responder = responder;
+        this.parser = new RequestParser();
+        this.encoder = new ResponseEncoder();
+        // The event loop must not block, so the chunks of generated bodies are framed by the workers
+        this.writer = new ResponseWriter(false);
+        this.closeAfterWrite = false;
+        this.handling = false;
+    }
+
+    /**
+     * Called by the event loop when the channel has data to read.
+     * Serves every complete request that is buffered afterwards
+     *
+     * @throws IOException Thrown if an I/O error happens while reading
+     */
+    public void onReadable() throws IOException {
+
+        int read = this.channel.read(this.parser.getBuffer());
+
+        if (read == -1) {
+            close();
+            return;
+        }
+
+        serveBufferedRequests();
+    }
+
+    /**
+     * Called by the event loop when the channel is able to take more data
+     *
+     * @throws IOException Thrown if an I/O error happens while writing
+     */
+    public void onWritable() throws IOException {
+
+        // Requests that were pipelined beyond the last batch are still buffered
+        if (flush() && this.parser.hasBufferedBytes()) {
+            serveBufferedRequests();
+        }
+    }
+
+    /**
+     * Hands the buffered bytes to a worker, which answers all complete requests among them.
+     * The connection waits for neither reads nor writes until the worker is done
+     */
+    private void serveBufferedRequests() {
+
+        this.handling = true;
+        this.key.interestOps(0);
+
+        try {
+            this.workers.execute(this::handleBufferedRequests);
+        } catch (RejectedExecutionException ex) {
+            this.handling = false;
+            abort(StatusCode.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Runs on a worker thread. Parses the complete requests that are currently buffered and encodes their responses,
+     * at most {@link HTTPServer#MAX_PIPELINE_DEPTH} per batch. The responses are handed back to the event loop,
+     * which sends them together with a single gathering write
+     */
+    private void handleBufferedRequests() {
+
+        int batchSize = 0;
+        List<ResponseBody> responses = null;
+        boolean failed = false;
+
+        try {
+            while (!this.closeAfterWrite && batchSize < HTTPServer.MAX_PIPELINE_DEPTH) {
+
+                Request request = this.parser.parse(false);
+
+                if (request == null) {
+                    break;
+                }
+
+                Response response = this.responder.apply(request);
+
+                this.encoder.encode(response);
+                this.closeAfterWrite = response.closesConnection();
+                batchSize++;
+            }
+        } catch (IOException ex) {
+            // The responses to the requests before the broken one are still sent, followed by an error response.
+            // The connection is closed afterwards, because the following bytes cannot be trusted to start a new request
+            System.out.println("Server I/O exception while serving client: " + ex.getMessage());
+            StatusCode statusCode = ex instanceof RequestException ? ((RequestException) ex).getStatusCode() : StatusCode.INTERNALERROR;
+            this.encoder.encode(ResponseBuilder.createError(statusCode));
+            this.closeAfterWrite = true;
+            batchSize++;
+        } catch (RuntimeException ex) {
+            // The encoder may hold a partially encoded response, so none of the batch's responses is sent
+            System.out.println("Unexpected error while serving client: " + ex);
+            ex.printStackTrace();
+            failed = true;
+        }
+
+        if (failed) {
+            this.encoder.reset();
+        } else if (batchSize > 0) {
+            responses = this.encoder.finish();
+        }
+
+        final List<ResponseBody> handledResponses = responses;
+        final int handledBatchSize = batchSize;
+        final boolean handlingFailed = failed;
+        this.loop.execute(() -> onHandled(handledResponses, handledBatchSize, handlingFailed));
+    }
+
+    /**
+     * Called on the event loop when a worker handled the buffered requests. Starts writing their responses
+     *
+     * @param responses The encoded responses. null if there are none
+     * @param batchSize The number of handled requests
+     * @param failed Whether handling the requests failed unexpectedly
+     */
+    private void onHandled(final List<ResponseBody> responses, final int batchSize, final boolean failed) {
+
+        this.handling = false;
+        if (responses != null) {
+            this.writer.add(responses);
+        }
+
+        if (!this.channel.isOpen()) {
+            // The connection was closed while the worker was busy
+            this.parser.close();
+            this.writer.close();
+            return;
+        }
+        if (failed) {
+            abort(StatusCode.INTERNALERROR);
+            return;
+        }
+
+        try {
+            // A full batch may have left pipelined requests in the buffer, they are answered once the batch is written
+            if (flush() && batchSize == HTTPServer.MAX_PIPELINE_DEPTH && this.parser.hasBufferedBytes()) {
+                serveBufferedRequests();
+            }
+        } catch (IOException ex) {
+            System.out.println("Server I/O exception while serving client: " + ex.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Hands a chunked body to a worker, which frames its next chunk.
+     * The connection waits for neither reads nor writes until the worker is done
+     *
+     * @param body The body that needs its next chunk
+     */
+    private void produceChunk(final ChunkedBody body) {
+
+        this.handling = true;
+        this.key.interestOps(0);
+
+        try {
+            this.workers.execute(() -> {
+                boolean failed = false;
+                try {
+                    body.frameChunk();
+                } catch (IOException | RuntimeException ex) {
+                    System.out.println("Error generating the response body: " + ex);
+                    failed = true;
+                }
+
+                final boolean producingFailed = failed;
+                this.loop.execute(() -> onChunkProduced(producingFailed));
+            });
+        } catch (RejectedExecutionException ex) {
+            // Part of the response was sent already, so the client can only notice the overload from the closed connection
+            this.handling = false;
+            System.out.println("No worker available to continue the response body");
+            close();
+        }
+    }
+
+    /**
+     * Called on the event loop when a worker framed the next chunk of a body. Continues writing the responses
+     *
+     * @param failed Whether generating the chunk failed
+     */
+    private void onChunkProduced(final boolean failed) {
+
+        this.handling = false;
+
+        if (!this.channel.isOpen()) {
+            // The connection was closed while the worker was busy
+            this.parser.close();
+            this.writer.close();
+            return;
+        }
+        if (failed) {
+            // The response is incomplete and cannot be finished, the client notices from the closed connection
+            close();
+            return;
+        }
+
+        try {
+            if (flush() && this.parser.hasBufferedBytes()) {
+                serveBufferedRequests();
+            }
+        } catch (IOException ex) {
+            System.out.println("Server I/O exception while serving client: " + ex.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Writes as many pending responses as the channel takes.
+     * Waits for write readiness when the socket's send buffer is full,
+     * and lets a worker frame the next chunk when a generated body needs one
+     *
+     * @return True if all pending responses were written and the connection is still open
+     * @throws IOException Thrown if an I/O error happens while writing
+     */
+    private boolean flush() throws IOException {
+
+        if (!this.writer.write(this.channel)) {
+            ChunkedBody starvedBody = this.writer.getStarvedBody();
+            if (starvedBody != null) {
+                produceChunk(starvedBody);
+            } else {
+                this.key.interestOps(SelectionKey.OP_WRITE);
+            }
+            return false;
+        }
+        this.encoder.reset();
+
+        if (this.closeAfterWrite) {
+            close();
+            return false;
+        }
+
+        this.key.interestOps(SelectionKey.OP_READ);
+        return true;
+    }
+
+    /**
+     * Answers with an error response and closes the connection.
+     * The response is only sent if no other response is partially written,
+     * and only as far as the socket takes it without blocking
+     *
+     * @param statusCode The error's status code
+     */
+    public void abort(final StatusCode statusCode) {
+        try {
+            if (this.writer.isEmpty() && this.channel.isOpen()) {
+                this.channel.write(ByteBuffer.wrap(ResponseBuilder.createError(statusCode).toBytes()));
+            }
+        } catch (IOException ex) {
+            System.out.println("Error sending the error response: " + ex.getMessage());
+        }
+        close();
+    }
+
+    /**
+     * Closes the connection and cancels its registration with the event loop.
+     * If a worker currently handles the connection's requests or produces a chunk, the payload being read
+     * and the responses are released once it is done
+     */
+    public void close() {
+        this.key.cancel();
+        if (!this.handling) {
+            this.parser.close();
+            this.writer.close();
+        }
+        try {
+            this.channel.close();
+        } catch (IOException ex) {
+            System.err.println("Error closing the channel");
+            ex.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.hendrik.http;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * A clock shared by all connections that provides the Date header field of responses.
+ * The field only has a resolution of seconds, so it is formatted and encoded once per second
+ * instead of once per response. Every response of the same second copies the same bytes.
+ *
+ * This implementation is based on https://tools.ietf.org/html/rfc7231#section-7.1.1.2
+ *
+ * @author Hendrik Tjabben
+ */
+public class ServerClock {
+
+    /**
+     * The formatter for HTTP dates in GMT
+     */
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    /**
+     * The date of the current second. Replaced as a whole, so readers never see a half updated date
+     */
+    private static volatile CachedDate current = new CachedDate(System.currentTimeMillis() / 1000);
+
+    /**
+     * A formatted date and its encoded header line
+     */
+    private static class CachedDate {
+
+        /**
+         * The second since the epoch the date describes
+         */
+        private final long second;
+
+        /**
+         * The formatted date, e.g. Sun, 06 Nov 1994 08:49:37 GMT
+         */
+        private final String value;
+
+        /**
+         * The encoded header line, including its line break
+         */
+        private final byte[] line;
+
+        /**
+         * Constructor for a new cached date
+         *
+         * @param second The second since the epoch the date describes
+         */
+        private CachedDate(final long second) {
+            this.second = second;
+            this.value = FORMATTER.format(Instant.ofEpochSecond(second));
+            this.line = (HeaderFields.toString(HeaderFields.Field.DATE) + ": " + this.value + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Getter for the date of the current second.
+     * It is formatted again when the first response of a new second asks for it
+     *
+     * @return The date of the current second
+     */
+    private static CachedDate now() {
+        CachedDate date = current;
+        long second = System.currentTimeMillis() / 1000;
+        if (date.second != second) {
+            date = new CachedDate(second);
+            current = date;
+        }
+        return date;
+    }
+
+    /**
+     * Getter for the current date as it is sent in the Date header field
+     *
+     * @return The formatted date
+     */
+    public static String getDate() {
+        return now().value;
+    }
+
+    /**
+     * Getter for the encoded Date header line of the current second.
+     * The returned array is shared and must not be modified
+     *
+     * @return The header line's bytes, including its line break
+     */
+    public static byte[] getDateLine() {
+        return now().line;
+    }
+}
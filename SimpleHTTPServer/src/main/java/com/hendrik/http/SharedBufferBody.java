@@ -0,0 +1,89 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A response body whose bytes are held in buffers that are shared with a cache, e.g. off-heap buffers.
+ * The body writes views of the buffers, so the bytes are never copied into the heap.
+ * When the body is closed, the cache is told that the buffers are not used by this body anymore.
+ *
+ * @author Hendrik Tjabben
+ */
+public class SharedBufferBody extends ResponseBody {
+
+    /**
+     * Views of the shared buffers containing the body's remaining bytes
+     */
+    private final ByteBuffer[] buffers;
+
+    /**
+     * Called once when the body is closed. null after it was called
+     */
+    private Runnable release;
+
+    /**
+     * Constructor for a body consisting of the remaining bytes of shared buffers
+     *
+     * @param buffers Views of the shared buffers. Their positions are advanced while the body is written
+     * @param release Called once when the body does not use the buffers anymore
+     */
+    public SharedBufferBody(final ByteBuffer[] buffers, final Runnable release) {
+        this.buffers = buffers;
+        this.release = release;
+    }
+
+    @Override
+    public long getLength() {
+        long length = 0;
+        for (ByteBuffer buffer : this.buffers) {
+            length += buffer.remaining();
+        }
+        return length;
+    }
+
+    @Override
+    public boolean writeTo(final WritableByteChannel channel) throws IOException {
+
+        if (channel instanceof GatheringByteChannel) {
+            ((GatheringByteChannel) channel).write(this.buffers);
+        } else {
+            for (ByteBuffer buffer : this.buffers) {
+                while (buffer.hasRemaining()) {
+                    if (channel.write(buffer) == 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        if (this.buffers.length > 0 && this.buffers[this.buffers.length - 1].hasRemaining()) {
+            return false;
+        }
+
+        close();
+        return true;
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        byte[] data = new byte[(int) getLength()];
+        int offset = 0;
+        for (ByteBuffer buffer : this.buffers) {
+            int length = buffer.remaining();
+            buffer.duplicate().get(data, offset, length);
+            offset += length;
+        }
+        return data;
+    }
+
+    @Override
+    public void close() {
+        if (this.release != null) {
+            this.release.run();
+            this.release = null;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.hendrik.http.HeaderFields.Field;
+import com.hendrik.http.HeaderFields.StatusCode;
+
+/**
+ * A bounded pool of worker threads that serve connections using the {@link ConnectionThread} logic.
+ * Connections that arrive while all workers are busy wait in a queue of limited depth.
+ * When the queue is full as well, the connection is answered with a pre-rendered
+ * 503 Service Unavailable response and closed without parsing its request.
+ * Rejected connections are answered by a few separate threads, so the acceptor never blocks on a client.
+ * Their request is read and discarded before the socket is closed, because closing a socket with unread
+ * data resets the connection, which may destroy the 503 before the client read it.
+ *
+ * @author Hendrik Tjabben
+ */
+public class WorkerPool implements WorkerPoolMXBean {
+
+    /**
+     * The number of seconds rejected clients are asked to wait before retrying
+     */
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    /**
+     * The number of threads that answer rejected connections
+     */
+    private static final int REJECTER_COUNT = 2;
+
+    /**
+     * The number of rejected connections that may wait to be answered. Any further connection is closed immediately
+     */
+    private static final int REJECTER_QUEUE_CAPACITY = 256;
+
+    /**
+     * The number of milliseconds a rejected client is given to send its request and close the connection
+     */
+    private static final int DRAIN_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * The maximum number of bytes that are read and discarded from a rejected connection
+     */
+    private static final int DRAIN_LIMIT = 64 * 1024;
+
+    /**
+     * The encoded response that is sent to rejected connections
+     */
+    private static final byte[] SERVICE_UNAVAILABLE = createServiceUnavailableResponse();
+
+    /**
+     * The executor running the connections
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The executor answering rejected connections
+     */
+    private final ThreadPoolExecutor rejecter;
+
+    /**
+     * The maximum number of connections that may wait for a worker
+     */
+    private final int queueCapacity;
+
+    /**
+     * The number of connections that were handed to the executor
+     */
+    private final AtomicLong acceptedCount;
+
+    /**
+     * The number of connections that were rejected
+     */
+    private final AtomicLong rejectedCount;
+
+    /**
+     * Constructor for a new worker pool
+     *
+     * @param workerCount The number of connections that are served in parallel
+     * @param queueCapacity The number of connections that may wait for a worker
+     */
+    public WorkerPool(final int workerCount, final int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        this.executor = new ThreadPoolExecutor(workerCount, workerCount, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadPoolExecutor.AbortPolicy());
+        this.rejecter = new ThreadPoolExecutor(REJECTER_COUNT, REJECTER_COUNT, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(REJECTER_QUEUE_CAPACITY), new ThreadPoolExecutor.AbortPolicy());
+        this.acceptedCount = new AtomicLong();
+        this.rejectedCount = new AtomicLong();
+    }
+
+    /**
+     * Hands a connection to the pool or rejects it when the pool is saturated
+     *
+     * @param channel The accepted connection
+     */
+    public void serve(final SocketChannel channel) {
+        try {
+            this.executor.execute(new ConnectionThread(channel.socket()));
+            this.acceptedCount.incrementAndGet();
+        } catch (RejectedExecutionException ex) {
+            this.rejectedCount.incrementAndGet();
+            try {
+                this.rejecter.execute(() -> reject(channel));
+            } catch (RejectedExecutionException rejecterBusy) {
+                // Even the rejecters are saturated, the client has to notice the overload from the closed connection
+                close(channel);
+            }
+        }
+    }
+
+    /**
+     * Sends the pre-rendered 503 response, discards the client's request and closes the connection
+     *
+     * @param channel The rejected connection
+     */
+    private static void reject(final SocketChannel channel) {
+        try {
+            ByteBuffer response = ByteBuffer.wrap(SERVICE_UNAVAILABLE);
+            while (response.hasRemaining()) {
+                channel.write(response);
+            }
+            channel.shutdownOutput();
+
+            // Wait for the client to close its side after it read the response
+            channel.socket().setSoTimeout(DRAIN_TIMEOUT_MILLIS);
+            InputStream input = channel.socket().getInputStream();
+            byte[] discarded = new byte[4096];
+            int drained = 0;
+            int read;
+            while (drained < DRAIN_LIMIT && (read = input.read(discarded)) != -1) {
+                drained += read;
+            }
+        } catch (SocketTimeoutException ex) {
+            // The client keeps the connection open, it is closed anyway
+        } catch (IOException ex) {
+            System.out.println("Error rejecting connection: " + ex.getMessage());
+        } finally {
+            close(channel);
+        }
+    }
+
+    /**
+     * Convenience method for closing a channel
+     *
+     * @param channel The channel to close
+     */
+    private static void close(final SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            System.err.println("Error closing the channel");
+        }
+    }
+
+    /**
+     * Makes the pool's statistics available over JMX
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("com.hendrik.http:type=WorkerPool"));
+        } catch (JMException ex) {
+            System.out.println("Worker pool statistics cannot be exposed over JMX: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Stops accepting new connections. Connections that are already served are finished
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+        this.rejecter.shutdown();
+    }
+
+    @Override
+    public int getWorkerCount() {
+        return this.executor.getMaximumPoolSize();
+    }
+
+    @Override
+    public int getActiveWorkerCount() {
+        return this.executor.getActiveCount();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    @Override
+    public long getAcceptedCount() {
+        return this.acceptedCount.get();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    /**
+     * Renders the response that is sent to rejected connections
+     *
+     * @return The encoded 503 Service Unavailable response
+     */
+    private static byte[] createServiceUnavailableResponse() {
+        byte[] body = HeaderFields.toString(StatusCode.SERVICE_UNAVAILABLE).getBytes();
+
+        Header header = new Header();
+        header.addEntry(Field.CONTENT_TYPE, "text/plain; charset=utf-8");
+        header.addEntry(Field.CONTENT_LENGTH, String.valueOf(body.length));
+        header.addEntry(Field.SERVER, HTTPServer.getServerInfo());
+        header.addEntry(Field.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS));
+        header.addEntry(Field.CONNECTION, "close");
+
+        return new Response(StatusCode.SERVICE_UNAVAILABLE, header, body).toBytes();
+    }
+}
@@ -0,0 +1,52 @@
+package com.hendrik.http;
+
+/**
+ * Management interface of the {@link WorkerPool}.
+ * Exposes the pool's limits and load over JMX, so they can be tuned while the server runs
+ *
+ * @author Hendrik Tjabben
+ */
+public interface WorkerPoolMXBean {
+
+    /**
+     * Getter for the maximum number of connections that are served in parallel
+     *
+     * @return The number of worker threads
+     */
+    int getWorkerCount();
+
+    /**
+     * Getter for the number of workers that currently serve a connection
+     *
+     * @return The number of busy workers
+     */
+    int getActiveWorkerCount();
+
+    /**
+     * Getter for the maximum number of connections that may wait for a worker
+     *
+     * @return The queue's capacity
+     */
+    int getQueueCapacity();
+
+    /**
+     * Getter for the number of connections that currently wait for a worker
+     *
+     * @return The current queue depth
+     */
+    int getQueueDepth();
+
+    /**
+     * Getter for the number of connections that were handed to the pool
+     *
+     * @return The number of accepted connections
+     */
+    long getAcceptedCount();
+
+    /**
+     * Getter for the number of connections that were turned away with 503 Service Unavailable
+     *
+     * @return The number of rejected connections
+     */
+    long getRejectedCount();
+}
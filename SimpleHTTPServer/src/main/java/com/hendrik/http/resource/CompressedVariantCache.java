@@ -0,0 +1,353 @@
+package com.hendrik.http.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+import com.hendrik.http.Compression;
+import com.hendrik.http.FileRegionBody;
+import com.hendrik.http.ResponseBody;
+
+/**
+ * A disk cache of compressed variants of static files.
+ * A variant is built in the background the first time a file is requested compressed, meanwhile the file
+ * is compressed while it is sent. Once the variant exists, it is sent with {@link FileChannel#transferTo}
+ * like any other file, so repeated compressed responses cost no CPU at all.
+ *
+ * Variants are named after the source file's path, size, modification time and file key, so a variant
+ * never matches a changed file and no invalidation is needed. Outdated variants are evicted in LRU order
+ * when the cache is full. Variants are kept across restarts.
+ *
+ * @author Hendrik Tjabben
+ */
+public class CompressedVariantCache {
+
+    /**
+     * The algorithm used to name variants
+     */
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * The number of files that may wait for their variant to be built. Further files are compressed while they are sent
+     */
+    private static final int MAX_PENDING_BUILDS = 64;
+
+    /**
+     * The suffix of variants that are being built
+     */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * Digits used to encode variant names
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The enabled cache. null if the disk cache is disabled
+     */
+    private static volatile CompressedVariantCache instance = null;
+
+    /**
+     * The directory holding the variants
+     */
+    private final Path directory;
+
+    /**
+     * The maximum number of bytes the variants take
+     */
+    private final long capacity;
+
+    /**
+     * The lengths of the cached variants by their file names, in LRU order
+     */
+    private final LinkedHashMap<String, Long> variants;
+
+    /**
+     * The names of variants that are being built or wait to be built
+     */
+    private final Set<String> pending;
+
+    /**
+     * Builds variants one after another, so compression never takes more than one core
+     */
+    private final ThreadPoolExecutor builder;
+
+    /**
+     * The number of bytes the cached variants take
+     */
+    private long usedBytes;
+
+    /**
+     * Enables the disk cache. Variants that were built by an earlier run are reused
+     *
+     * @param directory The directory holding the variants. It is created if it does not exist
+     * @param capacity The maximum number of bytes the variants take
+     * @throws IOException Thrown if the directory cannot be created or read
+     */
+    public static synchronized void enable(final Path directory, final long capacity) throws IOException {
+
+        CompressedVariantCache cache = new CompressedVariantCache(directory, capacity);
+        cache.load();
+
+        if (instance != null) {
+            instance.builder.shutdown();
+        }
+        instance = cache;
+    }
+
+    /**
+     * Getter for the enabled cache
+     *
+     * @return The cache. null if the disk cache is disabled
+     */
+    public static CompressedVariantCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Constructor for a new disk cache
+     *
+     * @param directory The directory holding the variants
+     * @param capacity The maximum number of bytes the variants take
+     */
+    public CompressedVariantCache(final Path directory, final long capacity) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.capacity = capacity;
+        this.variants = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        this.pending = new HashSet<String>();
+        this.usedBytes = 0;
+        this.builder = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(MAX_PENDING_BUILDS),
+            runnable -> {
+                Thread thread = new Thread(runnable, "CompressedVariantBuilder");
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * Creates the cache's directory, removes unfinished variants and adds the finished ones,
+     * least recently modified first
+     *
+     * @throws IOException Thrown if the directory cannot be created or read
+     */
+    private void load() throws IOException {
+
+        Files.createDirectories(this.directory);
+
+        File[] files = this.directory.toFile().listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list the compressed variant cache " + this.directory);
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+        for (File file : files) {
+            if (file.getName().endsWith(TEMPORARY_SUFFIX)) {
+                delete(file.toPath());
+            } else if (file.isFile()) {
+                add(file.getName(), file.length());
+            }
+        }
+    }
+
+    /**
+     * Gets the compressed variant of a file.
+     * If the variant is not cached, it is built in the background, so later requests can use it
+     *
+     * @param source The file's absolute, normalized path
+     * @param metadata The file's current metadata
+     * @param coding The content coding, {@link Compression#GZIP} or {@link Compression#DEFLATE}
+     * @return A body sending the variant. null if it is not cached yet
+     * @throws IOException Thrown if the variant cannot be opened
+     */
+    public ResponseBody getBody(final Path source, final FileMetadata metadata, final String coding) throws IOException {
+
+        if (metadata.getLength() > this.capacity / 4) {
+            return null;
+        }
+
+        String name = getVariantName(source, metadata, coding);
+
+        synchronized (this) {
+            if (this.variants.get(name) == null) {
+                if (this.pending.add(name)) {
+                    try {
+                        this.builder.execute(() -> build(source, metadata, coding, name));
+                    } catch (RejectedExecutionException ex) {
+                        this.pending.remove(name);
+                    }
+                }
+                return null;
+            }
+        }
+
+        // The variant may have been evicted meanwhile, then the file is compressed while it is sent
+        return open(this.directory.resolve(name));
+    }
+
+    /**
+     * Compresses a file into a new variant. The variant is only added if the file did not change meanwhile
+     *
+     * @param source The file's path
+     * @param metadata The file's metadata when the variant was requested
+     * @param coding The content coding
+     * @param name The variant's file name
+     */
+    private void build(final Path source, final FileMetadata metadata, final String coding, final String name) {
+
+        Path temporary = this.directory.resolve(name + TEMPORARY_SUFFIX);
+
+        try {
+            try (InputStream in = Files.newInputStream(source);
+                OutputStream out = createCompressor(Files.newOutputStream(temporary), coding)) {
+                IOUtils.copy(in, out);
+            }
+
+            FileMetadata current = FileMetadata.read(source);
+            if (current.getLength() != metadata.getLength() || current.getLastModified() != metadata.getLastModified()) {
+                delete(temporary);
+                return;
+            }
+
+            Path variant = this.directory.resolve(name);
+            Files.move(temporary, variant, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            add(name, Files.size(variant));
+        } catch (IOException ex) {
+            System.out.println("Compressed variant of " + source + " cannot be built: " + ex.getMessage());
+            delete(temporary);
+        } finally {
+            synchronized (this) {
+                this.pending.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Adds a variant and evicts the least recently used variants until the cache's capacity is kept
+     *
+     * @param name The variant's file name
+     * @param length The variant's length
+     */
+    private synchronized void add(final String name, final long length) {
+
+        Long previous = this.variants.put(name, length);
+        this.usedBytes += length - (previous == null ? 0 : previous);
+
+        Iterator<Map.Entry<String, Long>> iterator = this.variants.entrySet().iterator();
+        while (this.usedBytes > this.capacity && iterator.hasNext()) {
+            Map.Entry<String, Long> victim = iterator.next();
+            iterator.remove();
+            this.usedBytes -= victim.getValue();
+            // Responses that opened the variant already keep sending it
+            delete(this.directory.resolve(victim.getKey()));
+        }
+    }
+
+    /**
+     * Getter for the number of bytes the cached variants take
+     *
+     * @return The number of bytes
+     */
+    public synchronized long getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    /**
+     * Opens a compressed file to be sent completely
+     *
+     * @param path The compressed file
+     * @return A body sending the file. null if the file does not exist
+     * @throws IOException Thrown if the file cannot be opened
+     */
+    static ResponseBody open(final Path path) throws IOException {
+
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+
+        return new FileRegionBody(path, channel, 0, channel.size());
+    }
+
+    /**
+     * Creates a stream that compresses with a content coding
+     *
+     * @param out The stream to write the compressed bytes to
+     * @param coding The content coding
+     * @return The compressing stream
+     * @throws IOException Thrown if the stream cannot be created
+     */
+    private static OutputStream createCompressor(final OutputStream out, final String coding) throws IOException {
+        if (Compression.GZIP.equals(coding)) {
+            return new GZIPOutputStream(out, 16 * 1024);
+        }
+        return new DeflaterOutputStream(out);
+    }
+
+    /**
+     * Names the variant of a version of a file
+     *
+     * @param source The file's path
+     * @param metadata The file's metadata
+     * @param coding The content coding
+     * @return The variant's file name
+     * @throws IOException Thrown if the digest algorithm is not available
+     */
+    private static String getVariantName(final Path source, final FileMetadata metadata, final String coding) throws IOException {
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("Digest algorithm not available: " + DIGEST_ALGORITHM, ex);
+        }
+
+        String key = source + "\n" + metadata.getLength() + "\n" + metadata.getLastModified() + "\n" + metadata.getFileKey();
+        byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder name = new StringBuilder(2 * hash.length + 3);
+        for (byte b : hash) {
+            name.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+        }
+        return name.append(Compression.GZIP.equals(coding) ? ".gz" : ".zz").toString();
+    }
+
+    /**
+     * Deletes a file if it exists
+     *
+     * @param path The file to delete
+     */
+    private static void delete(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            System.out.println("Compressed variant " + path + " cannot be deleted: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.hendrik.http.resource;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pool of fixed-size chunks of off-heap memory.
+ * The chunks are cut from large direct buffers (slabs) that are allocated on demand until the pool's capacity is reached.
+ * Slabs are never freed, released chunks are reused instead, so the pool's memory does not depend on the garbage collector.
+ *
+ * @author Hendrik Tjabben
+ */
+public class DirectBufferPool {
+
+    /**
+     * The size of a single chunk in bytes
+     */
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The size of a slab in bytes
+     */
+    private static final int SLAB_SIZE = 64 * CHUNK_SIZE;
+
+    /**
+     * The maximum number of bytes the pool allocates
+     */
+    private final long capacity;
+
+    /**
+     * The number of bytes allocated so far
+     */
+    private long allocated;
+
+    /**
+     * Allocated chunks that are not in use
+     */
+    private final Deque<ByteBuffer> freeChunks;
+
+    /**
+     * Constructor for a new pool. No memory is allocated before it is needed
+     *
+     * @param capacity The maximum number of bytes the pool allocates. Rounded down to whole chunks
+     */
+    public DirectBufferPool(final long capacity) {
+        this.capacity = capacity - capacity % CHUNK_SIZE;
+        this.allocated = 0;
+        this.freeChunks = new ArrayDeque<ByteBuffer>();
+    }
+
+    /**
+     * Computes the number of chunks that are needed to hold a number of bytes
+     *
+     * @param bytes The number of bytes
+     * @return The number of chunks
+     */
+    public static int chunksFor(final long bytes) {
+        return (int) ((bytes + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    /**
+     * Getter for the number of chunks that can be handed out without releasing any
+     *
+     * @return The number of free and not yet allocated chunks
+     */
+    public synchronized int getAvailableChunks() {
+        return this.freeChunks.size() + (int) ((this.capacity - this.allocated) / CHUNK_SIZE);
+    }
+
+    /**
+     * Takes chunks that together hold a number of bytes
+     *
+     * @param bytes The number of bytes to hold
+     * @return The cleared chunks. null if not enough chunks are available
+     */
+    public synchronized ByteBuffer[] allocate(final long bytes) {
+
+        int count = chunksFor(bytes);
+
+        while (this.freeChunks.size() < count && this.allocated < this.capacity) {
+            allocateSlab();
+        }
+        if (this.freeChunks.size() < count) {
+            return null;
+        }
+
+        ByteBuffer[] chunks = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            chunks[i] = this.freeChunks.pop();
+            chunks[i].clear();
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns chunks to the pool
+     *
+     * @param chunks The chunks that are not used anymore
+     */
+    public synchronized void release(final ByteBuffer[] chunks) {
+        for (ByteBuffer chunk : chunks) {
+            this.freeChunks.push(chunk);
+        }
+    }
+
+    /**
+     * Getter for the pool's capacity
+     *
+     * @return The maximum number of bytes the pool allocates
+     */
+    public long getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Getter for the amount of off-heap memory the pool allocated
+     *
+     * @return The number of allocated bytes
+     */
+    public synchronized long getAllocatedBytes() {
+        return this.allocated;
+    }
+
+    /**
+     * Getter for the amount of allocated memory that is in use
+     *
+     * @return The number of bytes in chunks that were handed out
+     */
+    public synchronized long getUsedBytes() {
+        return this.allocated - (long) this.freeChunks.size() * CHUNK_SIZE;
+    }
+
+    /**
+     * Allocates a new slab and cuts it into free chunks
+     */
+    private void allocateSlab() {
+        int slabSize = (int) Math.min(SLAB_SIZE, this.capacity - this.allocated);
+        ByteBuffer slab = ByteBuffer.allocateDirect(slabSize);
+
+        for (int offset = 0; offset < slabSize; offset += CHUNK_SIZE) {
+            slab.limit(offset + CHUNK_SIZE);
+            slab.position(offset);
+            this.freeChunks.push(slab.slice());
+        }
+        this.allocated += slabSize;
+    }
+}
@@ -0,0 +1,432 @@
+package com.hendrik.http.resource;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.hendrik.http.ResponseBody;
+import com.hendrik.http.SharedBufferBody;
+
+/**
+ * An off-heap cache tier for files that are too large for the {@link FileCache}.
+ * File contents are held in chunks of a {@link DirectBufferPool}, so they neither count against the heap
+ * nor put pressure on the garbage collector, and are written to sockets without being copied into the heap.
+ *
+ * A file is only cached once it was requested repeatedly, and only replaces files that were requested less often.
+ * Responses keep a reference to the entry they send, so the chunks of an evicted file are reused only after
+ * all of its responses were written.
+ *
+ * @author Hendrik Tjabben
+ */
+public class DirectFileCache implements DirectFileCacheMXBean, FileWatcher.Listener {
+
+    /**
+     * The number of recent requests a file needs before it is cached
+     */
+    private static final int ADMISSION_FREQUENCY = 2;
+
+    /**
+     * The expected average size of a cached file. Used to size the frequency sketch
+     */
+    private static final int AVERAGE_ENTRY_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The enabled cache. null if the off-heap tier is disabled
+     */
+    private static volatile DirectFileCache instance = null;
+
+    /**
+     * The off-heap memory holding the cached files
+     */
+    private final DirectBufferPool pool;
+
+    /**
+     * The cached files by their paths, in LRU order
+     */
+    private final LinkedHashMap<Path, Entry> entries;
+
+    /**
+     * Estimates how often files were requested recently
+     */
+    private final FrequencySketch sketch;
+
+    /**
+     * The number of cache hits
+     */
+    private long hitCount;
+
+    /**
+     * The number of cache misses
+     */
+    private long missCount;
+
+    /**
+     * The number of evicted files
+     */
+    private long evictionCount;
+
+    /**
+     * The number of files that were not cached although they were requested repeatedly
+     */
+    private long rejectedCount;
+
+    /**
+     * The number of invalidations. Used to detect files that changed while they were loaded
+     */
+    private long invalidationCount;
+
+    /**
+     * A cached file
+     */
+    private static class Entry {
+
+        /**
+         * The chunks holding the file's content
+         */
+        private final ByteBuffer[] chunks;
+
+        /**
+         * The file's length
+         */
+        private final long length;
+
+        /**
+         * The number of users of the chunks: the cache itself while the entry is cached, and every unsent response
+         */
+        private int references;
+
+        /**
+         * Constructor for a new entry that is referenced by the cache
+         *
+         * @param chunks The chunks holding the file's content
+         * @param length The file's length
+         */
+        private Entry(final ByteBuffer[] chunks, final long length) {
+            this.chunks = chunks;
+            this.length = length;
+            this.references = 1;
+        }
+
+        /**
+         * Creates views of the chunks that contain a region of the file
+         *
+         * @param position The index of the region's first byte
+         * @param count The number of bytes in the region
+         * @return The views in order
+         */
+        private ByteBuffer[] slice(final long position, final long count) {
+            List<ByteBuffer> views = new ArrayList<ByteBuffer>();
+            long offset = position;
+            long remaining = count;
+
+            while (remaining > 0) {
+                ByteBuffer view = this.chunks[(int) (offset / DirectBufferPool.CHUNK_SIZE)].duplicate();
+                int start = (int) (offset % DirectBufferPool.CHUNK_SIZE);
+                int length = (int) Math.min(remaining, DirectBufferPool.CHUNK_SIZE - start);
+                view.limit(start + length);
+                view.position(start);
+                views.add(view);
+                offset += length;
+                remaining -= length;
+            }
+
+            return views.toArray(new ByteBuffer[views.size()]);
+        }
+    }
+
+    /**
+     * Enables the off-heap cache tier. The cache registers itself as listener of the {@link FileWatcher}
+     * and exposes its statistics over JMX
+     *
+     * @param capacity The maximum number of off-heap bytes the cache uses
+     */
+    public static synchronized void enable(final long capacity) {
+
+        if (instance != null) {
+            FileWatcher.removeListener(instance);
+        }
+
+        DirectFileCache cache = new DirectFileCache(capacity);
+        FileWatcher.addListener(cache);
+        instance = cache;
+
+        try {
+            ObjectName name = new ObjectName("com.hendrik.http:type=DirectFileCache");
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+            ManagementFactory.getPlatformMBeanServer().registerMBean(cache, name);
+        } catch (JMException ex) {
+            System.out.println("Off-heap cache statistics cannot be exposed over JMX: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Getter for the enabled cache
+     *
+     * @return The cache. null if the off-heap tier is disabled
+     */
+    public static DirectFileCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Constructor for a new off-heap cache
+     *
+     * @param capacity The maximum number of off-heap bytes the cache uses
+     */
+    public DirectFileCache(final long capacity) {
+        this.pool = new DirectBufferPool(capacity);
+        this.entries = new LinkedHashMap<Path, Entry>(16, 0.75f, true);
+        this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, Math.max(64, capacity / AVERAGE_ENTRY_SIZE)));
+    }
+
+    /**
+     * Checks whether files of a given length are cached by this tier.
+     * Smaller files belong to the {@link FileCache}, files larger than a quarter of the capacity are not cached
+     *
+     * @param length The file's length
+     * @return True if the file may be cached
+     */
+    public boolean accepts(final long length) {
+        return length > FileCache.MAX_ENTRY_SIZE && length <= this.pool.getCapacity() / 4;
+    }
+
+    /**
+     * Gets a region of a file from the cache.
+     * Files that are requested repeatedly but are not cached yet are loaded if there is room for them
+     *
+     * @param path The file's absolute, normalized path
+     * @param length The file's current length
+     * @param position The index of the region's first byte
+     * @param count The number of bytes in the region
+     * @return A body sending the region from off-heap memory. null if the file is not cached
+     * @throws IOException An I/O Error happened while loading the file
+     */
+    public ResponseBody getBody(final Path path, final long length, final long position, final long count) throws IOException {
+
+        ByteBuffer[] chunks;
+        long stamp;
+
+        synchronized (this) {
+            this.sketch.increment(path);
+
+            Entry entry = this.entries.get(path);
+            if (entry != null && entry.length == length) {
+                this.hitCount++;
+                return createBody(entry, position, count);
+            }
+
+            this.missCount++;
+
+            if (this.sketch.frequency(path) < ADMISSION_FREQUENCY || !makeRoom(path, length)) {
+                return null;
+            }
+
+            chunks = this.pool.allocate(length);
+            if (chunks == null) {
+                this.rejectedCount++;
+                return null;
+            }
+            stamp = this.invalidationCount;
+        }
+
+        // The file is read without holding the lock, so other files can be served meanwhile
+        if (!read(path, chunks, length)) {
+            this.pool.release(chunks);
+            return null;
+        }
+
+        synchronized (this) {
+            if (stamp != this.invalidationCount || this.entries.containsKey(path)) {
+                this.pool.release(chunks);
+                return null;
+            }
+
+            Entry entry = new Entry(chunks, length);
+            this.entries.put(path, entry);
+            return createBody(entry, position, count);
+        }
+    }
+
+    /**
+     * Creates a body that sends a region of a cached file and keeps the entry's chunks alive until it is closed
+     *
+     * @param entry The cached file
+     * @param position The index of the region's first byte
+     * @param count The number of bytes in the region
+     * @return The body
+     */
+    private ResponseBody createBody(final Entry entry, final long position, final long count) {
+        entry.references++;
+        return new SharedBufferBody(entry.slice(position, count), () -> release(entry));
+    }
+
+    /**
+     * Drops a reference to an entry. The entry's chunks are returned to the pool when it is not referenced anymore
+     *
+     * @param entry The entry that is not used anymore
+     */
+    private synchronized void release(final Entry entry) {
+        entry.references--;
+        if (entry.references == 0) {
+            this.pool.release(entry.chunks);
+        }
+    }
+
+    /**
+     * Evicts least recently used files until a file fits, as long as they were requested less often than the file
+     *
+     * @param path The path of the file to add
+     * @param length The length of the file to add
+     * @return True if enough memory is available, false if the file is not cached
+     */
+    private boolean makeRoom(final Path path, final long length) {
+
+        int required = DirectBufferPool.chunksFor(length);
+        int frequency = this.sketch.frequency(path);
+        Iterator<Map.Entry<Path, Entry>> iterator = this.entries.entrySet().iterator();
+
+        while (this.pool.getAvailableChunks() < required) {
+            if (!iterator.hasNext()) {
+                this.rejectedCount++;
+                return false;
+            }
+
+            Map.Entry<Path, Entry> victim = iterator.next();
+            if (this.sketch.frequency(victim.getKey()) >= frequency) {
+                this.rejectedCount++;
+                return false;
+            }
+
+            iterator.remove();
+            release(victim.getValue());
+            this.evictionCount++;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads a file into chunks
+     *
+     * @param path The file to read
+     * @param chunks The chunks to fill
+     * @param length The expected length of the file
+     * @return True if the whole file was read, false if it is shorter than expected
+     * @throws IOException An I/O Error happened while reading the file
+     */
+    private static boolean read(final Path path, final ByteBuffer[] chunks, final long length) throws IOException {
+
+        ByteBuffer last = chunks[chunks.length - 1];
+        last.limit((int) (length - (long) (chunks.length - 1) * DirectBufferPool.CHUNK_SIZE));
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long read = 0;
+            while (read < length) {
+                long count = channel.read(chunks);
+                if (count == -1) {
+                    return false;
+                }
+                read += count;
+            }
+        }
+
+        for (ByteBuffer chunk : chunks) {
+            chunk.flip();
+        }
+        return true;
+    }
+
+    /**
+     * Removes a file from the cache because it changed.
+     * If the path is not cached itself, it may be a directory, so all files below it are removed
+     *
+     * @param path The absolute, normalized path of the changed file or directory
+     */
+    public synchronized void invalidate(final Path path) {
+
+        this.invalidationCount++;
+
+        Iterator<Map.Entry<Path, Entry>> iterator = this.entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Entry> entry = iterator.next();
+            if (entry.getKey().startsWith(path)) {
+                iterator.remove();
+                release(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes all files from the cache
+     */
+    public synchronized void clear() {
+        this.invalidationCount++;
+        for (Entry entry : this.entries.values()) {
+            release(entry);
+        }
+        this.entries.clear();
+    }
+
+    @Override
+    public void pathChanged(final Path path) {
+        invalidate(path);
+    }
+
+    @Override
+    public void overflow() {
+        clear();
+    }
+
+    @Override
+    public long getCapacity() {
+        return this.pool.getCapacity();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return this.pool.getAllocatedBytes();
+    }
+
+    @Override
+    public long getUsedBytes() {
+        return this.pool.getUsedBytes();
+    }
+
+    @Override
+    public synchronized int getEntryCount() {
+        return this.entries.size();
+    }
+
+    @Override
+    public synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    @Override
+    public synchronized long getMissCount() {
+        return this.missCount;
+    }
+
+    @Override
+    public synchronized long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    @Override
+    public synchronized long getRejectedCount() {
+        return this.rejectedCount;
+    }
+}
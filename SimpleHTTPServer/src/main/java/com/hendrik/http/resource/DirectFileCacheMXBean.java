@@ -0,0 +1,67 @@
+package com.hendrik.http.resource;
+
+/**
+ * Management interface of the {@link DirectFileCache}.
+ * Exposes the off-heap memory usage and the cache's effectiveness over JMX
+ *
+ * @author Hendrik Tjabben
+ */
+public interface DirectFileCacheMXBean {
+
+    /**
+     * Getter for the maximum amount of off-heap memory the cache uses
+     *
+     * @return The cache's capacity in bytes
+     */
+    long getCapacity();
+
+    /**
+     * Getter for the amount of off-heap memory that was allocated so far
+     *
+     * @return The number of allocated bytes
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Getter for the amount of off-heap memory that holds cached files or files that are still being sent
+     *
+     * @return The number of used bytes
+     */
+    long getUsedBytes();
+
+    /**
+     * Getter for the number of cached files
+     *
+     * @return The number of entries
+     */
+    int getEntryCount();
+
+    /**
+     * Getter for the number of requests that were served from the cache
+     *
+     * @return The number of cache hits
+     */
+    long getHitCount();
+
+    /**
+     * Getter for the number of requests for cacheable files that were not cached
+     *
+     * @return The number of cache misses
+     */
+    long getMissCount();
+
+    /**
+     * Getter for the number of files that were dropped to make room for others
+     *
+     * @return The number of evictions
+     */
+    long getEvictionCount();
+
+    /**
+     * Getter for the number of files that were not cached, because they were accessed less often than
+     * the files they would have replaced or not enough memory was available
+     *
+     * @return The number of rejected admissions
+     */
+    long getRejectedCount();
+}
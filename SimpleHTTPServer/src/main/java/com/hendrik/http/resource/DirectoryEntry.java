@@ -0,0 +1,64 @@
+package com.hendrik.http.resource;
+
+/**
+ * A child of a directory as it is shown in a sorted directory listing
+ *
+ * @author Hendrik Tjabben
+ */
+public class DirectoryEntry {
+
+    /**
+     * The child's file name
+     */
+    private final String name;
+
+    /**
+     * The child's size in bytes
+     */
+    private final long size;
+
+    /**
+     * The child's modification time in milliseconds
+     */
+    private final long lastModified;
+
+    /**
+     * Constructor for a new entry
+     *
+     * @param name The child's file name
+     * @param size The child's size in bytes
+     * @param lastModified The child's modification time in milliseconds
+     */
+    public DirectoryEntry(final String name, final long size, final long lastModified) {
+        this.name = name;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Getter for the child's name
+     *
+     * @return The child's file name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Getter for the child's size
+     *
+     * @return The child's size in bytes
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Getter for the child's modification time
+     *
+     * @return The child's modification time in milliseconds
+     */
+    public long getLastModified() {
+        return this.lastModified;
+    }
+}
@@ -0,0 +1,182 @@
+package com.hendrik.http.resource;
+
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache for rendered directory listings.
+ * A listing only depends on the names of a directory's children, so a cached listing is dropped when the
+ * {@link FileWatcher} reports that a child was added to or removed from its directory, or that the directory itself
+ * changed. Changes of the children's content keep the listing. Listings are only cached while the watcher runs.
+ *
+ * @author Hendrik Tjabben
+ */
+public class DirectoryListingCache implements FileWatcher.Listener {
+
+    /**
+     * The maximum number of bytes all cached listings may take. When it is exceeded, the cache starts over
+     */
+    private static final long MAX_SIZE = 32L * 1024 * 1024;
+
+    /**
+     * The cached listings by the directories' absolute, normalized paths
+     */
+    private static ConcurrentMap<Path, Listing> listings = new ConcurrentHashMap<Path, Listing>();
+
+    /**
+     * The number of bytes all cached listings take
+     */
+    private static AtomicLong size = new AtomicLong();
+
+    /**
+     * The number of invalidations. Used to detect directories that changed while their listing was rendered
+     */
+    private static AtomicLong invalidationCount = new AtomicLong();
+
+    static {
+        FileWatcher.addListener(new DirectoryListingCache());
+    }
+
+    /**
+     * A rendered listing together with its entity tag
+     */
+    public static class Listing {
+
+        /**
+         * The rendered listing
+         */
+        private final byte[] data;
+
+        /**
+         * The listing's entity tag
+         */
+        private final String etag;
+
+        /**
+         * Constructor for a new listing
+         *
+         * @param data The rendered listing
+         * @param etag The listing's entity tag
+         */
+        public Listing(final byte[] data, final String etag) {
+            this.data = data;
+            this.etag = etag;
+        }
+
+        /**
+         * Getter for the rendered listing
+         *
+         * @return The listing's bytes. Must not be modified
+         */
+        public byte[] getData() {
+            return this.data;
+        }
+
+        /**
+         * Getter for the listing's entity tag
+         *
+         * @return The entity tag
+         */
+        public String getETag() {
+            return this.etag;
+        }
+    }
+
+    /**
+     * Constructor for the listener that invalidates the cache
+     */
+    private DirectoryListingCache() {
+    }
+
+    /**
+     * Gets the cached listing of a directory
+     *
+     * @param directory The directory's absolute, normalized path
+     * @return The listing. null if it is not cached
+     */
+    public static Listing get(final Path directory) {
+        return listings.get(directory);
+    }
+
+    /**
+     * Starts rendering a listing that will be offered to the cache
+     *
+     * @return A stamp to pass to {@link #put(Path, Listing, long)}
+     */
+    public static long beginRender() {
+        return invalidationCount.get();
+    }
+
+    /**
+     * Offers a rendered listing to the cache.
+     * The listing is not cached if the watcher is not running or the cache was invalidated since the rendering started
+     *
+     * @param directory The directory's absolute, normalized path
+     * @param listing The rendered listing
+     * @param stamp The stamp returned by {@link #beginRender()} before the directory was read
+     */
+    public static void put(final Path directory, final Listing listing, final long stamp) {
+
+        if (!FileWatcher.isWatching() || stamp != invalidationCount.get()) {
+            return;
+        }
+
+        if (size.addAndGet(listing.data.length) > MAX_SIZE) {
+            clear();
+            return;
+        }
+
+        Listing previous = listings.put(directory, listing);
+        if (previous != null) {
+            size.addAndGet(-previous.data.length);
+        }
+
+        // The directory changed while the listing was added, so it may be outdated already
+        if (stamp != invalidationCount.get() && listings.remove(directory, listing)) {
+            size.addAndGet(-listing.data.length);
+        }
+    }
+
+    /**
+     * Removes the cached listing of a directory
+     *
+     * @param directory The directory's absolute, normalized path
+     */
+    public static void invalidate(final Path directory) {
+        invalidationCount.incrementAndGet();
+        Listing removed = listings.remove(directory);
+        if (removed != null) {
+            size.addAndGet(-removed.data.length);
+        }
+    }
+
+    /**
+     * Removes all cached listings
+     */
+    public static void clear() {
+        invalidationCount.incrementAndGet();
+        listings.clear();
+        size.set(0);
+    }
+
+    /**
+     * Changed file content does not affect listings. Only the listing of a changed, removed or recreated
+     * directory itself is dropped, its parent's listing is handled by {@link #childrenChanged(Path)}
+     */
+    @Override
+    public void pathChanged(final Path path) {
+        invalidate(path);
+    }
+
+    @Override
+    public void childrenChanged(final Path directory) {
+        invalidate(directory);
+    }
+
+    @Override
+    public void overflow() {
+        clear();
+    }
+}
@@ -1,6 +1,19 @@
 package com.hendrik.http.resource;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
 
 import com.hendrik.http.HTTPServer;
 
@@ -11,6 +24,33 @@ import com.hendrik.http.HTTPServer;
  */
 public class DirectoryResource extends Resource {
 
+    /**
+     * The maximum number of entries of a complete listing that is rendered as a whole and cached.
+     * Larger directories are listed while the listing is sent, so the first bytes do not wait for the last entry
+     */
+    private static final int MAX_CACHED_ENTRIES = 1000;
+
+    /**
+     * The options of a complete listing that is generated while it is sent: all entries in the file system's order
+     */
+    private static final ListingOptions COMPLETE_LISTING = new ListingOptions(-1, 0, null, false);
+
+    /**
+     * The rendered complete listing. Looked up or rendered once when it is needed first.
+     * null if the directory is too large to be rendered as a whole
+     */
+    private DirectoryListingCache.Listing listing;
+
+    /**
+     * Whether the complete listing was looked up or rendered already
+     */
+    private boolean listingLoaded;
+
+    /**
+     * The requested page and sort order of the listing. null if the complete listing is requested
+     */
+    private final ListingOptions options;
+
     /**
      * Constructor for directory Resource
      * 
@@ -18,16 +58,125 @@ public class DirectoryResource extends Resource {
      */
     protected DirectoryResource(final File handle) {
         super(handle);
+        this.options = null;
+    }
+
+    /**
+     * Constructor for directory Resource whose metadata was looked up already
+     * 
+     * @param handle file handle managed by this resource.
+     * @param metadata The directory's metadata
+     * @param options The requested page and sort order of the listing. null for the complete listing
+     */
+    protected DirectoryResource(final File handle, final FileMetadata metadata, final ListingOptions options) {
+        super(handle, metadata);
+        this.options = options;
     }
     
     /**
      * Returns the directory's content in html form
      * 
      * @return the Directory in html in bytes
+     * @throws IOException An I/O Error happened while reading a page of the directory
+     */
+    @Override
+    public byte[] getData() throws IOException {
+
+        if (isRendered()) {
+            return renderData();
+        }
+
+        return getListing().getData();
+    }
+
+    /**
+     * Pages of the listing and the complete listing of large directories are generated while they are sent.
+     * The complete listing of other directories is taken from the cache
+     * 
+     * @return True if a page of the listing or the complete listing of a large directory is requested
+     */
+    @Override
+    public boolean isRendered() {
+        return this.options != null || getListing() == null;
+    }
+
+    /**
+     * Creates a renderer for the requested page of the listing, or for the complete listing of a large directory
+     * 
+     * @return A renderer for the requested page
      */
     @Override
-    public byte[] getData() {
-        return createDirectoryHTML().getBytes();
+    protected Renderer createRenderer() {
+        return new ListingRenderer(this.options != null ? this.options : COMPLETE_LISTING);
+    }
+
+    /**
+     * Getter for the directory's entity tag. It is computed once per rendered listing
+     * 
+     * @return The hash code for the directory's listing. null for listings that are generated while they are sent
+     */
+    @Override
+    public String getETag() {
+
+        if (isRendered()) {
+            return null;
+        }
+
+        return getListing().getETag();
+    }
+
+    /**
+     * Gets the directory's complete listing from the {@link DirectoryListingCache}.
+     * If it is not cached, the directory's first entries are read. If these are all of its entries,
+     * the listing is rendered and offered to the cache
+     * 
+     * @return The rendered listing. null if the directory has too many entries to be rendered as a whole
+     */
+    private DirectoryListingCache.Listing getListing() {
+
+        if (this.listingLoaded) {
+            return this.listing;
+        }
+        this.listingLoaded = true;
+
+        Path path = this.handle.toPath().toAbsolutePath().normalize();
+
+        this.listing = DirectoryListingCache.get(path);
+        if (this.listing == null) {
+            long stamp = DirectoryListingCache.beginRender();
+            List<String> names = readNames(MAX_CACHED_ENTRIES + 1);
+            if (names.size() > MAX_CACHED_ENTRIES) {
+                return null;
+            }
+
+            byte[] data = createDirectoryHTML(names).getBytes(StandardCharsets.UTF_8);
+            this.listing = new DirectoryListingCache.Listing(data, hashBytes(data));
+            DirectoryListingCache.put(path, this.listing, stamp);
+        }
+
+        return this.listing;
+    }
+
+    /**
+     * Reads the names of the directory's children in the order the file system returns them
+     * 
+     * @param max The maximum number of names to read
+     * @return The names that were read. Empty if the directory cannot be read or was removed meanwhile
+     */
+    private List<String> readNames(final int max) {
+
+        List<String> names = new ArrayList<String>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.handle.toPath())) {
+            Iterator<Path> children = stream.iterator();
+            while (names.size() < max && children.hasNext()) {
+                names.add(children.next().getFileName().toString());
+            }
+        } catch (IOException | DirectoryIteratorException ex) {
+            names.clear();
+        }
+
+        return names;
     }
 
     /**
@@ -43,11 +192,31 @@ public class DirectoryResource extends Resource {
     /**
      * Builds the directory's file structure as a html file
      * 
+     * @param names The names of the directory's children
      * @return The directory's structure as html
      */
-    private String createDirectoryHTML() {
+    private String createDirectoryHTML(final List<String> names) {
 
-        StringBuilder stringBuilder = new StringBuilder()
+        StringBuilder stringBuilder = new StringBuilder();
+        appendHeaderHTML(stringBuilder);
+
+        for (String name : names) {
+            appendEntryHTML(stringBuilder, name);
+        }
+
+        appendFooterHTML(stringBuilder, null);
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Appends the beginning of the directory's html listing, up to the first entry
+     * 
+     * @param stringBuilder The builder to append to
+     */
+    private void appendHeaderHTML(final StringBuilder stringBuilder) {
+
+        stringBuilder
             .append("<html>")
             .append(HTTPServer.NEW_LINE)
             .append("<body>")
@@ -69,30 +238,253 @@ public class DirectoryResource extends Resource {
                 .append(HTTPServer.NEW_LINE)
                 .append(HTTPServer.NEW_LINE);
         }
+    }
 
-        File[] content = this.handle.listFiles();
+    /**
+     * Appends a single entry of the directory's html listing
+     * 
+     * @param stringBuilder The builder to append to
+     * @param name The name of the directory's child
+     */
+    private void appendEntryHTML(final StringBuilder stringBuilder, final String name) {
 
         String dilimeter = this.isRoot() ? "" : "/";
-        for (File file : content) {
+        stringBuilder
+            .append("<li> <a href=\"")
+            .append(getPath() + dilimeter + name)
+            .append("\">")
+            .append(name)
+            .append("</a></li>")
+            .append(HTTPServer.NEW_LINE);
+    }
+
+    /**
+     * Appends the end of the directory's html listing
+     * 
+     * @param stringBuilder The builder to append to
+     * @param nextPageQuery The query of the following page. null if there is none
+     */
+    private void appendFooterHTML(final StringBuilder stringBuilder, final String nextPageQuery) {
+
+        stringBuilder
+            .append("</ul>")
+            .append(HTTPServer.NEW_LINE);
+
+        if (nextPageQuery != null) {
             stringBuilder
-                .append("<li> <a href=\"")
-                .append(getPath() + dilimeter + file.getName())
-                .append("\">")
-                .append(file.getName())
-                .append("</a></li>")
+                .append("<a href=\"")
+                .append(getPath())
+                .append("?")
+                .append(nextPageQuery)
+                .append("\">Next page</a>")
                 .append(HTTPServer.NEW_LINE);
         }
 
         stringBuilder
-            .append("</ul>")
-            .append(HTTPServer.NEW_LINE)
             .append("</body>")
             .append(HTTPServer.NEW_LINE)
             .append("</html>")
             .append(HTTPServer.NEW_LINE);
-
-        return stringBuilder.toString();
     }
 
+    /**
+     * Generates a page of the directory's html listing, or the complete listing of a large directory, while it is sent.
+     * Unsorted pages and complete listings are read from a {@link DirectoryStream} entry by entry, so the first bytes are sent
+     * before the directory was read completely. Sorted pages have to see all entries, but only keep the
+     * entries up to the end of the page in memory
+     */
+    private class ListingRenderer extends Renderer {
+
+        /**
+         * The requested page and sort order
+         */
+        private final ListingOptions options;
+
+        /**
+         * The open directory stream. null before the entries are read and after they were read
+         */
+        private DirectoryStream<Path> stream;
+
+        /**
+         * The names of the page's entries in order. null before the entries are read
+         */
+        private Iterator<String> names;
+
+        /**
+         * Whether the header was generated
+         */
+        private boolean headerDone;
+
+        /**
+         * Whether all entries were generated
+         */
+        private boolean entriesDone;
 
+        /**
+         * Whether the footer was generated
+         */
+        private boolean footerDone;
+
+        /**
+         * Whether there are entries after the page
+         */
+        private boolean hasMore;
+
+        /**
+         * Constructor for a new listing renderer
+         * 
+         * @param options The requested page and sort order
+         */
+        private ListingRenderer(final ListingOptions options) {
+            this.options = options;
+        }
+
+        @Override
+        protected boolean render(final StringBuilder out) throws IOException {
+
+            if (!this.headerDone) {
+                this.headerDone = true;
+                appendHeaderHTML(out);
+                return true;
+            }
+
+            if (!this.entriesDone) {
+                String name = nextName();
+                if (name != null) {
+                    appendEntryHTML(out, name);
+                    return true;
+                }
+                this.entriesDone = true;
+                close();
+            }
+
+            if (!this.footerDone) {
+                this.footerDone = true;
+                appendFooterHTML(out, this.hasMore ? this.options.getNextPageQuery() : null);
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Gets the name of the page's next entry
+         * 
+         * @return The entry's name. null if the page is complete
+         * @throws IOException Thrown if the directory cannot be read
+         */
+        private String nextName() throws IOException {
+
+            if (this.names == null) {
+                this.stream = Files.newDirectoryStream(DirectoryResource.this.handle.toPath());
+                this.names = this.options.getSortKey() == null ? unsortedPage() : sortedPage();
+            }
+
+            return this.names.hasNext() ? this.names.next() : null;
+        }
+
+        /**
+         * Creates an iterator over the page's entries in the order the file system returns them.
+         * The directory is read while the iterator is consumed
+         * 
+         * @return The names of the page's entries
+         */
+        private Iterator<String> unsortedPage() {
+
+            Iterator<Path> children = this.stream.iterator();
+            for (int i = 0; i < this.options.getOffset() && children.hasNext(); i++) {
+                children.next();
+            }
+
+            return new Iterator<String>() {
+
+                /**
+                 * The number of entries returned so far
+                 */
+                private int count = 0;
+
+                @Override
+                public boolean hasNext() {
+                    if (ListingRenderer.this.options.getLimit() >= 0 && this.count >= ListingRenderer.this.options.getLimit()) {
+                        ListingRenderer.this.hasMore = children.hasNext();
+                        return false;
+                    }
+                    return children.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    this.count++;
+                    return children.next().getFileName().toString();
+                }
+            };
+        }
+
+        /**
+         * Reads all entries and selects the page's entries in the requested order.
+         * Only the entries up to the end of the page are kept while the directory is read
+         * 
+         * @return The names of the page's entries
+         */
+        private Iterator<String> sortedPage() {
+
+            Comparator<DirectoryEntry> comparator = this.options.getComparator();
+            boolean needsAttributes = this.options.getSortKey() != ListingOptions.SortKey.NAME;
+            long keep = this.options.getLimit() < 0 ? Long.MAX_VALUE : (long) this.options.getOffset() + this.options.getLimit();
+
+            // The head of the queue is the entry that comes last, so it is dropped first when the queue is full
+            PriorityQueue<DirectoryEntry> entries = new PriorityQueue<DirectoryEntry>(comparator.reversed());
+
+            for (Path child : this.stream) {
+                entries.add(readEntry(child, needsAttributes));
+                if (entries.size() > keep) {
+                    entries.poll();
+                    this.hasMore = true;
+                }
+            }
+
+            List<String> page = new ArrayList<String>(entries.size());
+            while (!entries.isEmpty()) {
+                page.add(entries.poll().getName());
+            }
+            Collections.reverse(page);
+
+            return page.subList(Math.min(this.options.getOffset(), page.size()), page.size()).iterator();
+        }
+
+        /**
+         * Reads the attributes of a directory's child that a listing is sorted by
+         * 
+         * @param child The child to read
+         * @param needsAttributes Whether size and modification time are needed
+         * @return The child's entry. If its attributes cannot be read, size and modification time are 0
+         */
+        private DirectoryEntry readEntry(final Path child, final boolean needsAttributes) {
+
+            String name = child.getFileName().toString();
+
+            if (!needsAttributes) {
+                return new DirectoryEntry(name, 0, 0);
+            }
+
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                return new DirectoryEntry(name, attributes.size(), attributes.lastModifiedTime().toMillis());
+            } catch (IOException ex) {
+                return new DirectoryEntry(name, 0, 0);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (this.stream != null) {
+                try {
+                    this.stream.close();
+                } catch (IOException ex) {
+                    System.out.println("Directory stream could not be closed: " + ex.getMessage());
+                }
+                this.stream = null;
+            }
+        }
+    }
 }
@@ -0,0 +1,244 @@
+package com.hendrik.http.resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A cache for the entity tags of files.
+ * An entity tag is a digest of the file's content, stored together with the file's size, modification time
+ * and file key (the inode on unix systems). As long as these attributes do not change, the cached entity tag
+ * is returned, so checking a request's preconditions only requires reading the file's attributes.
+ * The digest is computed at most once per version of a file. It is computed outside of the map's locks,
+ * so digesting a large file never blocks requests for other files.
+ *
+ * @author Hendrik Tjabben
+ */
+public class ETagCache {
+
+    /**
+     * The digest algorithm used to create entity tags
+     */
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * The number of digest bytes an entity tag consists of
+     */
+    private static final int ETAG_BYTES = 16;
+
+    /**
+     * The size of the buffer that is used to read a file for digesting it
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of files whose entity tags are cached. When it is reached, the cache starts over
+     */
+    private static final int MAX_ENTRIES = 100000;
+
+    /**
+     * Digits used to encode entity tags
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The cached entity tags by the files' absolute paths
+     */
+    private static ConcurrentMap<Path, Validator> validators = new ConcurrentHashMap<Path, Validator>();
+
+    /**
+     * The entity tag of a single version of a file
+     */
+    private static class Validator {
+
+        /**
+         * The file's size when the entity tag was computed
+         */
+        private final long size;
+
+        /**
+         * The file's modification time in milliseconds when the entity tag was computed
+         */
+        private final long lastModified;
+
+        /**
+         * The file's key when the entity tag was computed. null if the file system does not provide keys
+         */
+        private final Object fileKey;
+
+        /**
+         * Completed with the entity tag for this version of the file once its digest is computed
+         */
+        private final CompletableFuture<String> etag;
+
+        /**
+         * Constructor for a new validator
+         *
+         * @param metadata The file's metadata when the entity tag was computed
+         * @param etag Completed with the entity tag
+         */
+        private Validator(final FileMetadata metadata, final CompletableFuture<String> etag) {
+            this.size = metadata.getLength();
+            this.lastModified = metadata.getLastModified();
+            this.fileKey = metadata.getFileKey();
+            this.etag = etag;
+        }
+
+        /**
+         * Checks whether this validator belongs to the version of the file described by its metadata
+         *
+         * @param metadata The file's current metadata
+         * @return True if size, modification time and file key are unchanged
+         */
+        private boolean matches(final FileMetadata metadata) {
+            return this.size == metadata.getLength()
+                && this.lastModified == metadata.getLastModified()
+                && Objects.equals(this.fileKey, metadata.getFileKey());
+        }
+    }
+
+    /**
+     * Gets the entity tag of a file's current version.
+     * The file's content is only read if its attributes changed since the entity tag was computed last
+     *
+     * @param file The file to get the entity tag for
+     * @return The file's entity tag
+     * @throws IOException An I/O Error happened while reading the file's attributes or content
+     */
+    public static String getETag(final Path file) throws IOException {
+        return getETag(file, FileMetadata.read(file.toAbsolutePath()));
+    }
+
+    /**
+     * Gets the entity tag of a file's version that was described by metadata read before.
+     * The file's content is only read if the metadata changed since the entity tag was computed last
+     *
+     * @param file The file to get the entity tag for
+     * @param metadata The file's metadata, e.g. from the {@link FileMetadataCache}
+     * @return The file's entity tag
+     * @throws IOException An I/O Error happened while reading the file's content
+     */
+    public static String getETag(final Path file, final FileMetadata metadata) throws IOException {
+
+        Path key = file.toAbsolutePath();
+
+        Validator validator = validators.get(key);
+        Validator created = null;
+
+        // A pending validator is published before the digest is computed, so concurrent requests
+        // for the same new version wait for a single digest instead of computing their own
+        while (validator == null || !validator.matches(metadata)) {
+            if (created == null) {
+                if (validators.size() >= MAX_ENTRIES) {
+                    validators.clear();
+                }
+                created = new Validator(metadata, new CompletableFuture<String>());
+            }
+            boolean published = validator == null
+                ? validators.putIfAbsent(key, created) == null
+                : validators.replace(key, validator, created);
+            validator = published ? created : validators.get(key);
+        }
+
+        if (validator == created) {
+            try {
+                created.etag.complete(digest(key));
+            } catch (IOException | RuntimeException ex) {
+                // Later requests try again instead of getting the same failure
+                validators.remove(key, created);
+                created.etag.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+
+        try {
+            return validator.etag.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the entity tag of " + key, ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("The entity tag of " + key + " could not be computed", ex.getCause());
+        }
+    }
+
+    /**
+     * Removes the cached entity tag of a file
+     *
+     * @param file The file whose entity tag is outdated
+     */
+    public static void invalidate(final Path file) {
+        validators.remove(file.toAbsolutePath());
+    }
+
+    /**
+     * Computes the digest of a file's content
+     *
+     * @param file The file to digest
+     * @return The digest's first bytes, hex encoded
+     * @throws IOException An I/O Error happened while reading the file
+     */
+    private static String digest(final Path file) throws IOException {
+
+        MessageDigest digest = createDigest();
+
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        return toETag(digest.digest());
+    }
+
+    /**
+     * Computes an entity tag for generated content the same way as for files
+     *
+     * @param data The content to digest
+     * @return The digest's first bytes, hex encoded
+     * @throws IOException Thrown if the digest algorithm is not available
+     */
+    static String digest(final byte[] data) throws IOException {
+        return toETag(createDigest().digest(data));
+    }
+
+    /**
+     * Creates a digest with the algorithm used for entity tags
+     *
+     * @return The digest
+     * @throws IOException Thrown if the digest algorithm is not available
+     */
+    private static MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("Digest algorithm not available: " + DIGEST_ALGORITHM, ex);
+        }
+    }
+
+    /**
+     * Encodes the first bytes of a digest as entity tag
+     *
+     * @param hash The digest
+     * @return The hex encoded entity tag
+     */
+    private static String toETag(final byte[] hash) {
+        char[] etag = new char[2 * ETAG_BYTES];
+        for (int i = 0; i < ETAG_BYTES; i++) {
+            etag[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            etag[2 * i + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+        return new String(etag);
+    }
+}
@@ -0,0 +1,448 @@
+package com.hendrik.http.resource;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A cache for the content of small files, bounded by the total number of bytes it holds.
+ * It follows the W-TinyLFU policy (https://arxiv.org/abs/1512.00727): new files enter a small LRU window.
+ * Files leaving the window are only admitted to the main cache if they were accessed more often than the
+ * files they would replace, so large files that are downloaded once do not flush the frequently used ones.
+ * The main cache is a segmented LRU with a probation and a protected segment.
+ *
+ * Cached files are invalidated by the {@link FileWatcher}, so the cache is only enabled while the
+ * server's root directory is watched.
+ *
+ * @author Hendrik Tjabben
+ */
+public class FileCache implements FileCacheMXBean, FileWatcher.Listener {
+
+    /**
+     * The largest file that is cached. Larger files are sent straight from the file system
+     */
+    public static final int MAX_ENTRY_SIZE = 1024 * 1024;
+
+    /**
+     * The share of the capacity that is used for the admission window
+     */
+    private static final double WINDOW_SHARE = 0.01;
+
+    /**
+     * The share of the main cache's capacity that is used for the protected segment
+     */
+    private static final double PROTECTED_SHARE = 0.8;
+
+    /**
+     * The expected average size of a cached file. Used to size the frequency sketch
+     */
+    private static final int AVERAGE_ENTRY_SIZE = 8 * 1024;
+
+    /**
+     * The enabled cache. null if caching is disabled
+     */
+    private static volatile FileCache instance = null;
+
+    /**
+     * The maximum number of bytes the cache holds
+     */
+    private final long capacity;
+
+    /**
+     * The maximum number of bytes the window holds
+     */
+    private final long windowCapacity;
+
+    /**
+     * The maximum number of bytes the protected segment holds
+     */
+    private final long protectedCapacity;
+
+    /**
+     * The largest file that is cached
+     */
+    private final long maxEntrySize;
+
+    /**
+     * Recently added files in LRU order
+     */
+    private final LinkedHashMap<Path, byte[]> window;
+
+    /**
+     * Files of the main cache that were accessed once since their admission, in LRU order
+     */
+    private final LinkedHashMap<Path, byte[]> probation;
+
+    /**
+     * Files of the main cache that were accessed repeatedly, in LRU order
+     */
+    private final LinkedHashMap<Path, byte[]> protectedSegment;
+
+    /**
+     * The number of bytes held by the window
+     */
+    private long windowSize;
+
+    /**
+     * The number of bytes held by the probation segment
+     */
+    private long probationSize;
+
+    /**
+     * The number of bytes held by the protected segment
+     */
+    private long protectedSize;
+
+    /**
+     * Estimates how often files were accessed recently
+     */
+    private final FrequencySketch sketch;
+
+    /**
+     * The number of cache hits
+     */
+    private long hitCount;
+
+    /**
+     * The number of cache misses
+     */
+    private long missCount;
+
+    /**
+     * The number of evicted files
+     */
+    private long evictionCount;
+
+    /**
+     * The number of files that were not admitted to the main cache
+     */
+    private long rejectedCount;
+
+    /**
+     * The number of invalidations. Also used to detect files that changed while they were loaded
+     */
+    private long invalidationCount;
+
+    /**
+     * Enables caching. The cache registers itself as listener of the {@link FileWatcher} and exposes its statistics over JMX
+     *
+     * @param capacity The maximum number of bytes the cache holds
+     */
+    public static synchronized void enable(final long capacity) {
+
+        if (instance != null) {
+            FileWatcher.removeListener(instance);
+        }
+
+        FileCache cache = new FileCache(capacity);
+        FileWatcher.addListener(cache);
+        instance = cache;
+
+        try {
+            ObjectName name = new ObjectName("com.hendrik.http:type=FileCache");
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+            ManagementFactory.getPlatformMBeanServer().registerMBean(cache, name);
+        } catch (JMException ex) {
+            System.out.println("File cache statistics cannot be exposed over JMX: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Getter for the enabled cache
+     *
+     * @return The cache. null if caching is disabled
+     */
+    public static FileCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Constructor for a new file cache
+     *
+     * @param capacity The maximum number of bytes the cache holds
+     */
+    public FileCache(final long capacity) {
+        this.capacity = capacity;
+        this.windowCapacity = Math.max(1, (long) (capacity * WINDOW_SHARE));
+        this.protectedCapacity = (long) ((capacity - this.windowCapacity) * PROTECTED_SHARE);
+        this.maxEntrySize = Math.min(MAX_ENTRY_SIZE, capacity / 8);
+        this.window = new LinkedHashMap<Path, byte[]>(16, 0.75f, true);
+        this.probation = new LinkedHashMap<Path, byte[]>(16, 0.75f, true);
+        this.protectedSegment = new LinkedHashMap<Path, byte[]>(16, 0.75f, true);
+        this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, capacity / AVERAGE_ENTRY_SIZE));
+    }
+
+    /**
+     * Getter for the size of the largest file that is cached
+     *
+     * @return The maximum entry size in bytes
+     */
+    public long getMaxEntrySize() {
+        return this.maxEntrySize;
+    }
+
+    /**
+     * Gets a file's cached content and records the access
+     *
+     * @param path The file's absolute, normalized path
+     * @return The file's content. null if the file is not cached
+     */
+    public synchronized byte[] get(final Path path) {
+
+        this.sketch.increment(path);
+
+        byte[] data = this.window.get(path);
+
+        if (data == null) {
+            data = this.protectedSegment.get(path);
+        }
+
+        if (data == null) {
+            data = this.probation.remove(path);
+            if (data != null) {
+                // A second access promotes the file to the protected segment
+                this.probationSize -= data.length;
+                this.protectedSegment.put(path, data);
+                this.protectedSize += data.length;
+                demoteProtected();
+            }
+        }
+
+        if (data == null) {
+            this.missCount++;
+        } else {
+            this.hitCount++;
+        }
+
+        return data;
+    }
+
+    /**
+     * Marks the beginning of loading a file that was not cached.
+     * The returned stamp has to be passed to {@link #put(Path, byte[], long)}
+     *
+     * @return A stamp to detect changes while the file is loaded
+     */
+    public synchronized long beginLoad() {
+        return this.invalidationCount;
+    }
+
+    /**
+     * Adds a loaded file to the cache's window.
+     * Files that are too large or were possibly changed while they were loaded are not added
+     *
+     * @param path The file's absolute, normalized path
+     * @param data The file's content
+     * @param stamp The stamp returned by {@link #beginLoad()} before the file was read
+     */
+    public synchronized void put(final Path path, final byte[] data, final long stamp) {
+
+        if (stamp != this.invalidationCount || data.length > this.maxEntrySize || contains(path)) {
+            return;
+        }
+
+        this.window.put(path, data);
+        this.windowSize += data.length;
+
+        while (this.windowSize > this.windowCapacity) {
+            Map.Entry<Path, byte[]> candidate = this.window.entrySet().iterator().next();
+            this.window.remove(candidate.getKey());
+            this.windowSize -= candidate.getValue().length;
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    /**
+     * Moves a file from the window to the main cache if it is accessed more often than the files it would replace
+     *
+     * @param path The file's path
+     * @param data The file's content
+     */
+    private void admit(final Path path, final byte[] data) {
+
+        long mainCapacity = this.capacity - this.windowCapacity;
+        long required = this.probationSize + this.protectedSize + data.length - mainCapacity;
+
+        if (required > 0) {
+            int candidateFrequency = this.sketch.frequency(path);
+            List<Path> victims = new ArrayList<Path>();
+
+            // Victims are taken from the probation segment first, then from the protected one
+            for (Map<Path, byte[]> segment : Arrays.asList(this.probation, this.protectedSegment)) {
+                Iterator<Map.Entry<Path, byte[]>> iterator = segment.entrySet().iterator();
+                while (required > 0 && iterator.hasNext()) {
+                    Map.Entry<Path, byte[]> victim = iterator.next();
+                    if (this.sketch.frequency(victim.getKey()) >= candidateFrequency) {
+                        this.rejectedCount++;
+                        this.evictionCount++;
+                        return;
+                    }
+                    victims.add(victim.getKey());
+                    required -= victim.getValue().length;
+                }
+            }
+
+            if (required > 0) {
+                this.rejectedCount++;
+                this.evictionCount++;
+                return;
+            }
+
+            for (Path victim : victims) {
+                remove(victim);
+                this.evictionCount++;
+            }
+        }
+
+        this.probation.put(path, data);
+        this.probationSize += data.length;
+    }
+
+    /**
+     * Moves the least recently used files of the protected segment back to probation while the segment is too large
+     */
+    private void demoteProtected() {
+        while (this.protectedSize > this.protectedCapacity) {
+            Map.Entry<Path, byte[]> eldest = this.protectedSegment.entrySet().iterator().next();
+            this.protectedSegment.remove(eldest.getKey());
+            this.protectedSize -= eldest.getValue().length;
+            this.probation.put(eldest.getKey(), eldest.getValue());
+            this.probationSize += eldest.getValue().length;
+        }
+    }
+
+    /**
+     * Checks whether a file is cached without recording an access
+     *
+     * @param path The file's path
+     * @return True if the file is cached
+     */
+    private boolean contains(final Path path) {
+        return this.window.containsKey(path) || this.probation.containsKey(path) || this.protectedSegment.containsKey(path);
+    }
+
+    /**
+     * Removes a file from the cache
+     *
+     * @param path The file's path
+     * @return True if the file was cached
+     */
+    private boolean remove(final Path path) {
+        byte[] data = this.window.remove(path);
+        if (data != null) {
+            this.windowSize -= data.length;
+            return true;
+        }
+        data = this.probation.remove(path);
+        if (data != null) {
+            this.probationSize -= data.length;
+            return true;
+        }
+        data = this.protectedSegment.remove(path);
+        if (data != null) {
+            this.protectedSize -= data.length;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes a file from the cache because it changed.
+     * If the path is not cached itself, it may be a directory, so all files below it are removed
+     *
+     * @param path The absolute, normalized path of the changed file or directory
+     */
+    public synchronized void invalidate(final Path path) {
+
+        this.invalidationCount++;
+
+        if (remove(path)) {
+            return;
+        }
+
+        List<Path> contained = new ArrayList<Path>();
+        for (Map<Path, byte[]> segment : Arrays.asList(this.window, this.probation, this.protectedSegment)) {
+            for (Path cached : segment.keySet()) {
+                if (cached.startsWith(path)) {
+                    contained.add(cached);
+                }
+            }
+        }
+        for (Path cached : contained) {
+            remove(cached);
+        }
+    }
+
+    /**
+     * Removes all files from the cache
+     */
+    public synchronized void clear() {
+        this.invalidationCount++;
+        this.window.clear();
+        this.probation.clear();
+        this.protectedSegment.clear();
+        this.windowSize = 0;
+        this.probationSize = 0;
+        this.protectedSize = 0;
+    }
+
+    @Override
+    public void pathChanged(final Path path) {
+        invalidate(path);
+    }
+
+    @Override
+    public void overflow() {
+        clear();
+    }
+
+    @Override
+    public long getCapacity() {
+        return this.capacity;
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return this.windowSize + this.probationSize + this.protectedSize;
+    }
+
+    @Override
+    public synchronized int getEntryCount() {
+        return this.window.size() + this.probation.size() + this.protectedSegment.size();
+    }
+
+    @Override
+    public synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    @Override
+    public synchronized long getMissCount() {
+        return this.missCount;
+    }
+
+    @Override
+    public synchronized long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    @Override
+    public synchronized long getRejectedCount() {
+        return this.rejectedCount;
+    }
+
+    @Override
+    public synchronized long getInvalidationCount() {
+        return this.invalidationCount;
+    }
+}
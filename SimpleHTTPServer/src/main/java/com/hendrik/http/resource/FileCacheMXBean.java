@@ -0,0 +1,67 @@
+package com.hendrik.http.resource;
+
+/**
+ * Management interface of the {@link FileCache}.
+ * Exposes the cache's effectiveness over JMX, so its capacity can be planned
+ *
+ * @author Hendrik Tjabben
+ */
+public interface FileCacheMXBean {
+
+    /**
+     * Getter for the maximum number of bytes the cache holds
+     *
+     * @return The cache's capacity in bytes
+     */
+    long getCapacity();
+
+    /**
+     * Getter for the number of bytes the cache currently holds
+     *
+     * @return The size of all cached files in bytes
+     */
+    long getSize();
+
+    /**
+     * Getter for the number of cached files
+     *
+     * @return The number of entries
+     */
+    int getEntryCount();
+
+    /**
+     * Getter for the number of requests that were served from the cache
+     *
+     * @return The number of cache hits
+     */
+    long getHitCount();
+
+    /**
+     * Getter for the number of requests for cacheable files that were not cached
+     *
+     * @return The number of cache misses
+     */
+    long getMissCount();
+
+    /**
+     * Getter for the number of files that were dropped to make room for others
+     *
+     * @return The number of evictions
+     */
+    long getEvictionCount();
+
+    /**
+     * Getter for the number of files that were not admitted to the main cache,
+     * because they were accessed less often than the files they would have replaced
+     *
+     * @return The number of rejected admissions
+     */
+    long getRejectedCount();
+
+    /**
+     * Getter for the number of change notifications that invalidated cached files
+     *
+     * @return The number of invalidations
+     */
+    long getInvalidationCount();
+}
@@ -0,0 +1,166 @@
+package com.hendrik.http.resource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * An immutable snapshot of a file's metadata, taken with a single stat of the file system.
+ * Resources answer all questions about their file from one snapshot, see {@link FileMetadataCache}
+ *
+ * @author Hendrik Tjabben
+ */
+public class FileMetadata {
+
+    /**
+     * The metadata of a file that does not exist
+     */
+    public static final FileMetadata MISSING = new FileMetadata(false, false, 0, 0, null, null, 0);
+
+    /**
+     * Whether the file exists
+     */
+    private final boolean exists;
+
+    /**
+     * Whether the file is a directory
+     */
+    private final boolean directory;
+
+    /**
+     * The file's size in bytes
+     */
+    private final long length;
+
+    /**
+     * The file's modification time in milliseconds
+     */
+    private final long lastModified;
+
+    /**
+     * The file's key (the inode on unix systems). null if the file system does not provide keys
+     */
+    private final Object fileKey;
+
+    /**
+     * The file's content type including its encoding. null for directories and missing files
+     */
+    private final String contentType;
+
+    /**
+     * The value of {@link System#nanoTime()} when the metadata was read
+     */
+    private final long readTime;
+
+    /**
+     * Constructor for a new snapshot
+     *
+     * @param exists Whether the file exists
+     * @param directory Whether the file is a directory
+     * @param length The file's size in bytes
+     * @param lastModified The file's modification time in milliseconds
+     * @param fileKey The file's key
+     * @param contentType The file's content type
+     * @param readTime The value of {@link System#nanoTime()} when the metadata was read
+     */
+    private FileMetadata(final boolean exists, final boolean directory, final long length, final long lastModified,
+        final Object fileKey, final String contentType, final long readTime) {
+        this.exists = exists;
+        this.directory = directory;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.fileKey = fileKey;
+        this.contentType = contentType;
+        this.readTime = readTime;
+    }
+
+    /**
+     * Reads a file's metadata from the file system
+     *
+     * @param path The file to read the metadata of
+     * @return The file's current metadata. If the file does not exist or cannot be accessed, the metadata of a missing file
+     */
+    public static FileMetadata read(final Path path) {
+
+        long readTime = System.nanoTime();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException ex) {
+            return new FileMetadata(false, false, 0, 0, null, null, readTime);
+        }
+
+        String contentType = null;
+        if (!attributes.isDirectory()) {
+            Path fileName = path.getFileName();
+            contentType = MimeTypes.getContentType(fileName == null ? "" : fileName.toString());
+        }
+
+        return new FileMetadata(true, attributes.isDirectory(), attributes.size(), attributes.lastModifiedTime().toMillis(),
+            attributes.fileKey(), contentType, readTime);
+    }
+
+    /**
+     * Queries whether the file exists
+     *
+     * @return True if the file existed when the metadata was read
+     */
+    public boolean exists() {
+        return this.exists;
+    }
+
+    /**
+     * Queries whether the file is a directory
+     *
+     * @return True if the file is a directory
+     */
+    public boolean isDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Getter for the file's size
+     *
+     * @return The file's size in bytes
+     */
+    public long getLength() {
+        return this.length;
+    }
+
+    /**
+     * Getter for the file's modification time
+     *
+     * @return The file's modification time in milliseconds since the epoch
+     */
+    public long getLastModified() {
+        return this.lastModified;
+    }
+
+    /**
+     * Getter for the file's key
+     *
+     * @return The file's key. null if the file system does not provide keys
+     */
+    public Object getFileKey() {
+        return this.fileKey;
+    }
+
+    /**
+     * Getter for the file's content type
+     *
+     * @return The content type including its encoding. null for directories and missing files
+     */
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    /**
+     * Getter for the time the metadata was read
+     *
+     * @return The value of {@link System#nanoTime()} when the metadata was read
+     */
+    public long getReadTime() {
+        return this.readTime;
+    }
+}
@@ -0,0 +1,118 @@
+package com.hendrik.http.resource;
+
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache for the metadata of files, so serving a request stats its file at most once.
+ * While the {@link FileWatcher} is running, cached metadata stays valid until the watcher reports a change of the file.
+ * Without a watcher, metadata is only reused for a short time.
+ *
+ * @author Hendrik Tjabben
+ */
+public class FileMetadataCache implements FileWatcher.Listener {
+
+    /**
+     * The time metadata is reused when changes cannot be noticed by the file watcher
+     */
+    private static final long TIME_TO_LIVE = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The maximum number of files whose metadata is cached. When it is reached, the cache starts over
+     */
+    private static final int MAX_ENTRIES = 100000;
+
+    /**
+     * The cached metadata by the files' absolute, normalized paths
+     */
+    private static ConcurrentMap<Path, FileMetadata> entries = new ConcurrentHashMap<Path, FileMetadata>();
+
+    /**
+     * The number of invalidations. Used to detect files that changed while their metadata was read
+     */
+    private static AtomicLong invalidationCount = new AtomicLong();
+
+    static {
+        FileWatcher.addListener(new FileMetadataCache());
+    }
+
+    /**
+     * Constructor for the listener that invalidates the cache
+     */
+    private FileMetadataCache() {
+    }
+
+    /**
+     * Gets a file's metadata.
+     * The file system is only asked if the metadata is not cached or may be outdated
+     *
+     * @param file The file to get the metadata of
+     * @return The file's metadata
+     */
+    public static FileMetadata get(final Path file) {
+
+        Path key = file.toAbsolutePath().normalize();
+
+        FileMetadata metadata = entries.get(key);
+        if (metadata != null && (FileWatcher.isWatching() || System.nanoTime() - metadata.getReadTime() < TIME_TO_LIVE)) {
+            return metadata;
+        }
+
+        if (entries.size() >= MAX_ENTRIES) {
+            entries.clear();
+        }
+
+        long stamp = invalidationCount.get();
+        metadata = FileMetadata.read(key);
+        entries.put(key, metadata);
+
+        // The file changed while it was read, so the metadata may be outdated already
+        if (stamp != invalidationCount.get()) {
+            entries.remove(key, metadata);
+        }
+
+        return metadata;
+    }
+
+    /**
+     * Removes the metadata of a changed file, of its parent directory whose modification time changed with it,
+     * and, if the file is a directory, of all files below it
+     *
+     * @param file The changed file or directory
+     */
+    public static void invalidate(final Path file) {
+
+        Path key = file.toAbsolutePath().normalize();
+        invalidationCount.incrementAndGet();
+
+        FileMetadata removed = entries.remove(key);
+        if (key.getParent() != null) {
+            entries.remove(key.getParent());
+        }
+
+        if (removed == null || removed.isDirectory()) {
+            entries.keySet().removeIf(path -> path.startsWith(key));
+        }
+    }
+
+    /**
+     * Removes the metadata of all files
+     */
+    public static void clear() {
+        invalidationCount.incrementAndGet();
+        entries.clear();
+    }
+
+    @Override
+    public void pathChanged(final Path path) {
+        invalidate(path);
+    }
+
+    @Override
+    public void overflow() {
+        clear();
+    }
+}
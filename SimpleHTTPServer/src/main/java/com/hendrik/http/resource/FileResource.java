@@ -4,10 +4,17 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.apache.commons.io.IOUtils;
 
+import com.hendrik.http.BufferBody;
+import com.hendrik.http.Compression;
+import com.hendrik.http.FileRegionBody;
+import com.hendrik.http.ResponseBody;
+
 /**
  * A class for resources that are files
  * 
@@ -24,6 +31,16 @@ public class FileResource extends Resource {
         super(handle);
     }
 
+    /**
+     * Constructor for File Resource whose metadata was looked up already
+     * 
+     * @param handle the file handle managed by this resource
+     * @param metadata The file's metadata
+     */
+    protected FileResource(final File handle, final FileMetadata metadata) {
+        super(handle, metadata);
+    }
+
     /**
      * Getter for the File Resource's data.
      * 
@@ -36,33 +53,200 @@ public class FileResource extends Resource {
             return "".getBytes();
         }
 
+        byte[] cachedData = getCachedData();
+        if (cachedData != null) {
+            return cachedData;
+        }
+
 		InputStream in = new FileInputStream(this.handle);
         return IOUtils.toByteArray(in);
 
     }
 
     /**
-     * Get the File Resources content type
+     * Getter for the File Resource's body.
+     * Small files are served from the {@link FileCache}, larger ones from the {@link DirectFileCache} if it is enabled.
+     * Others are not read into memory but sent straight from the file system
      * 
-     * @return The content type. If the content type cannot be determined, text/plain is used 
+     * @throws IOException An I/O Error happened while getting the file's data
      */
     @Override
-    public String getContentType() {
+    public ResponseBody getBody() throws IOException {
+
+        if (!this.exists()) {
+            return super.getBody();
+        }
+
+        byte[] cachedData = getCachedData();
+        if (cachedData != null) {
+            return new BufferBody(cachedData);
+        }
+
+        ResponseBody directBody = getDirectBody(0, getMetadata().getLength());
+        if (directBody != null) {
+            return directBody;
+        }
+
+        return new FileRegionBody(this.handle.toPath(), 0, getMetadata().getLength());
+    }
+
+    /**
+     * Getter for a range of the File Resource's body.
+     * Only the range is sent, read from its position in the file or taken from one of the caches
+     * 
+     * @throws IOException An I/O Error happened while getting the file's data
+     */
+    @Override
+    public ResponseBody getBody(final long position, final long count) throws IOException {
+
+        byte[] cachedData = getCachedData();
+        if (cachedData != null && position + count <= cachedData.length) {
+            return new BufferBody(ByteBuffer.wrap(cachedData, (int) position, (int) count).slice());
+        }
+
+        ResponseBody directBody = getDirectBody(position, count);
+        if (directBody != null) {
+            return directBody;
+        }
+
+        return new FileRegionBody(this.handle.toPath(), position, count);
+    }
+
+    /**
+     * Getter for a compressed variant of the file.
+     * A gzip file next to the original, e.g. index.html.gz, is sent if it is not older than the original.
+     * Otherwise the variant is taken from the {@link CompressedVariantCache} if it is enabled
+     * 
+     * @throws IOException An I/O Error happened while opening the variant
+     */
+    @Override
+    public ResponseBody getEncodedBody(final String coding) throws IOException {
 
         if (!this.exists()) {
             return null;
         }
 
-        try {
-            String contentType = Files.probeContentType(this.handle.toPath());
-            if (contentType == "" || contentType == null) {
-                contentType = "text/plain";
+        Path path = this.handle.toPath().toAbsolutePath().normalize();
+
+        if (Compression.GZIP.equals(coding)) {
+            Path sidecar = path.resolveSibling(path.getFileName() + ".gz");
+            FileMetadata sidecarMetadata = FileMetadataCache.get(sidecar);
+            if (sidecarMetadata.exists() && !sidecarMetadata.isDirectory()
+                && sidecarMetadata.getLastModified() >= getMetadata().getLastModified()) {
+                ResponseBody sidecarBody = CompressedVariantCache.open(sidecar);
+                if (sidecarBody != null) {
+                    return sidecarBody;
+                }
             }
-            return contentType + "; charset=utf-8";
-        } catch (IOException e) {
-            System.out.println("Content type could not be determined. Handling as plain text");
-            return "text/plain; charset=utf-8";
         }
+
+        CompressedVariantCache cache = CompressedVariantCache.getInstance();
+        if (cache == null) {
+            return null;
+        }
+
+        return cache.getBody(path, getMetadata(), coding);
+    }
+
+    /**
+     * Gets a region of the file from the {@link DirectFileCache}
+     * 
+     * @param position The index of the region's first byte
+     * @param count The number of bytes in the region
+     * @return A body sending the region from off-heap memory. null if the tier is disabled or the file is not cached
+     * @throws IOException An I/O Error happened while reading the file
+     */
+    private ResponseBody getDirectBody(final long position, final long count) throws IOException {
+
+        DirectFileCache cache = DirectFileCache.getInstance();
+        long length = getMetadata().getLength();
+
+        if (cache == null || !cache.accepts(length)) {
+            return null;
+        }
+
+        return cache.getBody(this.handle.toPath().toAbsolutePath().normalize(), length, position, count);
+    }
+
+    /**
+     * Gets the file's content from the {@link FileCache}.
+     * Files that are small enough to be cached but are not cached yet are read and offered to the cache
+     * 
+     * @return The file's content. null if caching is disabled or the file is too large to be cached
+     * @throws IOException An I/O Error happened while reading the file
+     */
+    private byte[] getCachedData() throws IOException {
+
+        FileCache cache = FileCache.getInstance();
+
+        if (cache == null || getMetadata().getLength() > cache.getMaxEntrySize()) {
+            return null;
+        }
+
+        Path path = this.handle.toPath().toAbsolutePath().normalize();
+
+        byte[] data = cache.get(path);
+        if (data != null) {
+            return data;
+        }
+
+        long stamp = cache.beginLoad();
+        data = Files.readAllBytes(path);
+        cache.put(path, data, stamp);
+
+        return data;
+    }
+
+    /**
+     * Getter for the File Resource's length
+     * 
+     * @return The file's size in bytes
+     */
+    @Override
+    public long getLength() {
+        return getMetadata().getLength();
+    }
+
+    /**
+     * Files can be requested in ranges
+     * 
+     * @return True if the file exists
+     */
+    @Override
+    public boolean supportsRanges() {
+        return this.exists();
+    }
+
+    /**
+     * Getter for the File Resource's entity tag.
+     * The entity tag is cached per version of the file, so the file is only read when it changed
+     * 
+     * @throws IOException An I/O Error happened while reading the file
+     */
+    @Override
+    public String getETag() throws IOException {
+
+        if (!this.exists()) {
+            return super.getETag();
+        }
+
+        return ETagCache.getETag(this.handle.toPath(), getMetadata());
+    }
+
+    /**
+     * Get the File Resources content type.
+     * The content type is determined by the file's extension, see {@link MimeTypes}
+     * 
+     * @return The content type. If the content type cannot be determined, text/plain is used 
+     */
+    @Override
+    public String getContentType() {
+
+        if (!this.exists()) {
+            return null;
+        }
+
+        return getMetadata().getContentType();
     }
     
 }
@@ -0,0 +1,207 @@
+package com.hendrik.http.resource;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches the server's root directory and all of its subdirectories for changes with a {@link WatchService}.
+ * Caches register as listeners to drop entries that became outdated.
+ * There is at most one watcher per server, it is started with {@link #watch(Path)}.
+ *
+ * @author Hendrik Tjabben
+ */
+public class FileWatcher extends Thread {
+
+    /**
+     * A listener that is notified about changes below the watched directory
+     */
+    public interface Listener {
+
+        /**
+         * Called when a file or directory was created, modified or deleted
+         *
+         * @param path The absolute path of the changed file or directory
+         */
+        void pathChanged(Path path);
+
+        /**
+         * Called when a file or directory was added to or removed from a directory.
+         * Listeners that only depend on the names of a directory's children can ignore all other changes
+         *
+         * @param directory The absolute path of the directory whose children changed
+         */
+        default void childrenChanged(final Path directory) {
+        }
+
+        /**
+         * Called when change events were lost, so any file may have changed
+         */
+        void overflow();
+    }
+
+    /**
+     * The listeners that are notified about changes
+     */
+    private static List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    /**
+     * The running watcher. null if no directory is watched
+     */
+    private static volatile FileWatcher instance = null;
+
+    /**
+     * The watch service all directories are registered with
+     */
+    private final WatchService watchService;
+
+    /**
+     * The watched directories by their watch keys
+     */
+    private final Map<WatchKey, Path> directories;
+
+    /**
+     * Starts watching a directory tree. Does nothing if a directory is watched already
+     *
+     * @param root The root of the directory tree to watch
+     * @throws IOException Thrown if the directory tree cannot be registered with a watch service
+     */
+    public static synchronized void watch(final Path root) throws IOException {
+        if (instance != null) {
+            return;
+        }
+        instance = new FileWatcher(root.toAbsolutePath().normalize());
+        instance.start();
+
+        // Changes before the watcher was started were not reported, so nothing cached so far can be trusted
+        for (Listener listener : listeners) {
+            listener.overflow();
+        }
+    }
+
+    /**
+     * Queries whether a directory tree is watched, so listeners will be notified about changes
+     *
+     * @return True if a watcher is running, false otherwise
+     */
+    public static boolean isWatching() {
+        return instance != null;
+    }
+
+    /**
+     * Adds a listener that is notified about all following changes
+     *
+     * @param listener The listener to add
+     */
+    public static void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener, so it is not notified anymore
+     *
+     * @param listener The listener to remove
+     */
+    public static void removeListener(final Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Constructor for a new file watcher. Registers all directories of the tree
+     *
+     * @param root The absolute root of the directory tree to watch
+     * @throws IOException Thrown if the directory tree cannot be registered with a watch service
+     */
+    private FileWatcher(final Path root) throws IOException {
+        super("FileWatcher");
+        setDaemon(true);
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.directories = new ConcurrentHashMap<WatchKey, Path>();
+        registerTree(root);
+    }
+
+    /**
+     * Registers a directory and all of its subdirectories with the watch service
+     *
+     * @param start The directory to register
+     * @throws IOException Thrown if the directory cannot be registered
+     */
+    private void registerTree(final Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attributes) throws IOException {
+                WatchKey key = dir.register(FileWatcher.this.watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                FileWatcher.this.directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException ex) {
+                System.out.println("Cannot watch " + file + " for changes: " + ex.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+
+        while (true) {
+            WatchKey key;
+            try {
+                key = this.watchService.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+
+            Path directory = this.directories.get(key);
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                    for (Listener listener : listeners) {
+                        listener.overflow();
+                    }
+                    continue;
+                }
+
+                Path child = directory.resolve((Path) event.context());
+
+                // New subdirectories have to be watched as well
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        registerTree(child);
+                    } catch (IOException ex) {
+                        System.out.println("Cannot watch " + child + " for changes: " + ex.getMessage());
+                    }
+                }
+
+                boolean childrenChanged = event.kind() != StandardWatchEventKinds.ENTRY_MODIFY;
+                for (Listener listener : listeners) {
+                    listener.pathChanged(child);
+                    if (childrenChanged) {
+                        listener.childrenChanged(directory);
+                    }
+                }
+            }
+
+            if (!key.reset()) {
+                this.directories.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.hendrik.http.resource;
+
+/**
+ * A count-min sketch that estimates how often keys were accessed recently.
+ * Every key is counted in four rows of small saturating counters, its estimate is the minimum of them.
+ * Once enough accesses were recorded, all counters are halved, so the sketch forgets old popularity.
+ * This is the frequency filter of the W-TinyLFU admission policy, see https://arxiv.org/abs/1512.00727
+ *
+ * @author Hendrik Tjabben
+ */
+public class FrequencySketch {
+
+    /**
+     * The number of rows every key is counted in
+     */
+    private static final int DEPTH = 4;
+
+    /**
+     * The highest value a counter can reach
+     */
+    private static final int MAX_COUNT = 15;
+
+    /**
+     * Seeds used to derive a different index for every row
+     */
+    private static final int[] SEEDS = { 0x97CB3127, 0xB2B6B1C5, 0x5B1D8F17, 0x3A8F05C5 };
+
+    /**
+     * The counters of all rows, one row after the other
+     */
+    private final byte[] counters;
+
+    /**
+     * The number of counters per row
+     */
+    private final int width;
+
+    /**
+     * The number of recorded accesses after which all counters are halved
+     */
+    private final int sampleSize;
+
+    /**
+     * The number of accesses recorded since the counters were halved last
+     */
+    private int additions;
+
+    /**
+     * Constructor for a new frequency sketch
+     *
+     * @param expectedKeys The number of keys the sketch should be able to tell apart
+     */
+    public FrequencySketch(final int expectedKeys) {
+        this.width = Integer.highestOneBit(Math.max(16, expectedKeys - 1)) << 1;
+        this.counters = new byte[DEPTH * this.width];
+        this.sampleSize = 10 * this.width;
+        this.additions = 0;
+    }
+
+    /**
+     * Estimates how often a key was accessed recently
+     *
+     * @param key The key to look up
+     * @return The estimated access count, at most 15
+     */
+    public int frequency(final Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, this.counters[indexOf(hash, row)]);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access to a key
+     *
+     * @param key The accessed key
+     */
+    public void increment(final Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = indexOf(hash, row);
+            if (this.counters[index] < MAX_COUNT) {
+                this.counters[index]++;
+                added = true;
+            }
+        }
+
+        if (added && ++this.additions >= this.sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Halves all counters, so recent accesses outweigh older ones
+     */
+    private void reset() {
+        for (int i = 0; i < this.counters.length; i++) {
+            this.counters[i] = (byte) (this.counters[i] >>> 1);
+        }
+        this.additions /= 2;
+    }
+
+    /**
+     * Gets the index of a key's counter in a row
+     *
+     * @param hash The key's spread hash code
+     * @param row The row
+     * @return The index of the counter in {@link #counters}
+     */
+    private int indexOf(final int hash, final int row) {
+        int rowHash = (hash + SEEDS[row]) * SEEDS[row];
+        rowHash ^= rowHash >>> 16;
+        return row * this.width + (rowHash & (this.width - 1));
+    }
+
+    /**
+     * Improves the distribution of a hash code's bits
+     *
+     * @param hashCode The hash code
+     * @return The spread hash code
+     */
+    private static int spread(final int hashCode) {
+        int hash = hashCode * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,236 @@
+package com.hendrik.http.resource;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * The page and sort order of a directory listing, as requested in the query of a directory's URI.
+ * Supported parameters are limit (the page size), offset (the number of entries to skip),
+ * sort (name, size or mtime) and order (asc or desc)
+ *
+ * @author Hendrik Tjabben
+ */
+public class ListingOptions {
+
+    /**
+     * The attribute a listing is sorted by
+     */
+    public enum SortKey {
+
+        /**
+         * Sorted by the entries' names
+         */
+        NAME,
+
+        /**
+         * Sorted by the entries' sizes, entries of the same size by name
+         */
+        SIZE,
+
+        /**
+         * Sorted by the entries' modification times, entries of the same time by name
+         */
+        MTIME
+    }
+
+    /**
+     * The maximum number of entries on the page. -1 if the page is not limited
+     */
+    private final int limit;
+
+    /**
+     * The number of entries before the page
+     */
+    private final int offset;
+
+    /**
+     * The attribute the listing is sorted by. null if the entries are listed in the order the file system returns them
+     */
+    private final SortKey sortKey;
+
+    /**
+     * Whether the listing is sorted in descending order
+     */
+    private final boolean descending;
+
+    /**
+     * Constructor for new listing options
+     *
+     * @param limit The maximum number of entries on the page. -1 if the page is not limited
+     * @param offset The number of entries before the page
+     * @param sortKey The attribute the listing is sorted by. null for the file system's order
+     * @param descending Whether the listing is sorted in descending order
+     */
+    public ListingOptions(final int limit, final int offset, final SortKey sortKey, final boolean descending) {
+        this.limit = limit;
+        this.offset = offset;
+        this.sortKey = sortKey;
+        this.descending = descending;
+    }
+
+    /**
+     * Parses the listing options of a URI's query. Unknown parameters and invalid values are ignored
+     *
+     * @param query The query without the leading question mark. May be null
+     * @return The requested options. null if the query does not contain any listing options
+     * @throws UnsupportedEncodingException This error is thrown when UTF-8 encoding is not supported
+     */
+    public static ListingOptions parse(final String query) throws UnsupportedEncodingException {
+
+        if (query == null || query.isEmpty()) {
+            return null;
+        }
+
+        boolean found = false;
+        int limit = -1;
+        int offset = 0;
+        SortKey sortKey = null;
+        boolean descending = false;
+
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator == -1) {
+                continue;
+            }
+
+            String name = parameter.substring(0, separator);
+            String value = URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8.name()).toLowerCase(Locale.ROOT);
+
+            switch (name) {
+                case "limit":
+                    limit = parseCount(value, limit);
+                    found = true;
+                    break;
+                case "offset":
+                    offset = Math.max(0, parseCount(value, 0));
+                    found = true;
+                    break;
+                case "sort":
+                    if (value.equals("name")) {
+                        sortKey = SortKey.NAME;
+                    } else if (value.equals("size")) {
+                        sortKey = SortKey.SIZE;
+                    } else if (value.equals("mtime")) {
+                        sortKey = SortKey.MTIME;
+                    }
+                    found = true;
+                    break;
+                case "order":
+                    descending = value.equals("desc");
+                    found = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return found ? new ListingOptions(limit, offset, sortKey, descending) : null;
+    }
+
+    /**
+     * Parses a non-negative count
+     *
+     * @param value The value to parse
+     * @param defaultValue The value to use if the value is not a non-negative number
+     * @return The count
+     */
+    private static int parseCount(final String value, final int defaultValue) {
+        try {
+            int count = Integer.parseInt(value);
+            return count < 0 ? defaultValue : count;
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Getter for the page size
+     *
+     * @return The maximum number of entries on the page. -1 if the page is not limited
+     */
+    public int getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Getter for the page's position
+     *
+     * @return The number of entries before the page
+     */
+    public int getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Getter for the sort key
+     *
+     * @return The attribute the listing is sorted by. null for the file system's order
+     */
+    public SortKey getSortKey() {
+        return this.sortKey;
+    }
+
+    /**
+     * Queries whether the listing is sorted in descending order
+     *
+     * @return True for descending order
+     */
+    public boolean isDescending() {
+        return this.descending;
+    }
+
+    /**
+     * Creates the comparator that puts listing entries into the requested order
+     *
+     * @return The comparator. null if the entries are not sorted
+     */
+    public Comparator<DirectoryEntry> getComparator() {
+
+        if (this.sortKey == null) {
+            return null;
+        }
+
+        Comparator<DirectoryEntry> byName = Comparator.comparing(DirectoryEntry::getName);
+        Comparator<DirectoryEntry> comparator;
+
+        switch (this.sortKey) {
+            case SIZE:
+                comparator = Comparator.comparingLong(DirectoryEntry::getSize).thenComparing(byName);
+                break;
+            case MTIME:
+                comparator = Comparator.comparingLong(DirectoryEntry::getLastModified).thenComparing(byName);
+                break;
+            default:
+                comparator = byName;
+                break;
+        }
+
+        return this.descending ? comparator.reversed() : comparator;
+    }
+
+    /**
+     * Creates the query that requests the page following this one
+     *
+     * @return The query without the leading question mark
+     */
+    public String getNextPageQuery() {
+
+        StringBuilder query = new StringBuilder()
+            .append("offset=")
+            .append(this.offset + Math.max(this.limit, 0))
+            .append("&limit=")
+            .append(this.limit);
+
+        if (this.sortKey != null) {
+            query.append("&sort=").append(this.sortKey.name().toLowerCase(Locale.ROOT));
+        }
+        if (this.descending) {
+            query.append("&order=desc");
+        }
+
+        return query.toString();
+    }
+}
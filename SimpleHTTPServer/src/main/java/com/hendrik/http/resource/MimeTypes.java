@@ -0,0 +1,83 @@
+package com.hendrik.http.resource;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps file extensions to content types.
+ * The table is built once, so determining a file's content type neither touches the file system
+ * nor builds new strings per request. The encoding is always set to utf-8, like for all other resources
+ *
+ * @author Hendrik Tjabben
+ */
+public class MimeTypes {
+
+    /**
+     * The content type of files whose extension is not known
+     */
+    public static final String DEFAULT_CONTENT_TYPE = "text/plain; charset=utf-8";
+
+    /**
+     * The content types including their encoding by lower case file extension
+     */
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<String, String>();
+
+    static {
+        add("text/html", "html", "htm");
+        add("text/plain", "txt", "text", "log");
+        add("text/css", "css");
+        add("text/csv", "csv");
+        add("text/markdown", "md");
+        add("text/javascript", "js", "mjs");
+        add("application/json", "json");
+        add("application/xml", "xml", "xsl");
+        add("application/pdf", "pdf");
+        add("application/zip", "zip");
+        add("application/gzip", "gz");
+        add("application/x-tar", "tar");
+        add("application/wasm", "wasm");
+        add("image/png", "png");
+        add("image/jpeg", "jpg", "jpeg");
+        add("image/gif", "gif");
+        add("image/svg+xml", "svg");
+        add("image/webp", "webp");
+        add("image/x-icon", "ico");
+        add("audio/mpeg", "mp3");
+        add("audio/ogg", "ogg");
+        add("video/mp4", "mp4");
+        add("video/webm", "webm");
+        add("font/woff", "woff");
+        add("font/woff2", "woff2");
+    }
+
+    /**
+     * Adds a content type to the table
+     *
+     * @param type The content type without encoding
+     * @param extensions The lower case extensions of files with this content type
+     */
+    private static void add(final String type, final String... extensions) {
+        String contentType = type + "; charset=utf-8";
+        for (String extension : extensions) {
+            CONTENT_TYPES.put(extension, contentType);
+        }
+    }
+
+    /**
+     * Gets the content type of a file by its extension
+     *
+     * @param fileName The file's name
+     * @return The content type including its encoding. If the extension is not known, text/plain is used
+     */
+    public static String getContentType(final String fileName) {
+
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0 || dot == fileName.length() - 1) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+
+        String contentType = CONTENT_TYPES.get(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+        return contentType == null ? DEFAULT_CONTENT_TYPE : contentType;
+    }
+}
@@ -0,0 +1,67 @@
+package com.hendrik.http.resource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.hendrik.http.ChunkedBody;
+
+/**
+ * Renders the text content of a generated resource step by step while it is sent.
+ * Each step appends a small part, e.g. a single entry of a list, to a bounded buffer. The buffer is handed
+ * to the {@link ChunkedBody} whenever it is full, so only about one chunk of the content is held in memory at a time.
+ *
+ * @author Hendrik Tjabben
+ */
+public abstract class Renderer implements ChunkedBody.Source {
+
+    /**
+     * The buffer the steps append to. Reused for all parts of the content
+     */
+    private final StringBuilder buffer;
+
+    /**
+     * Whether the last step was rendered
+     */
+    private boolean finished;
+
+    /**
+     * Constructor for a new renderer
+     */
+    protected Renderer() {
+        this.buffer = new StringBuilder(ChunkedBody.CHUNK_SIZE);
+        this.finished = false;
+    }
+
+    /**
+     * Renders the next step of the content
+     *
+     * @param out The buffer to append the step's text to
+     * @return False if the content is complete and nothing was appended, true otherwise
+     * @throws IOException Thrown if the content cannot be rendered
+     */
+    protected abstract boolean render(StringBuilder out) throws IOException;
+
+    /**
+     * Renders steps until the buffer holds about one chunk of content or the content is complete
+     *
+     * @return The rendered text as UTF-8 bytes. null if the content is complete
+     * @throws IOException Thrown if the content cannot be rendered
+     */
+    @Override
+    public byte[] next() throws IOException {
+
+        this.buffer.setLength(0);
+
+        while (!this.finished && this.buffer.length() < ChunkedBody.CHUNK_SIZE) {
+            if (!render(this.buffer)) {
+                this.finished = true;
+            }
+        }
+
+        if (this.buffer.length() == 0) {
+            return null;
+        }
+
+        return this.buffer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
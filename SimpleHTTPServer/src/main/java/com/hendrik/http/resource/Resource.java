@@ -4,12 +4,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 
+import com.hendrik.http.BufferBody;
+import com.hendrik.http.ChunkedBody;
 import com.hendrik.http.HTTPServer;
+import com.hendrik.http.ResponseBody;
 
 /**
  * Abstract class representing a resource that the HTTP Server can serve
@@ -21,6 +27,12 @@ public abstract class Resource {
     /** A handle to the file represented by this resource */
     protected final File handle;
 
+    /** The file's metadata. Looked up once when it is needed first */
+    private FileMetadata metadata;
+
+    /** The resource's data bytes. Generated once when they are needed first */
+    private byte[] data;
+
     /**
      * Factory Method for creating a new resource
      * 
@@ -31,21 +43,27 @@ public abstract class Resource {
      */
     public static Resource createFromURI(final String uri) throws UnsupportedEncodingException {
 
-        if (uri.equals("/Wally")) {
-            return new WallResource();
+        // The query only matters for directory listings and the pages of the wall
+        int queryStart = uri.indexOf('?');
+        String path = queryStart == -1 ? uri : uri.substring(0, queryStart);
+        String query = queryStart == -1 ? null : uri.substring(queryStart + 1);
+
+        if (path.equals(WallResource.PATH)) {
+            return new WallResource(WallResource.parseBefore(query));
         }
 
         // I hope that the URLDecoder class is not considered cheating
-        String urlDecoded = URLDecoder.decode(uri, StandardCharsets.UTF_8.name());
+        String urlDecoded = URLDecoder.decode(path, StandardCharsets.UTF_8.name());
 
         String absolutePath = HTTPServer.getRootDirectory() + urlDecoded;
 
         File file = new File(absolutePath);
+        FileMetadata metadata = FileMetadataCache.get(file.toPath());
 
-        if (file.isDirectory()) {
-            return new DirectoryResource(file);
+        if (metadata.isDirectory()) {
+            return new DirectoryResource(file, metadata, ListingOptions.parse(query));
         } else {
-            return new FileResource(file);
+            return new FileResource(file, metadata);
         }
     }
 
@@ -58,6 +76,31 @@ public abstract class Resource {
         this.handle = handle;
     }
 
+    /**
+     * Constructing a new Resource whose file's metadata was looked up already
+     * 
+     * @param handle Handle to the underlying file
+     * @param metadata The file's metadata
+     */
+    public Resource(final File handle, final FileMetadata metadata) {
+        this.handle = handle;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Getter for the metadata of the resource's file.
+     * The metadata is looked up in the {@link FileMetadataCache} once per resource, so answering all questions
+     * about a resource takes at most one stat of the file system
+     * 
+     * @return The file's metadata
+     */
+    protected FileMetadata getMetadata() {
+        if (this.metadata == null) {
+            this.metadata = this.handle == null ? FileMetadata.MISSING : FileMetadataCache.get(this.handle.toPath());
+        }
+        return this.metadata;
+    }
+
     /**
      * Queries whether the resource is the server wide root directory 
      * 
@@ -78,7 +121,7 @@ public abstract class Resource {
      * @return true if the resource exists, false otherwise
      */
     public boolean exists() {
-        return this.handle.exists();
+        return getMetadata().exists();
     }
 
     /**
@@ -103,7 +146,7 @@ public abstract class Resource {
      * https://mkyong.com/java8/java-8-convert-zoneddatetime-to-timestamp/
      * 
      * @param stringDate The date to check. Must be in RFC_1123_DATE_TIME format
-     * @return True when the resource was modified after stringDate, false otherwise
+     * @return True when the resource was modified after stringDate or stringDate cannot be parsed, false otherwise
      */
     public boolean wasModifiedAfter(final String stringDate) {
 
@@ -111,8 +154,14 @@ public abstract class Resource {
             return false;
         }
 
-        Timestamp lastModifiedTimestamp = new Timestamp(this.handle.lastModified());
-        ZonedDateTime zdt = ZonedDateTime.parse(stringDate, DateTimeFormatter.RFC_1123_DATE_TIME);
+        Timestamp lastModifiedTimestamp = new Timestamp(getMetadata().getLastModified());
+        ZonedDateTime zdt;
+        try {
+            zdt = ZonedDateTime.parse(stringDate, DateTimeFormatter.RFC_1123_DATE_TIME);
+        } catch (DateTimeParseException ex) {
+            // A date that cannot be parsed is treated as if it was absent
+            return true;
+        }
         Timestamp parameterTimestamp = Timestamp.valueOf(zdt.toLocalDateTime());
 
         //the value 0 if the two Timestamp objects are equal;
@@ -167,7 +216,7 @@ public abstract class Resource {
 
         File parentFileHandle = this.handle.getParentFile();
 
-        if (!parentFileHandle.exists()) {
+        if (!FileMetadataCache.get(parentFileHandle.toPath()).exists()) {
             return null;
         }
 
@@ -182,6 +231,138 @@ public abstract class Resource {
      */
     public abstract byte[] getData() throws IOException;
 
+    /**
+     * Get the resource's data bytes, generating them at most once per resource.
+     * The entity tag, the length and the body of a resource held in memory all share the same bytes
+     * 
+     * @return The resource's data bytes
+     * @throws IOException An I/O Error happened during the data byte aquisition
+     */
+    protected final byte[] getMaterializedData() throws IOException {
+        if (this.data == null) {
+            this.data = getData();
+        }
+        return this.data;
+    }
+
+    /**
+     * Get the resource's data in the form it is sent to clients.
+     * By default, the data bytes are held in memory. Generated resources that provide a {@link Renderer}
+     * are rendered while they are sent instead. Resources that can be sent without loading them
+     * into memory override this
+     * 
+     * @return The resource's body
+     * @throws IOException An I/O Error happened during the data byte aquisition
+     */
+    public ResponseBody getBody() throws IOException {
+
+        if (isRendered()) {
+            return new ChunkedBody(createRenderer());
+        }
+
+        return new BufferBody(getMaterializedData());
+    }
+
+    /**
+     * Queries whether the resource is generated while it is sent, so its length is not known in advance.
+     * By default, resources are available as a whole
+     * 
+     * @return True if the resource provides a {@link Renderer}, false otherwise
+     */
+    public boolean isRendered() {
+        return false;
+    }
+
+    /**
+     * Creates a renderer that generates the resource's content while it is sent.
+     * Only called for resources that are rendered, see {@link #isRendered()}
+     * 
+     * @return A new renderer. null if the resource is not rendered while it is sent
+     */
+    protected Renderer createRenderer() {
+        return null;
+    }
+
+    /**
+     * Convenience method for generated resources to render their whole content into memory
+     * 
+     * @return The rendered content's bytes
+     * @throws IOException An I/O Error happened while rendering the content
+     */
+    protected byte[] renderData() throws IOException {
+        return new ChunkedBody(createRenderer()).readContent();
+    }
+
+    /**
+     * Get a range of the resource's data in the form it is sent to clients.
+     * Only resources that support ranges are asked for them, see {@link #supportsRanges()}
+     * 
+     * @param position The index of the range's first byte
+     * @param count The number of bytes in the range
+     * @return The body containing the range
+     * @throws IOException An I/O Error happened during the data byte aquisition
+     */
+    public ResponseBody getBody(final long position, final long count) throws IOException {
+        return new BufferBody(ByteBuffer.wrap(getMaterializedData(), (int) position, (int) count).slice());
+    }
+
+    /**
+     * Getter for a compressed variant of the resource's body that was prepared in advance.
+     * By default, there is none, so the body is compressed while it is sent
+     * 
+     * @param coding The content coding the client accepts, e.g. gzip
+     * @return The compressed body. null if no prepared variant is available
+     * @throws IOException An I/O Error happened while opening the variant
+     */
+    public ResponseBody getEncodedBody(final String coding) throws IOException {
+        return null;
+    }
+
+    /**
+     * Get the number of bytes the resource's data consist of
+     * 
+     * @return The resource's length in bytes. -1 for resources that are rendered while they are sent
+     * @throws IOException An I/O Error happened during the data byte aquisition
+     */
+    public long getLength() throws IOException {
+        if (isRendered()) {
+            return -1;
+        }
+        return getMaterializedData().length;
+    }
+
+    /**
+     * Queries whether clients can request byte ranges of this resource.
+     * By default, resources are generated as a whole and do not support ranges
+     * 
+     * @return True if the resource can be sent in ranges, false otherwise
+     */
+    public boolean supportsRanges() {
+        return false;
+    }
+
+    /**
+     * Get the entity tag identifying the resource's current data. 
+     * This is used for etag checks
+     * 
+     * @return The hash code for the resource's data. null if the resource has no entity tag
+     * @throws IOException An I/O Error happened during the data byte aquisition
+     */
+    public String getETag() throws IOException {
+        return hashBytes(getMaterializedData());
+    }
+
+    /**
+     * Convenience method to hash a byte array.
+     * 
+     * @param bytes The byte array to hash
+     * @return The hash code for the provided byte array
+     */
+    protected static String hashBytes(final byte[] bytes) {
+        String bodyHash = String.valueOf(Arrays.hashCode(bytes));
+        return bodyHash;
+    }
+
     /**
      * Get the resource's content type. To be implemented by the actual resource.
      * The encoding for the content-type is always set to utf-8.
@@ -0,0 +1,131 @@
+package com.hendrik.http.resource;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of rendered pages of the wall.
+ * The wall is read far more often than comments are posted, so a page is rendered from the database once
+ * and then served from memory, together with a strong entity tag of its bytes. Every page is stamped with the
+ * version of the comments it was rendered from, see {@link com.hendrik.http.DB.DBHandler#getCommentsVersion()}.
+ * The version only changes when new comments were written successfully, which makes all older pages stale.
+ * Between two writes, reading the wall needs no database work at all.
+ *
+ * @author Hendrik Tjabben
+ */
+public class WallPageCache {
+
+    /**
+     * The maximum number of pages that are cached. The least recently used page is evicted first
+     */
+    private static final int MAX_PAGES = 64;
+
+    /**
+     * The cached pages by the id of the last comment of their previous page, "" for the first page
+     */
+    private static final Map<String, Page> pages = new LinkedHashMap<String, Page>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Page> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    /**
+     * A rendered page of the wall
+     */
+    public static class Page {
+
+        /**
+         * The version of the comments the page was rendered from
+         */
+        private final long version;
+
+        /**
+         * The page's UTF-8 encoded html
+         */
+        private final byte[] data;
+
+        /**
+         * The entity tag of the page's bytes
+         */
+        private final String etag;
+
+        /**
+         * Constructor for a new rendered page
+         *
+         * @param version The version of the comments the page was rendered from
+         * @param data The page's encoded html
+         * @param etag The entity tag of the page's bytes
+         */
+        private Page(final long version, final byte[] data, final String etag) {
+            this.version = version;
+            this.data = data;
+            this.etag = etag;
+        }
+
+        /**
+         * Getter for the page's encoded html. The array is shared and must not be modified
+         *
+         * @return The page's bytes
+         */
+        public byte[] getData() {
+            return this.data;
+        }
+
+        /**
+         * Getter for the entity tag of the page's bytes
+         *
+         * @return The entity tag
+         */
+        public String getETag() {
+            return this.etag;
+        }
+    }
+
+    /**
+     * Gets a cached page if it was rendered from the current comments
+     *
+     * @param before The id of the last comment of the previous page. null for the first page
+     * @param version The current version of the comments
+     * @return The page. null if it is not cached or stale
+     */
+    public static Page get(final String before, final long version) {
+
+        Page page;
+        synchronized (pages) {
+            page = pages.get(before == null ? "" : before);
+        }
+
+        if (page == null || page.version != version) {
+            return null;
+        }
+        return page;
+    }
+
+    /**
+     * Caches a rendered page
+     *
+     * @param before The id of the last comment of the previous page. null for the first page
+     * @param version The version of the comments, read before the page was rendered
+     * @param data The page's encoded html
+     * @return The cached page
+     * @throws IOException Thrown if the page's entity tag cannot be computed
+     */
+    public static Page put(final String before, final long version, final byte[] data) throws IOException {
+
+        Page page = new Page(version, data, ETagCache.digest(data));
+
+        synchronized (pages) {
+            Page current = pages.get(before == null ? "" : before);
+            // A page that was rendered from newer comments meanwhile is kept
+            if (current == null || current.version <= version) {
+                pages.put(before == null ? "" : before, page);
+            }
+        }
+        return page;
+    }
+}
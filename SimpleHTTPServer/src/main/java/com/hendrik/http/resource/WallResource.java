@@ -1,23 +1,94 @@
 package com.hendrik.http.resource;
 
 import java.io.IOException;
-import java.util.List;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 
 import com.hendrik.http.DB.Comment;
+import com.hendrik.http.DB.CommentCursor;
 import com.hendrik.http.DB.DBHandler;
+import com.mongodb.MongoException;
 
 /**
- * A resource that represents a simple "Wall" which displays comments submitted via a POST request
+ * A resource that represents a simple "Wall" which displays comments submitted via a POST request.
+ * The wall is shown in pages of the newest comments, older pages are linked by the id of the last comment shown.
+ * Rendered pages are cached until new comments are written, see {@link WallPageCache}
  * 
  * @author Hendrik Tjabben
  */
 public class WallResource extends Resource {
 
     /**
-     * Basic constructor. A WallResource does not have any file handle
+     * The path the wall is served at
+     */
+    public static final String PATH = "/Wally";
+
+    /**
+     * The default number of comments shown per page
+     */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    /**
+     * The number of comments shown per page
+     */
+    private static volatile int pageSize = DEFAULT_PAGE_SIZE;
+
+    /**
+     * The id of the last comment of the previous page. null for the first page
+     */
+    private final String before;
+
+    /**
+     * The rendered page. null before it is needed first
+     */
+    private WallPageCache.Page page;
+
+    /**
+     * Configures how many comments are shown per page
+     * 
+     * @param newPageSize The number of comments
+     */
+    public static void configure(final int newPageSize) {
+        pageSize = newPageSize;
+    }
+
+    /**
+     * Basic constructor for the wall's first page. A WallResource does not have any file handle
      */
     public WallResource() {
+        this(null);
+    }
+
+    /**
+     * Constructor for a page of the wall
+     * 
+     * @param before The id of the last comment of the previous page. null for the first page
+     */
+    public WallResource(final String before) {
         super(null);
+        this.before = before;
+    }
+
+    /**
+     * Reads the page of the wall from a request's query
+     * 
+     * @param query The query without the question mark. null if the request has none
+     * @return The id of the last comment of the previous page. null for the first page
+     * @throws UnsupportedEncodingException This error is thrown when UTF-8 encoding is not supported
+     */
+    public static String parseBefore(final String query) throws UnsupportedEncodingException {
+
+        if (query == null) {
+            return null;
+        }
+
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("before=")) {
+                return URLDecoder.decode(parameter.substring("before=".length()), StandardCharsets.UTF_8.name());
+            }
+        }
+        return null;
     }
 
     /**
@@ -28,29 +99,178 @@ public class WallResource extends Resource {
      */
     @Override
     public byte[] getData() throws IOException {
-        StringBuilder wallBuilder = new StringBuilder();
-        wallBuilder
-            .append("<html><head><title>WALLy</title></head><body>");
-
-        List<Comment> allComments = DBHandler.getAllComments();
-
-        for (Comment comment : allComments) {
-            wallBuilder
-                .append("<p>")
-                .append(comment.getName() + " Wrote: ")
-                .append(comment.getComment())
-                .append("</p>");
+        return getPage().getData();
+    }
+
+    /**
+     * Creates a renderer for the wall
+     * 
+     * @return A renderer for the wall's html
+     */
+    @Override
+    protected Renderer createRenderer() {
+        return new WallRenderer(this.before, pageSize);
+    }
+
+    /**
+     * The entity tag of the wall's page changes exactly when new comments were written
+     * 
+     * @return The entity tag of the page's bytes
+     */
+    @Override
+    public String getETag() throws IOException {
+        return getPage().getETag();
+    }
+
+    /**
+     * The wall has no modification date, it is only validated by its entity tag
+     * 
+     * @param stringDate The date to check
+     * @return True, so If-Modified-Since never answers a request with an outdated page
+     */
+    @Override
+    public boolean wasModifiedAfter(final String stringDate) {
+        return true;
+    }
+
+    /**
+     * Getter for the rendered page. It is taken from the {@link WallPageCache} if no comments were written
+     * since it was rendered, otherwise it is rendered from the database and cached.
+     * The page is looked up once per resource, so the body and the entity tag of a response always match
+     * 
+     * @return The page
+     * @throws IOException Thrown if the comments cannot be read
+     */
+    private WallPageCache.Page getPage() throws IOException {
+
+        if (this.page == null) {
+            // The version is read before the comments, so a page that misses a concurrent write is never current
+            long version = DBHandler.getCommentsVersion();
+
+            this.page = WallPageCache.get(this.before, version);
+            if (this.page == null) {
+                this.page = WallPageCache.put(this.before, version, renderData());
+            }
+        }
+        return this.page;
+    }
+
+    /**
+     * Renders a page of the wall's html: a header, one paragraph per comment, a link to older comments
+     * and the form for new comments. The comments are rendered straight from the database cursor
+     */
+    private static class WallRenderer extends Renderer {
+
+        /**
+         * The id of the last comment of the previous page. null for the first page
+         */
+        private final String before;
+
+        /**
+         * The maximum number of comments on the page
+         */
+        private final int pageSize;
+
+        /**
+         * The page's comments that were not rendered yet. null before the comments were queried
+         */
+        private CommentCursor comments;
+
+        /**
+         * The number of comments rendered so far
+         */
+        private int count;
+
+        /**
+         * The id of the last rendered comment
+         */
+        private String lastId;
+
+        /**
+         * Whether the form and the end of the page were rendered
+         */
+        private boolean footerDone;
+
+        /**
+         * Constructor for a new wall renderer
+         * 
+         * @param before The id of the last comment of the previous page. null for the first page
+         * @param pageSize The maximum number of comments on the page
+         */
+        private WallRenderer(final String before, final int pageSize) {
+            this.before = before;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        protected boolean render(final StringBuilder out) throws IOException {
+
+            if (this.comments == null) {
+                try {
+                    this.comments = DBHandler.getComments(this.before, this.pageSize);
+                } catch (MongoException ex) {
+                    throw new IOException("Comments could not be read: " + ex.getMessage(), ex);
+                }
+                out.append("<html><head><title>WALLy</title></head><body>");
+                return true;
+            }
+
+            if (!this.footerDone && hasNextComment()) {
+                Comment comment = this.comments.next();
+                this.count++;
+                this.lastId = comment.getId();
+                out
+                    .append("<p>")
+                    .append(comment.getName() + " Wrote: ")
+                    .append(comment.getComment())
+                    .append("</p>");
+                return true;
+            }
+
+            if (!this.footerDone) {
+                this.footerDone = true;
+                this.comments.close();
+
+                // A full page may be followed by older comments
+                if (this.count == this.pageSize && this.lastId != null) {
+                    out.append("<p><a href=\"").append(PATH).append("?before=").append(this.lastId).append("\">Older comments</a></p>");
+                }
+                out
+                    .append("<form enctype=\"multipart/form-data\" action=\"/Wally\" method=\"POST\">")
+                    .append("<input name=\"username\" type=\"text\" value=\"Your Name\">")
+                    .append("<input name=\"comment\" type=\"text\" value=\"What's on your mind?\">")
+                    .append("<button>Submit</button>")
+                    .append("</form>")
+                    .append("</body></html>");
+                return true;
+            }
+
+            return false;
         }
 
-        wallBuilder
-            .append("<form enctype=\"multipart/form-data\" action=\"/Wally\" method=\"POST\">")
-            .append("<input name=\"username\" type=\"text\" value=\"Your Name\">")
-            .append("<input name=\"comment\" type=\"text\" value=\"What's on your mind?\">")
-            .append("<button>Submit</button>")
-            .append("</form>")
-            .append("</body></html>");
+        /**
+         * Checks whether the cursor has another comment
+         * 
+         * @return True if another comment can be rendered
+         * @throws IOException Thrown if the comments cannot be read
+         */
+        private boolean hasNextComment() throws IOException {
+            try {
+                return this.comments.hasNext();
+            } catch (MongoException ex) {
+                throw new IOException("Comments could not be read: " + ex.getMessage(), ex);
+            }
+        }
 
-        return wallBuilder.toString().getBytes();
+        /**
+         * Closes the cursor when the response ends before the page was rendered completely
+         */
+        @Override
+        public void close() {
+            if (this.comments != null) {
+                this.comments.close();
+            }
+        }
     }
 
     @Override
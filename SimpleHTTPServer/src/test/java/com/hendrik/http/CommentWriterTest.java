@@ -0,0 +1,108 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hendrik.http.DB.CommentWriter;
+import com.hendrik.http.resource.WallPageCache;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CommentWriterTest {
+
+    @Test
+    public void testCommentsAreWrittenInBatches() {
+
+        try {
+            CommentWriter.configure(4, 200, CommentWriter.Durability.QUEUED);
+
+            List<Integer> batchSizes = new CopyOnWriteArrayList<Integer>();
+            CommentWriter writer = new CommentWriter(documents -> batchSizes.add(documents.size()));
+
+            for (int i = 0; i < 10; i++) {
+                Assertions.assertTrue(writer.write(new Document("name", "name" + i)));
+            }
+
+            int written = 0;
+            for (int i = 0; i < 100 && written < 10; i++) {
+                Thread.sleep(20);
+                written = batchSizes.stream().mapToInt(Integer::intValue).sum();
+            }
+
+            Assertions.assertEquals(10, written);
+            Assertions.assertTrue(batchSizes.size() < 10);
+            Assertions.assertTrue(batchSizes.stream().allMatch(size -> size <= 4));
+        } catch (InterruptedException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        } finally {
+            CommentWriter.configure(CommentWriter.DEFAULT_BATCH_SIZE, CommentWriter.DEFAULT_LINGER_MILLIS, CommentWriter.DEFAULT_DURABILITY);
+        }
+    }
+
+    @Test
+    public void testPostedCommentIsOnTheNextPage() {
+
+        try {
+            List<Document> stored = new CopyOnWriteArrayList<Document>();
+            AtomicLong version = new AtomicLong();
+            CommentWriter writer = new CommentWriter(documents -> {
+                stored.addAll(documents);
+                version.incrementAndGet();
+            });
+
+            // A page rendered before the post is cached for the comments' version
+            long before = version.get();
+            WallPageCache.put("posted-comment", before, "<html>no comments</html>".getBytes());
+
+            // By default, the post is only answered once its comment was written, with still batched writes
+            Assertions.assertTrue(writer.write(new Document("name", "Hendrik")));
+            Assertions.assertEquals(1, stored.size());
+            Assertions.assertNotEquals(before, version.get());
+
+            // So the page answering the post is rendered again and contains the comment
+            Assertions.assertNull(WallPageCache.get("posted-comment", version.get()));
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        } finally {
+            CommentWriter.configure(CommentWriter.DEFAULT_BATCH_SIZE, CommentWriter.DEFAULT_LINGER_MILLIS, CommentWriter.DEFAULT_DURABILITY);
+        }
+    }
+
+    @Test
+    public void testAcknowledgedWritesWaitForTheDatabase() {
+
+        try {
+            CommentWriter.configure(CommentWriter.DEFAULT_BATCH_SIZE, 0, CommentWriter.Durability.ACKNOWLEDGED);
+
+            List<Document> stored = new CopyOnWriteArrayList<Document>();
+            CommentWriter writer = new CommentWriter(documents -> stored.addAll(documents));
+            Assertions.assertTrue(writer.write(new Document("name", "Hendrik")));
+            Assertions.assertEquals(1, stored.size());
+
+            CommentWriter failing = new CommentWriter(documents -> {
+                throw new IllegalStateException("Database not reachable");
+            });
+            Assertions.assertFalse(failing.write(new Document("name", "Hendrik")));
+
+            // The writer's thread survives even an Error thrown while writing a batch
+            AtomicInteger attempts = new AtomicInteger();
+            CommentWriter recovering = new CommentWriter(documents -> {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new AssertionError("Driver failed");
+                }
+            });
+            Assertions.assertFalse(recovering.write(new Document("name", "Hendrik")));
+            Assertions.assertTrue(recovering.write(new Document("name", "Hendrik")));
+            Assertions.assertEquals(2, attempts.get());
+        } finally {
+            CommentWriter.configure(CommentWriter.DEFAULT_BATCH_SIZE, CommentWriter.DEFAULT_LINGER_MILLIS, CommentWriter.DEFAULT_DURABILITY);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.hendrik.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.hendrik.http.resource.CompressedVariantCache;
+import com.hendrik.http.resource.FileMetadata;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CompressionTest {
+
+    @Test
+    public void testNegotiation() {
+        Assertions.assertNull(Compression.negotiate(Optional.empty()));
+        Assertions.assertEquals("gzip", Compression.negotiate(Optional.of(Arrays.asList("deflate", "gzip"))));
+        Assertions.assertEquals("deflate", Compression.negotiate(Optional.of(Arrays.asList("gzip;q=0.5", "deflate"))));
+        Assertions.assertEquals("gzip", Compression.negotiate(Optional.of(Arrays.asList("*"))));
+        Assertions.assertEquals("deflate", Compression.negotiate(Optional.of(Arrays.asList("gzip;q=0", "*"))));
+        Assertions.assertNull(Compression.negotiate(Optional.of(Arrays.asList("br", "identity"))));
+
+        Assertions.assertTrue(Compression.isCompressible("text/html; charset=utf-8", -1));
+        Assertions.assertTrue(Compression.isCompressible("text/html; charset=utf-8", 4096));
+        Assertions.assertFalse(Compression.isCompressible("text/html; charset=utf-8", 10));
+        Assertions.assertFalse(Compression.isCompressible("image/png; charset=utf-8", 4096));
+    }
+
+    @Test
+    public void testCompressedBodiesRoundTrip() {
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("Line ").append(i).append('\n');
+        }
+        byte[] data = text.toString().getBytes();
+
+        try {
+            byte[] gzip = new ChunkedBody(new CompressingSource(new BufferBody(data), Compression.GZIP)).readContent();
+            Assertions.assertTrue(gzip.length < data.length);
+            Assertions.assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(gzip))));
+
+            byte[] deflate = new ChunkedBody(new CompressingSource(new BufferBody(data), Compression.DEFLATE)).readContent();
+            Assertions.assertArrayEquals(data, readAll(new InflaterInputStream(new ByteArrayInputStream(deflate))));
+
+            ChunkedBody chunked = new ChunkedBody(new CompressingSource(
+                new ChunkedBody(new CompressingSource(new BufferBody(data), Compression.GZIP)), Compression.GZIP));
+            byte[] twice = chunked.readContent();
+            Assertions.assertArrayEquals(data, readAll(new GZIPInputStream(new GZIPInputStream(new ByteArrayInputStream(twice)))));
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testVariantsAreBuiltInTheBackground() {
+
+        try {
+            Path file = Files.createTempFile("variant", ".html");
+            byte[] data = new byte[64 * 1024];
+            Arrays.fill(data, (byte) 'a');
+            Files.write(file, data);
+
+            CompressedVariantCache cache = new CompressedVariantCache(Files.createTempDirectory("variants"), 1024 * 1024);
+            Assertions.assertNull(cache.getBody(file, FileMetadata.read(file), Compression.GZIP));
+
+            ResponseBody variant = null;
+            for (int i = 0; i < 100 && variant == null; i++) {
+                Thread.sleep(50);
+                variant = cache.getBody(file, FileMetadata.read(file), Compression.GZIP);
+            }
+
+            Assertions.assertNotNull(variant);
+            Assertions.assertTrue(variant.getLength() < data.length);
+            Assertions.assertEquals(variant.getLength(), cache.getUsedBytes());
+            Assertions.assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(variant.toByteArray()))));
+            variant.close();
+
+            // A changed file does not match the old variant
+            Files.write(file, "changed".getBytes());
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+            Assertions.assertNull(cache.getBody(file, FileMetadata.read(file), Compression.GZIP));
+        } catch (IOException | InterruptedException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testCompressedEntityTagsAreWeak() {
+
+        // The test files are small, so they are only compressed without a minimum size
+        Compression.configure(Compression.DEFAULT_TYPES, 0);
+        try {
+            Response identity = ResponseBuilder.respond(new Request(new ByteArrayInputStream("GET /Test1/root.html HTTP/1.1".getBytes())));
+            String identityTag = identity.getHeaderValues(HeaderFields.Field.ENTITIY_TAG).get().get(0);
+            Assertions.assertFalse(identityTag.startsWith("W/"));
+
+            Response gzip = ResponseBuilder.respond(new Request(new ByteArrayInputStream("GET /Test1/root.html HTTP/1.1\nAccept-Encoding: gzip".getBytes())));
+            String gzipTag = gzip.getHeaderValues(HeaderFields.Field.ENTITIY_TAG).get().get(0);
+            Assertions.assertEquals("W/" + identityTag + "-gzip", gzipTag);
+
+            // Weak entity tags match If-None-Match, but never If-Match
+            Response notModified = ResponseBuilder.respond(new Request(new ByteArrayInputStream(
+                ("GET /Test1/root.html HTTP/1.1\nAccept-Encoding: gzip\nIf-None-Match: " + gzipTag).getBytes())));
+            Assertions.assertEquals(HeaderFields.StatusCode.NOTMODIFIED, notModified.getStatusCode());
+
+            Response failed = ResponseBuilder.respond(new Request(new ByteArrayInputStream(
+                ("GET /Test1/root.html HTTP/1.1\nAccept-Encoding: gzip\nIf-Match: " + gzipTag).getBytes())));
+            Assertions.assertEquals(HeaderFields.StatusCode.PRECONDITION_FAILED, failed.getStatusCode());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        } finally {
+            Compression.configure(Compression.DEFAULT_TYPES, Compression.DEFAULT_MIN_SIZE);
+        }
+    }
+
+    /**
+     * Reads a stream completely
+     *
+     * @param input The stream to read
+     * @return The stream's bytes
+     * @throws IOException Thrown if the stream cannot be read
+     */
+    private static byte[] readAll(final InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+            output.write(buffer, 0, count);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,296 @@
+package com.hendrik.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Compares the connection modes of the server under many concurrent keep-alive connections.
+ * It is not part of the regular test suite and only runs when a mode is requested. Run it once per mode,
+ * so the modes do not influence each other:
+ *
+ * <pre>
+ * mvn test -Dtest=ConnectionModeBenchmark -Dbenchmark.mode=virtual -Dbenchmark.connections=1000,10000,50000
+ * </pre>
+ *
+ * The server runs in a separate Java process, so the client's threads, allocations and garbage collections
+ * do not distort its measurements. Its output is written to a log file in the temporary directory.
+ * For every connection count, all connections are opened and kept idle at first. Afterwards, every connection
+ * sends one GET request and waits for the response. The benchmark reports the time for both phases as well as
+ * the server's live thread count and used heap while all connections are open, which are read over JMX.
+ * The client binds its sockets to several loopback addresses so that more connections than ephemeral ports are possible.
+ * Large connection counts require a high open file limit (ulimit -n).
+ *
+ * @author Hendrik Tjabben
+ */
+public class ConnectionModeBenchmark {
+
+    /**
+     * The port the benchmarked server listens on
+     */
+    private static final int PORT = 18081;
+
+    /**
+     * The port the benchmarked server exposes its platform MBeans on
+     */
+    private static final int JMX_PORT = 18082;
+
+    /**
+     * The number of milliseconds to wait for the server process to accept connections
+     */
+    private static final long STARTUP_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * The number of client connections bound to the same loopback address
+     */
+    private static final int CONNECTIONS_PER_ADDRESS = 20000;
+
+    /**
+     * The maximum number of connects that are in flight at the same time
+     */
+    private static final int MAX_PENDING_CONNECTS = 256;
+
+    /**
+     * The request that is sent on every connection
+     */
+    private static final byte[] REQUEST = "GET /Test2/Test21/subfolder.txt HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    /**
+     * The client side state of a single benchmark connection
+     */
+    private static class ClientConnection {
+
+        private final SocketChannel channel;
+
+        private final ByteBuffer request = ByteBuffer.wrap(REQUEST);
+
+        private final ByteBuffer response = ByteBuffer.allocate(1024);
+
+        private ClientConnection(final SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Checks whether the complete response was received
+         *
+         * @return True if the header and the complete body were received
+         */
+        private boolean isResponseComplete() {
+            String received = new String(this.response.array(), 0, this.response.position(), StandardCharsets.ISO_8859_1);
+            int headerEnd = received.indexOf("\r\n\r\n");
+            if (headerEnd == -1) {
+                return false;
+            }
+            int lengthStart = received.indexOf("Content-Length: ");
+            if (lengthStart == -1 || lengthStart > headerEnd) {
+                return true;
+            }
+            int lengthEnd = received.indexOf("\r\n", lengthStart);
+            int contentLength = Integer.parseInt(received.substring(lengthStart + "Content-Length: ".length(), lengthEnd));
+            return this.response.position() >= headerEnd + 4 + contentLength;
+        }
+    }
+
+    /**
+     * Runs the benchmark for the connection mode (thread, virtual or selector) in the system property benchmark.mode
+     * and the comma separated connection counts in benchmark.connections
+     *
+     * @throws Exception Thrown if the benchmark cannot be run
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark.mode", matches = "thread|virtual|selector")
+    public void benchmarkConnectionMode() throws Exception {
+
+        String modeName = System.getProperty("benchmark.mode");
+        List<Integer> connectionCounts = new ArrayList<Integer>();
+        for (String connectionCount : System.getProperty("benchmark.connections", "1000,10000,50000").split(",")) {
+            connectionCounts.add(Integer.parseInt(connectionCount.trim()));
+        }
+
+        Process server = startServer(modeName);
+        JMXConnector jmxConnector = null;
+        try {
+            awaitServer(server);
+            jmxConnector = JMXConnectorFactory.connect(
+                new JMXServiceURL("service:jmx:rmi:///jndi/rmi://127.0.0.1:" + JMX_PORT + "/jmxrmi"));
+            MBeanServerConnection serverBeans = jmxConnector.getMBeanServerConnection();
+
+            System.out.println("mode\tconnections\tconnect ms\trequest ms\tthreads\theap MB");
+            for (int connectionCount : connectionCounts) {
+                runRound(modeName, connectionCount, serverBeans);
+            }
+        } finally {
+            if (jmxConnector != null) {
+                jmxConnector.close();
+            }
+            server.destroy();
+        }
+    }
+
+    /**
+     * Starts the server in a separate Java process with the benchmark's class path
+     *
+     * @param modeName The connection mode the server uses
+     * @return The server process
+     * @throws IOException Thrown if the process cannot be started
+     */
+    private static Process startServer(final String modeName) throws IOException {
+
+        File log = File.createTempFile("connection-mode-benchmark-" + modeName, ".log");
+        System.out.println("Server output is written to " + log);
+
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Dcom.sun.management.jmxremote.port=" + JMX_PORT);
+        command.add("-Dcom.sun.management.jmxremote.authenticate=false");
+        command.add("-Dcom.sun.management.jmxremote.ssl=false");
+        command.add("-cp");
+        // Surefire starts the tests from a manifest-only jar, the test class path is passed separately
+        command.add(System.getProperty("surefire.test.class.path", System.getProperty("java.class.path")));
+        command.add(Main.class.getName());
+        command.add("-p");
+        command.add(String.valueOf(PORT));
+        command.add("-d");
+        command.add(HTTPServer.getRootDirectory());
+        command.add("-m");
+        command.add(modeName);
+
+        return new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+            .start();
+    }
+
+    /**
+     * Waits until the server process accepts connections
+     *
+     * @param server The server process
+     * @throws IOException Thrown if the server exits or does not accept connections in time
+     * @throws InterruptedException Thrown if the benchmark is interrupted while waiting
+     */
+    private static void awaitServer(final Process server) throws IOException, InterruptedException {
+
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                new Socket("127.0.0.1", PORT).close();
+                return;
+            } catch (IOException ex) {
+                if (!server.isAlive() || System.currentTimeMillis() > deadline) {
+                    throw new IOException("The server did not start", ex);
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    /**
+     * Runs one benchmark round and prints its result
+     *
+     * @param modeName The benchmarked connection mode
+     * @param connectionCount The number of concurrent connections
+     * @param serverBeans The server process's platform MBeans
+     * @throws IOException Thrown if the client fails or the server's MBeans cannot be read
+     * @throws InterruptedException Thrown if the benchmark is interrupted while waiting for the server
+     */
+    private static void runRound(final String modeName, final int connectionCount, final MBeanServerConnection serverBeans)
+        throws IOException, InterruptedException {
+
+        Selector selector = Selector.open();
+        List<ClientConnection> connections = new ArrayList<ClientConnection>();
+
+        long connectStart = System.nanoTime();
+        int connected = 0;
+        int opened = 0;
+        while (connected < connectionCount) {
+            while (opened < connectionCount && opened - connected < MAX_PENDING_CONNECTS) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.bind(new InetSocketAddress("127.0.0." + (2 + opened / CONNECTIONS_PER_ADDRESS), 0));
+                channel.connect(new InetSocketAddress("127.0.0.1", PORT));
+                ClientConnection connection = new ClientConnection(channel);
+                channel.register(selector, SelectionKey.OP_CONNECT, connection);
+                connections.add(connection);
+                opened++;
+            }
+
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isConnectable() && ((SocketChannel) key.channel()).finishConnect()) {
+                    key.interestOps(0);
+                    connected++;
+                }
+            }
+        }
+        long connectMillis = (System.nanoTime() - connectStart) / 1000000;
+
+        // Give the server time to pick up every idle connection before sampling it
+        Thread.sleep(2000);
+        MemoryMXBean serverMemory = ManagementFactory.newPlatformMXBeanProxy(serverBeans, ManagementFactory.MEMORY_MXBEAN_NAME, MemoryMXBean.class);
+        ThreadMXBean serverThreads = ManagementFactory.newPlatformMXBeanProxy(serverBeans, ManagementFactory.THREAD_MXBEAN_NAME, ThreadMXBean.class);
+        serverMemory.gc();
+        int threadCount = serverThreads.getThreadCount();
+        long usedHeap = serverMemory.getHeapMemoryUsage().getUsed() / (1024 * 1024);
+
+        long requestStart = System.nanoTime();
+        for (ClientConnection connection : connections) {
+            connection.channel.keyFor(selector).interestOps(SelectionKey.OP_WRITE);
+        }
+        int completed = 0;
+        while (completed < connectionCount) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                ClientConnection connection = (ClientConnection) key.attachment();
+
+                if (key.isWritable()) {
+                    connection.channel.write(connection.request);
+                    if (!connection.request.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                } else if (key.isReadable()) {
+                    if (connection.channel.read(connection.response) == -1 || connection.isResponseComplete()) {
+                        key.interestOps(0);
+                        completed++;
+                    }
+                }
+            }
+        }
+        long requestMillis = (System.nanoTime() - requestStart) / 1000000;
+
+        for (ClientConnection connection : connections) {
+            connection.channel.close();
+        }
+        selector.close();
+
+        System.out.println(modeName + "\t" + connectionCount + "\t" + connectMillis + "\t" + requestMillis + "\t" + threadCount + "\t" + usedHeap);
+
+        // Let the server release the closed connections before the next round
+        Thread.sleep(2000);
+    }
+}
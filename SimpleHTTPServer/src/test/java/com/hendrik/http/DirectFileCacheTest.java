@@ -0,0 +1,55 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.hendrik.http.resource.DirectFileCache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class DirectFileCacheTest {
+
+    @Test
+    public void testHotFileIsServedOffHeap() {
+
+        try {
+            byte[] content = new byte[3 * 1024 * 1024 + 17];
+            new Random(42).nextBytes(content);
+            Path file = Files.createTempFile("direct", ".bin").toAbsolutePath();
+            Files.write(file, content);
+
+            DirectFileCache cache = new DirectFileCache(16 * 1024 * 1024);
+            Assertions.assertTrue(cache.accepts(content.length));
+
+            // The first request does not make the file hot yet
+            Assertions.assertNull(cache.getBody(file, content.length, 0, content.length));
+
+            ResponseBody body = cache.getBody(file, content.length, 0, content.length);
+            Assertions.assertNotNull(body);
+            Assertions.assertArrayEquals(content, body.toByteArray());
+            Assertions.assertEquals(1, cache.getEntryCount());
+
+            ResponseBody range = cache.getBody(file, content.length, 65530, 20);
+            Assertions.assertArrayEquals(Arrays.copyOfRange(content, 65530, 65550), range.toByteArray());
+            Assertions.assertEquals(1, cache.getHitCount());
+            range.close();
+
+            // The chunks stay in use until the last response sending them is closed
+            long used = cache.getUsedBytes();
+            cache.invalidate(file);
+            Assertions.assertEquals(0, cache.getEntryCount());
+            Assertions.assertEquals(used, cache.getUsedBytes());
+            body.close();
+            Assertions.assertEquals(0, cache.getUsedBytes());
+
+            Files.delete(file);
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+}
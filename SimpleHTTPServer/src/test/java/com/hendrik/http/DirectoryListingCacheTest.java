@@ -0,0 +1,50 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.hendrik.http.resource.DirectoryListingCache;
+import com.hendrik.http.resource.FileWatcher;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class DirectoryListingCacheTest {
+
+    @Test
+    public void testChildrenChangedInvalidatesOnlyItsDirectory() {
+
+        try {
+            Path root = Files.createTempDirectory("listings").toRealPath();
+            Path changed = Files.createDirectory(root.resolve("changed"));
+            Path unchanged = Files.createDirectory(root.resolve("unchanged"));
+
+            // Listings are only cached while the file watcher reports changes
+            FileWatcher.watch(root);
+            Assertions.assertTrue(FileWatcher.isWatching());
+
+            DirectoryListingCache.Listing changedListing = new DirectoryListingCache.Listing("changed".getBytes(), "1");
+            DirectoryListingCache.Listing unchangedListing = new DirectoryListingCache.Listing("unchanged".getBytes(), "2");
+            DirectoryListingCache.put(changed, changedListing, DirectoryListingCache.beginRender());
+            DirectoryListingCache.put(unchanged, unchangedListing, DirectoryListingCache.beginRender());
+
+            Assertions.assertSame(changedListing, DirectoryListingCache.get(changed));
+            Assertions.assertSame(unchangedListing, DirectoryListingCache.get(unchanged));
+
+            Files.createFile(changed.resolve("child.txt"));
+
+            // The watcher reports the new child asynchronously
+            long deadline = System.currentTimeMillis() + 10000;
+            while (DirectoryListingCache.get(changed) != null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+
+            Assertions.assertNull(DirectoryListingCache.get(changed));
+            Assertions.assertSame(unchangedListing, DirectoryListingCache.get(unchanged));
+        } catch (IOException | InterruptedException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+}
@@ -2,11 +2,15 @@ package com.hendrik.http;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 
+import com.hendrik.http.resource.ETagCache;
 import com.hendrik.http.resource.Resource;
 
 import org.junit.jupiter.api.Assertions;
@@ -61,7 +65,7 @@ public class ETagTest {
             Response getRootResponseIfMatchNotMatching = new ResponseBuilder(getRootRequestIfMatchNotMatching).setEtag().build();
             Assertions.assertTrue(getRootResponseIfMatchNotMatching.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).isPresent());
             Assertions.assertEquals("ETag: 533839800", getRootResponseIfMatchNotMatching.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).get());
-            Assertions.assertArrayEquals("413 Precondition Failed".getBytes(), getRootResponseIfMatchNotMatching.getData());
+            Assertions.assertArrayEquals("412 Precondition Failed".getBytes(), getRootResponseIfMatchNotMatching.getData());
 
             Response getRootResponseIfMatchingStarNotExisting = new ResponseBuilder(getRootRequestIfMatchStarResourceNotExisting).setEtag().build();
             Assertions.assertFalse(getRootResponseIfMatchingStarNotExisting.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).isPresent());
@@ -117,12 +121,13 @@ public class ETagTest {
             Response getRootResponseIfMatch = new ResponseBuilder(getRootRequestIfMatch).setEtag().build();
             Assertions.assertTrue(getRootResponseIfMatch.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).isPresent());
             Assertions.assertEquals("ETag: 533839800", getRootResponseIfMatch.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).get());
-            Assertions.assertArrayEquals("304 Not Modified".getBytes(), getRootResponseIfMatch.getData());
+            Assertions.assertArrayEquals("".getBytes(), getRootResponseIfMatch.getData());
+            Assertions.assertFalse(getRootResponseIfMatch.getHeaderLine(HeaderFields.Field.CONTENT_LENGTH).isPresent());
 
             Response getRootResponseIfMatchStar = new ResponseBuilder(getRootRequestIfMatchStar).setEtag().build();
             Assertions.assertTrue(getRootResponseIfMatchStar.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).isPresent());
             Assertions.assertEquals("ETag: 533839800", getRootResponseIfMatchStar.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).get());
-            Assertions.assertArrayEquals("304 Not Modified".getBytes(), getRootResponseIfMatchStar.getData());
+            Assertions.assertArrayEquals("".getBytes(), getRootResponseIfMatchStar.getData());
 
             Response getRootResponseIfMatchNotMatching = new ResponseBuilder(getRootRequestIfMatchNotMatching).setEtag().build();
             Assertions.assertTrue(getRootResponseIfMatchNotMatching.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).isPresent());
@@ -151,7 +156,7 @@ public class ETagTest {
 
             Response postResponse = new ResponseBuilder(postRequest).setEtag().build();
             Assertions.assertTrue(postResponse.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).isPresent());
-            Assertions.assertArrayEquals("413 Precondition Failed".getBytes(), postResponse.getData());
+            Assertions.assertArrayEquals("412 Precondition Failed".getBytes(), postResponse.getData());
 
             Response headRootResponseIfMatchingStarNotExisting = new ResponseBuilder(headRootRequestIfMatchStarResourceNotExisting).setEtag().build();
             Assertions.assertFalse(headRootResponseIfMatchingStarNotExisting.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).isPresent());
@@ -176,6 +181,7 @@ public class ETagTest {
             Request getRootRequestIfModifiedSinceBeginningOfTime = new Request(new ByteArrayInputStream(("GET / HTTP/1.1\nETag: 533839800\nIf-Modified-Since: "+dateBeginning).getBytes()));
             Request getRootRequestResourceNotExisting = new Request(new ByteArrayInputStream(("GET /kaudawelsch HTTP/1.1\nETag: 533839800\nIf-Modified-Since: "+dateBeginning).getBytes()));
             Request getRootRequestDateInvalid = new Request(new ByteArrayInputStream(("GET / HTTP/1.1\nETag: 533839800\nIf-Modified-Since: "+dateTomorrow).getBytes()));
+            Request getRootRequestDateUnparseable = new Request(new ByteArrayInputStream(("GET / HTTP/1.1\nETag: 533839800\nIf-Modified-Since: garbage").getBytes()));
             Request getIfNotMatchAndIfModifiedSince = new Request(new ByteArrayInputStream(("GET / HTTP/1.1\nETag: 533839800\nIf-Modified-Since:  "+ dateNow +"\nIf-None-Match: 533839801").getBytes()));
 
             Request headRootRequestIfModifiedSinceNow = new Request(new ByteArrayInputStream(("HEAD / HTTP/1.1\nETag: 533839800\nIf-Modified-Since: "+dateNow).getBytes()));
@@ -187,7 +193,7 @@ public class ETagTest {
             Response getRootResponseIfModifiedSinceNow = new ResponseBuilder(getRootRequestIfModifiedSinceNow).setEtag().build();
             Assertions.assertTrue(getRootResponseIfModifiedSinceNow.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).isPresent());
             Assertions.assertEquals("ETag: 533839800", getRootRequestIfModifiedSinceNow.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).get());
-            Assertions.assertArrayEquals("304 Not Modified".getBytes(), getRootResponseIfModifiedSinceNow.getData());
+            Assertions.assertArrayEquals("".getBytes(), getRootResponseIfModifiedSinceNow.getData());
 
             Response getRootResponseIfModifiedSinceBeginningOfTime = new ResponseBuilder(getRootRequestIfModifiedSinceBeginningOfTime).setEtag().build();
             Assertions.assertTrue(getRootResponseIfModifiedSinceBeginningOfTime.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).isPresent());
@@ -203,6 +209,10 @@ public class ETagTest {
             Assertions.assertEquals("ETag: 533839800", getRootResponseDateInvalid.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).get());
             Assertions.assertArrayEquals(rootHTML.getData(), getRootResponseDateInvalid.getData());
 
+            Response getRootResponseDateUnparseable = ResponseBuilder.respond(getRootRequestDateUnparseable);
+            Assertions.assertEquals(HeaderFields.StatusCode.OK, getRootResponseDateUnparseable.getStatusCode());
+            Assertions.assertArrayEquals(rootHTML.getData(), getRootResponseDateUnparseable.getData());
+
             Response getIfNotMatchAndModifiedSinceResponse = new ResponseBuilder(getIfNotMatchAndIfModifiedSince).setEtag().build();
             Assertions.assertFalse(Arrays.equals("304 Not Modified".getBytes(), getIfNotMatchAndModifiedSinceResponse.getData()));
             Assertions.assertTrue(getIfNotMatchAndModifiedSinceResponse.getHeaderLine(HeaderFields.Field.ENTITIY_TAG).isPresent());
@@ -240,4 +250,25 @@ public class ETagTest {
         }
     }
 
+    @Test
+    public void testFileETagFollowsVersion() {
+
+        try {
+            Path file = Files.createTempFile("etag", ".txt");
+            Files.write(file, "first version".getBytes());
+
+            String first = ETagCache.getETag(file);
+            Assertions.assertEquals(first, ETagCache.getETag(file));
+
+            Files.write(file, "second version".getBytes());
+            Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+            Assertions.assertNotEquals(first, ETagCache.getETag(file));
+
+            Files.delete(file);
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
 }
@@ -0,0 +1,67 @@
+package com.hendrik.http;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.hendrik.http.resource.FileCache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FileCacheTest {
+
+    private static void load(final FileCache cache, final Path path, final int size) {
+        if (cache.get(path) == null) {
+            cache.put(path, new byte[size], cache.beginLoad());
+        }
+    }
+
+    @Test
+    public void testHotFilesSurviveOneOffFiles() {
+
+        FileCache cache = new FileCache(100 * 1024);
+
+        for (int access = 0; access < 4; access++) {
+            for (int i = 0; i < 8; i++) {
+                load(cache, Paths.get("/hot/" + i), 10 * 1024);
+            }
+        }
+
+        for (int i = 0; i < 20; i++) {
+            load(cache, Paths.get("/once/" + i), 10 * 1024);
+        }
+
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertNotNull(cache.get(Paths.get("/hot/" + i)));
+        }
+        Assertions.assertTrue(cache.getRejectedCount() > 0);
+        Assertions.assertTrue(cache.getSize() <= cache.getCapacity());
+        Assertions.assertTrue(cache.getHitCount() >= 3 * 8);
+    }
+
+    @Test
+    public void testInvalidate() {
+
+        FileCache cache = new FileCache(100 * 1024);
+        Path file = Paths.get("/dir/file.txt");
+        Path other = Paths.get("/dir/sub/other.txt");
+
+        load(cache, file, 100);
+        load(cache, other, 100);
+        Assertions.assertNotNull(cache.get(file));
+
+        cache.invalidate(file);
+        Assertions.assertNull(cache.get(file));
+        Assertions.assertNotNull(cache.get(other));
+
+        cache.invalidate(Paths.get("/dir"));
+        Assertions.assertNull(cache.get(other));
+        Assertions.assertEquals(0, cache.getSize());
+
+        // A file that changed while it was loaded is not cached
+        long stamp = cache.beginLoad();
+        cache.invalidate(file);
+        cache.put(file, new byte[100], stamp);
+        Assertions.assertNull(cache.get(file));
+    }
+}
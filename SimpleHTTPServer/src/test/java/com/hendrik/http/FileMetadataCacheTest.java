@@ -0,0 +1,55 @@
+package com.hendrik.http;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.hendrik.http.resource.FileMetadata;
+import com.hendrik.http.resource.FileMetadataCache;
+import com.hendrik.http.resource.MimeTypes;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FileMetadataCacheTest {
+
+    @Test
+    public void testMetadataFollowsInvalidation() {
+
+        try {
+            Path file = Files.createTempFile("metadata", ".html");
+            Files.write(file, "Hello".getBytes());
+
+            FileMetadata metadata = FileMetadataCache.get(file);
+            Assertions.assertTrue(metadata.exists());
+            Assertions.assertFalse(metadata.isDirectory());
+            Assertions.assertEquals(5, metadata.getLength());
+            Assertions.assertEquals("text/html; charset=utf-8", metadata.getContentType());
+            Assertions.assertSame(metadata, FileMetadataCache.get(file));
+
+            Files.write(file, "Hello World".getBytes());
+            FileMetadataCache.invalidate(file);
+            Assertions.assertEquals(11, FileMetadataCache.get(file).getLength());
+
+            Files.delete(file);
+            FileMetadataCache.invalidate(file);
+            Assertions.assertFalse(FileMetadataCache.get(file).exists());
+
+            FileMetadata parent = FileMetadataCache.get(file.getParent());
+            Assertions.assertTrue(parent.isDirectory());
+            Assertions.assertNull(parent.getContentType());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testContentTypes() {
+        Assertions.assertEquals("text/html; charset=utf-8", MimeTypes.getContentType("index.HTML"));
+        Assertions.assertEquals("image/png; charset=utf-8", MimeTypes.getContentType("a.b.png"));
+        Assertions.assertEquals("text/plain; charset=utf-8", MimeTypes.getContentType("README"));
+        Assertions.assertEquals("text/plain; charset=utf-8", MimeTypes.getContentType("archive."));
+        Assertions.assertEquals("text/plain; charset=utf-8", MimeTypes.getContentType("file.unknown"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.hendrik.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MultipartReaderTest {
+
+    private static final String FORM = "preamble\r\n"
+        + "--XyZ\r\n"
+        + "Content-Disposition: form-data; name=\"username\"\r\n\r\n"
+        + "Hendrik\r\n"
+        + "--XyZ\r\n"
+        + "Content-Disposition: form-data; name=\"upload\"; filename=\"a.bin\"\r\n"
+        + "Content-Type: application/octet-stream\r\n\r\n"
+        + "\r\n--X\r\n--Xy binary\r\n"
+        + "--XyZ\r\n"
+        + "content-disposition: form-data; name=comment\r\n\r\n"
+        + "Hello\r\nWall\r\n"
+        + "--XyZ--\r\n"
+        + "epilogue";
+
+    /**
+     * Creates a stream that returns at most a few bytes per read, so delimiters are split across reads
+     *
+     * @param data The stream's content
+     * @return The stream
+     */
+    private static InputStream trickle(final String data) {
+        return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(final byte[] bytes, final int offset, final int length) {
+                return super.read(bytes, offset, Math.min(length, 3));
+            }
+        };
+    }
+
+    @Test
+    public void testBoundary() {
+        Assertions.assertEquals("XyZ", MultipartReader.getBoundary("multipart/form-data;boundary=XyZ"));
+        Assertions.assertEquals("a b", MultipartReader.getBoundary("Multipart/Form-Data; charset=utf-8; boundary=\"a b\""));
+        Assertions.assertNull(MultipartReader.getBoundary("application/x-www-form-urlencoded"));
+        Assertions.assertNull(MultipartReader.getBoundary("multipart/form-data"));
+        Assertions.assertNull(MultipartReader.getBoundary(null));
+    }
+
+    @Test
+    public void testPartsAreStreamed() {
+
+        try {
+            MultipartReader reader = new MultipartReader(trickle(FORM), "XyZ", 1024);
+
+            MultipartReader.Part username = reader.nextPart();
+            Assertions.assertEquals("username", username.getName());
+            Assertions.assertNull(username.getFileName());
+            Assertions.assertEquals("Hendrik", username.readString());
+
+            MultipartReader.Part upload = reader.nextPart();
+            Assertions.assertEquals("a.bin", upload.getFileName());
+            Assertions.assertEquals("application/octet-stream", upload.getContentType());
+
+            // The upload's content is skipped without being read
+            MultipartReader.Part comment = reader.nextPart();
+            Assertions.assertEquals("comment", comment.getName());
+            Assertions.assertEquals("Hello\r\nWall", comment.readString());
+            Assertions.assertEquals(-1, upload.getContent().read());
+
+            Assertions.assertNull(reader.nextPart());
+            Assertions.assertNull(reader.nextPart());
+
+            MultipartReader binary = new MultipartReader(trickle(FORM), "XyZ", 1024);
+            binary.nextPart();
+            Assertions.assertEquals("\r\n--X\r\n--Xy binary", binary.nextPart().readString());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testInvalidPayloads() {
+
+        try {
+            MultipartReader tooLarge = new MultipartReader(trickle(FORM), "XyZ", 4);
+            MultipartReader.Part username = tooLarge.nextPart();
+            Assertions.assertThrows(IOException.class, () -> username.readString());
+
+            MultipartReader truncated = new MultipartReader(trickle(FORM.substring(0, 100)), "XyZ", 1024);
+            truncated.nextPart();
+            Assertions.assertThrows(IOException.class, () -> truncated.nextPart());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.hendrik.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PipeliningTest {
+
+    /**
+     * More requests than fit into one batch of pipelined responses
+     */
+    private static final int REQUEST_COUNT = 3 * HTTPServer.MAX_PIPELINE_DEPTH + 5;
+
+    @Test
+    public void testPipeliningBeyondBatchWithEventLoop() {
+
+        try {
+            EventLoop loop = new EventLoop(0, Executors.newFixedThreadPool(2));
+            loop.setDaemon(true);
+            loop.start();
+
+            Assertions.assertEquals(REQUEST_COUNT, countPipelinedResponses(loop::register));
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testPipeliningBeyondBatchWithThreads() {
+
+        try {
+            Assertions.assertEquals(REQUEST_COUNT, countPipelinedResponses(channel -> new Thread(new ConnectionThread(channel.socket())).start()));
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testPipelinedConditionalRequestsWithEventLoop() {
+
+        try {
+            EventLoop loop = new EventLoop(0, Executors.newFixedThreadPool(2));
+            loop.setDaemon(true);
+            loop.start();
+
+            assertConditionalResponsesAreFramed(loop::register);
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testPipelinedConditionalRequestsWithThreads() {
+
+        try {
+            assertConditionalResponsesAreFramed(channel -> new Thread(new ConnectionThread(channel.socket())).start());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    /**
+     * Pipelines conditional requests whose entity tag matches between unconditional ones and reads the responses
+     * the way a client does: a 304 response ends with its header, all other responses after Content-Length bytes
+     *
+     * @param serve Serves the server side of the connection
+     * @throws IOException Thrown if the connection cannot be established
+     */
+    private static void assertConditionalResponsesAreFramed(final Consumer<SocketChannel> serve) throws IOException {
+
+        String etag = ResponseBuilder.respond(new Request(new ByteArrayInputStream("GET /Test1/root.html HTTP/1.1".getBytes())))
+            .getHeaderValues(HeaderFields.Field.ENTITIY_TAG).get().get(0);
+
+        String requests = "GET /Test1/root.html HTTP/1.1\r\nHost: localhost\r\nIf-None-Match: " + etag + "\r\n\r\n"
+            + "GET /Test1/root.html HTTP/1.1\r\nHost: localhost\r\n\r\n"
+            + "GET /Test1/root.html HTTP/1.1\r\nHost: localhost\r\nIf-None-Match: " + etag + "\r\n\r\n"
+            + "GET /Test1/root.html HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n";
+
+        String responses = exchange(serve, requests);
+        String[] expectedStatusLines = { "HTTP/1.1 304 Not Modified", "HTTP/1.1 200 OK", "HTTP/1.1 304 Not Modified", "HTTP/1.1 200 OK" };
+
+        int responseStart = 0;
+        for (String expectedStatusLine : expectedStatusLines) {
+            Assertions.assertTrue(responses.startsWith(expectedStatusLine + "\r\n", responseStart));
+
+            int headerEnd = responses.indexOf("\r\n\r\n", responseStart) + 4;
+            String header = responses.substring(responseStart, headerEnd);
+            int contentLength = 0;
+            if (!expectedStatusLine.contains("304")) {
+                int lengthStart = header.indexOf("Content-Length: ") + "Content-Length: ".length();
+                contentLength = Integer.parseInt(header.substring(lengthStart, header.indexOf("\r\n", lengthStart)));
+            }
+            responseStart = headerEnd + contentLength;
+        }
+        Assertions.assertEquals(responses.length(), responseStart);
+    }
+
+    /**
+     * Sends all requests in a single write and counts the responses until the server closes the connection
+     *
+     * @param serve Serves the server side of the connection
+     * @return The number of received responses
+     * @throws IOException Thrown if the connection cannot be established
+     */
+    private static int countPipelinedResponses(final Consumer<SocketChannel> serve) throws IOException {
+
+        StringBuilder requests = new StringBuilder();
+        for (int i = 1; i < REQUEST_COUNT; i++) {
+            requests.append("GET /Test1/root.html HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        }
+        requests.append("GET /Test1/root.html HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+
+        String responses = exchange(serve, requests.toString());
+        int count = 0;
+        for (int index = responses.indexOf("HTTP/1.1 200 OK"); index != -1; index = responses.indexOf("HTTP/1.1 200 OK", index + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Sends the requests in a single write and receives the responses until the server closes the connection
+     *
+     * @param serve Serves the server side of the connection
+     * @param requests The pipelined requests
+     * @return The received responses
+     * @throws IOException Thrown if the connection cannot be established
+     */
+    private static String exchange(final Consumer<SocketChannel> serve, final String requests) throws IOException {
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress())) {
+                serve.accept(server.accept());
+
+                client.write(ByteBuffer.wrap(requests.getBytes(StandardCharsets.ISO_8859_1)));
+
+                // Responses that never arrive end the read after the timeout
+                client.socket().setSoTimeout(5000);
+                InputStream input = client.socket().getInputStream();
+                ByteArrayOutputStream received = new ByteArrayOutputStream();
+                byte[] chunk = new byte[8192];
+                try {
+                    int read;
+                    while ((read = input.read(chunk)) != -1) {
+                        received.write(chunk, 0, read);
+                    }
+                } catch (SocketTimeoutException ex) {
+                    System.out.println("Not all pipelined requests were answered");
+                }
+
+                return new String(received.toByteArray(), StandardCharsets.ISO_8859_1);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.hendrik.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RangeTest {
+
+    private static Response respond(final String request) throws IOException {
+        return new ResponseBuilder(new Request(new ByteArrayInputStream(request.getBytes()))).setEtag().setRange().build();
+    }
+
+    @Test
+    public void testParseRanges() {
+
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-4,7-,-3,100-200", 13);
+        Assertions.assertEquals(3, ranges.size());
+        Assertions.assertEquals("bytes 0-4/13", ranges.get(0).toContentRange(13));
+        Assertions.assertEquals("bytes 7-12/13", ranges.get(1).toContentRange(13));
+        Assertions.assertEquals("bytes 10-12/13", ranges.get(2).toContentRange(13));
+
+        Assertions.assertTrue(ByteRange.parse("bytes=13-", 13).isEmpty());
+        Assertions.assertNull(ByteRange.parse("bytes=5-2", 13));
+        Assertions.assertNull(ByteRange.parse("lines=1-2", 13));
+    }
+
+    @Test
+    public void testSingleRange() {
+
+        try {
+            Response response = respond("GET /Test1/plaintext.txt HTTP/1.1\nRange: bytes=6-10");
+            Assertions.assertEquals(HeaderFields.StatusCode.PARTIAL_CONTENT, response.getStatusCode());
+            Assertions.assertEquals("Content-Range: bytes 6-10/13", response.getHeaderLine(HeaderFields.Field.CONTENT_RANGE).get());
+            Assertions.assertEquals("Content-Length: 5", response.getHeaderLine(HeaderFields.Field.CONTENT_LENGTH).get());
+            Assertions.assertArrayEquals("World".getBytes(), response.getData());
+            Assertions.assertEquals("Vary: Accept-Encoding", response.getHeaderLine(HeaderFields.Field.VARY).get());
+
+            Response unsatisfiable = respond("GET /Test1/plaintext.txt HTTP/1.1\nRange: bytes=20-30");
+            Assertions.assertEquals(HeaderFields.StatusCode.RANGE_NOT_SATISFIABLE, unsatisfiable.getStatusCode());
+            Assertions.assertEquals("Content-Range: bytes */13", unsatisfiable.getHeaderLine(HeaderFields.Field.CONTENT_RANGE).get());
+
+            Response full = respond("GET /Test1/plaintext.txt HTTP/1.1");
+            Assertions.assertEquals("Accept-Ranges: bytes", full.getHeaderLine(HeaderFields.Field.ACCEPT_RANGES).get());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testIfRange() {
+
+        try {
+            Response outdated = respond("GET /Test1/plaintext.txt HTTP/1.1\nRange: bytes=0-4\nIf-Range: 12345");
+            Assertions.assertEquals(HeaderFields.StatusCode.OK, outdated.getStatusCode());
+            Assertions.assertArrayEquals("Hello World!\n".getBytes(), outdated.getData());
+
+            String etag = outdated.getHeaderValues(HeaderFields.Field.ENTITIY_TAG).get().get(0);
+            Response current = respond("GET /Test1/plaintext.txt HTTP/1.1\nRange: bytes=0-4\nIf-Range: " + etag);
+            Assertions.assertEquals(HeaderFields.StatusCode.PARTIAL_CONTENT, current.getStatusCode());
+            Assertions.assertArrayEquals("Hello".getBytes(), current.getData());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testMultipleRanges() {
+
+        try {
+            Response response = respond("GET /Test1/plaintext.txt HTTP/1.1\nRange: bytes=0-4, -6");
+            Assertions.assertEquals(HeaderFields.StatusCode.PARTIAL_CONTENT, response.getStatusCode());
+
+            String contentType = response.getHeaderValues(HeaderFields.Field.CONTENT_TYPE).get().get(0);
+            Assertions.assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+            String boundary = contentType.substring(contentType.indexOf('=') + 1);
+
+            String expected = "--" + boundary + "\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Range: bytes 0-4/13\r\n\r\nHello"
+                + "\r\n--" + boundary + "\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Range: bytes 7-12/13\r\n\r\norld!\n"
+                + "\r\n--" + boundary + "--\r\n";
+            Assertions.assertEquals(expected, new String(response.getData()));
+            Assertions.assertEquals("Content-Length: " + expected.length(), response.getHeaderLine(HeaderFields.Field.CONTENT_LENGTH).get());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+}
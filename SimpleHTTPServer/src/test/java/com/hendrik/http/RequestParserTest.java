@@ -0,0 +1,253 @@
+package com.hendrik.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RequestParserTest {
+
+    private static void feed(final RequestParser parser, final String data) {
+        parser.getBuffer().put(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testParseRequestLineAndHeaders() {
+
+        try {
+            RequestParser parser = new RequestParser();
+            feed(parser, "get /Test1/root.html HTTP/1.1\r\nconnection:  close\r\nX-Unknown: ignored\r\nIf-None-Match: 1, 2 ,3\r\n\r\n");
+
+            Request request = parser.parse(false);
+            Assertions.assertNotNull(request);
+            Assertions.assertEquals(HeaderFields.RequestMethod.GET, request.getMethod());
+            Assertions.assertEquals("/Test1/root.html", request.getURI());
+            Assertions.assertEquals("HTTP/1.1", request.getVersion());
+            Assertions.assertEquals("Connection: close", request.getHeaderLine(HeaderFields.Field.CONNECTION).get());
+            Assertions.assertEquals(3, request.getHeaderValues(HeaderFields.Field.IF_NONE_MATCH).get().size());
+            Assertions.assertEquals("3", request.getHeaderValues(HeaderFields.Field.IF_NONE_MATCH).get().get(2));
+            Assertions.assertFalse(parser.hasBufferedBytes());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testIncompleteRequest() {
+
+        try {
+            RequestParser parser = new RequestParser();
+            feed(parser, "HEAD / HTTP/1.1\r\nConnec");
+            Assertions.assertNull(parser.parse(false));
+
+            feed(parser, "tion: close\r\n");
+            Assertions.assertNull(parser.parse(false));
+
+            feed(parser, "\r\n");
+            Request request = parser.parse(false);
+            Assertions.assertNotNull(request);
+            Assertions.assertEquals(HeaderFields.RequestMethod.HEAD, request.getMethod());
+            Assertions.assertTrue(request.getHeaderLine(HeaderFields.Field.CONNECTION).isPresent());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testLeftoverBytesBelongToNextRequest() {
+
+        try {
+            RequestParser parser = new RequestParser();
+            feed(parser, "GET /first HTTP/1.1\r\n\r\nGET /second HTTP/1.1\r\n\r\nGET /thi");
+
+            Assertions.assertEquals("/first", parser.parse(false).getURI());
+            Assertions.assertEquals("/second", parser.parse(false).getURI());
+            Assertions.assertNull(parser.parse(false));
+            Assertions.assertTrue(parser.hasBufferedBytes());
+
+            feed(parser, "rd HTTP/1.1\n\n");
+            Assertions.assertEquals("/third", parser.parse(false).getURI());
+            Assertions.assertFalse(parser.hasBufferedBytes());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testHeaderTooLarge() {
+
+        RequestParser parser = new RequestParser(32);
+        feed(parser, "GET /a/very/long/path HTTP/1.1\r\n");
+
+        Assertions.assertThrows(IOException.class, () -> parser.parse(false));
+    }
+
+    @Test
+    public void testFieldForBytes() {
+
+        byte[] line = "xxIF-MODIFIED-SINCExx".getBytes(StandardCharsets.US_ASCII);
+        Assertions.assertEquals(HeaderFields.Field.IF_MODIFIED_SINCE, HeaderFields.getFieldForBytes(line, 2, 17));
+        Assertions.assertNull(HeaderFields.getFieldForBytes(line, 2, 16));
+
+        Assertions.assertEquals(HeaderFields.Field.ENTITIY_TAG, HeaderFields.getFieldForString("etag"));
+        Assertions.assertEquals(HeaderFields.Field.VARY, HeaderFields.getFieldForString("VARY"));
+        Assertions.assertNull(HeaderFields.getFieldForString("X-Some-Very-Long-Unsupported-Field"));
+    }
+
+    @Test
+    public void testHeaderIsReusedPerRequest() {
+
+        try {
+            RequestParser parser = new RequestParser();
+            feed(parser, "GET /first HTTP/1.1\r\nConnection: keep-alive\r\nRange: bytes=0-1\r\nRange: bytes=2-3\r\n\r\n"
+                + "GET /second HTTP/1.1\r\nIf-Match: a\r\n\r\n");
+
+            Request first = parser.parse(false);
+            Assertions.assertEquals("bytes=2-3", first.getHeaderValues(HeaderFields.Field.RANGE).get().get(0));
+            Assertions.assertEquals(1, first.getHeaderValues(HeaderFields.Field.RANGE).get().size());
+
+            Request second = parser.parse(false);
+            Assertions.assertFalse(second.getHeaderValues(HeaderFields.Field.CONNECTION).isPresent());
+            Assertions.assertFalse(second.getHeaderValues(HeaderFields.Field.RANGE).isPresent());
+            Assertions.assertEquals("If-Match: a", second.getHeaderLine(HeaderFields.Field.IF_MATCH).get());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testBodyIsReadByContentLength() {
+
+        try {
+            RequestParser parser = new RequestParser();
+            feed(parser, "PUT /upload HTTP/1.1\r\nContent-Length: 11\r\n\r\nhello");
+            Assertions.assertNull(parser.parse(false));
+            Assertions.assertFalse(parser.hasBufferedBytes());
+
+            feed(parser, " worldGET /next HTTP/1.1\r\n\r\n");
+            Assertions.assertEquals("/upload", parser.parse(false).getURI());
+            Assertions.assertEquals("/next", parser.parse(false).getURI());
+            Assertions.assertFalse(parser.hasBufferedBytes());
+
+            feed(parser, "PUT /cut HTTP/1.1\r\nContent-Length: 11\r\n\r\nhello");
+            Assertions.assertThrows(IOException.class, () -> parser.parse(true));
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testChunkedBody() {
+
+        try {
+            byte[] chunked = "5;name=value\r\nhello\r\n6\r\n world\r\n0\r\nX-Trailer: ignored\r\n\r\nGET".getBytes(StandardCharsets.US_ASCII);
+
+            RequestBodyReader reader = new RequestBodyReader(-1);
+            int consumed = reader.read(chunked, 0, 10);
+            consumed += reader.read(chunked, consumed, chunked.length - consumed);
+
+            Assertions.assertTrue(reader.isComplete());
+            Assertions.assertEquals(chunked.length - 3, consumed);
+            Assertions.assertEquals("hello world", readBody(reader.getBody()));
+
+            Assertions.assertThrows(IOException.class, () -> new RequestBodyReader(-1).read("zz\r\n".getBytes(), 0, 4));
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testLargeBodyIsSpilled() {
+
+        try {
+            RequestBodyReader.configure(8, 64);
+
+            RequestBodyReader small = new RequestBodyReader(8);
+            small.read("12345678".getBytes(), 0, 8);
+            Assertions.assertFalse(small.getBody().isSpilled());
+
+            RequestBodyReader large = new RequestBodyReader(12);
+            large.read("12345678".getBytes(), 0, 8);
+            large.read("9012".getBytes(), 0, 4);
+            Assertions.assertTrue(large.isComplete());
+            Assertions.assertTrue(large.getBody().isSpilled());
+            Assertions.assertEquals("123456789012", readBody(large.getBody()));
+            large.getBody().release();
+
+            RequestParser parser = new RequestParser();
+            feed(parser, "PUT / HTTP/1.1\r\nContent-Length: 65\r\n\r\n");
+            Assertions.assertThrows(IOException.class, () -> parser.parse(false));
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        } finally {
+            RequestBodyReader.configure(RequestBodyReader.DEFAULT_SPILL_THRESHOLD, RequestBodyReader.DEFAULT_MAX_SIZE);
+        }
+    }
+
+    @Test
+    public void testUnfinishedBodyIsReleased() {
+
+        try {
+            RequestBodyReader.configure(8, 64);
+            String unfinished = "PUT / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n10\r\n0123456789abcdef\r\n";
+            long spilledBefore = countSpilledBodies();
+
+            RequestParser broken = new RequestParser();
+            feed(broken, unfinished);
+            Assertions.assertNull(broken.parse(false));
+            Assertions.assertEquals(spilledBefore + 1, countSpilledBodies());
+
+            feed(broken, "zz\r\n");
+            RequestException invalid = Assertions.assertThrows(RequestException.class, () -> broken.parse(false));
+            Assertions.assertEquals(HeaderFields.StatusCode.BADREQUEST, invalid.getStatusCode());
+            Assertions.assertEquals(spilledBefore, countSpilledBodies());
+
+            RequestParser closed = new RequestParser();
+            feed(closed, unfinished);
+            Assertions.assertNull(closed.parse(false));
+            closed.close();
+            Assertions.assertEquals(spilledBefore, countSpilledBodies());
+
+            RequestParser tooLarge = new RequestParser();
+            feed(tooLarge, "PUT / HTTP/1.1\r\nContent-Length: 65\r\n\r\n");
+            RequestException rejected = Assertions.assertThrows(RequestException.class, () -> tooLarge.parse(false));
+            Assertions.assertEquals(HeaderFields.StatusCode.PAYLOAD_TOO_LARGE, rejected.getStatusCode());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        } finally {
+            RequestBodyReader.configure(RequestBodyReader.DEFAULT_SPILL_THRESHOLD, RequestBodyReader.DEFAULT_MAX_SIZE);
+        }
+    }
+
+    private static long countSpilledBodies() throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().matches("request.*\\.body")).count();
+        }
+    }
+
+    private static String readBody(final RequestBody body) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream input = body.openStream()) {
+            int value;
+            while ((value = input.read()) != -1) {
+                output.write(value);
+            }
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -1,9 +1,17 @@
 package com.hendrik.http;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
+import com.hendrik.http.resource.Renderer;
 import com.hendrik.http.resource.Resource;
+import com.hendrik.http.resource.WallPageCache;
+import com.hendrik.http.resource.WallResource;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -118,4 +126,186 @@ public class ResourceTest {
         Assertions.assertEquals("text/plain; charset=utf-8", umlauteExisting.getContentType());
         Assertions.assertEquals("text/html; charset=utf-8", rootHTML.getContentType());
     }
+
+    @Test
+    public void testPagedDirectoryListing() {
+
+        try {
+            Resource firstPage = Resource.createFromURI("/Test2?sort=name&limit=1");
+            String firstPageHTML = new String(firstPage.getData(), "UTF-8");
+            Assertions.assertTrue(firstPageHTML.contains(">File With Spaces.txt<"));
+            Assertions.assertFalse(firstPageHTML.contains(">Test21<"));
+            Assertions.assertTrue(firstPageHTML.contains("/Test2?offset=1&limit=1&sort=name"));
+            Assertions.assertNull(firstPage.getETag());
+
+            Resource lastPage = Resource.createFromURI("/Test2?sort=name&order=desc&offset=1&limit=1");
+            String lastPageHTML = new String(lastPage.getData(), "UTF-8");
+            Assertions.assertTrue(lastPageHTML.contains(">File With Spaces.txt<"));
+            Assertions.assertFalse(lastPageHTML.contains(">Test21<"));
+            Assertions.assertFalse(lastPageHTML.contains("Next page"));
+
+            // HTTP/1.0 clients get the page as a whole, so HEAD describes it with a Content-Length instead of chunks
+            Response get = ResponseBuilder.respond(new Request(new ByteArrayInputStream("GET /Test2?sort=name&limit=1 HTTP/1.0".getBytes())));
+            Response head = ResponseBuilder.respond(new Request(new ByteArrayInputStream("HEAD /Test2?sort=name&limit=1 HTTP/1.0".getBytes())));
+            Assertions.assertFalse(head.getHeaderLine(HeaderFields.Field.TRANSFER_ENCODING).isPresent());
+            Assertions.assertEquals("Content-Length: " + get.getData().length, head.getHeaderLine(HeaderFields.Field.CONTENT_LENGTH).get());
+            Assertions.assertEquals(0, head.getData().length);
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testLargeDirectoryListingIsStreamed() {
+
+        Path large = null;
+        try {
+            large = Files.createTempDirectory(Paths.get(HTTPServer.getRootDirectory()), "large");
+            for (int i = 0; i < 1001; i++) {
+                Files.createFile(large.resolve("entry" + i + ".txt"));
+            }
+            String uri = "/" + large.getFileName();
+
+            // The complete listing of a large directory is generated while it is sent, without entity tag
+            Resource listing = Resource.createFromURI(uri);
+            Assertions.assertTrue(listing.isRendered());
+            Assertions.assertNull(listing.getETag());
+            Assertions.assertTrue(listing.getBody() instanceof ChunkedBody);
+            String listingHTML = new String(listing.getData(), "UTF-8");
+            Assertions.assertTrue(listingHTML.contains(">entry0.txt<"));
+            Assertions.assertTrue(listingHTML.contains(">entry1000.txt<"));
+            Assertions.assertFalse(listingHTML.contains("Next page"));
+
+            // Small directories still get the complete listing as a whole
+            Files.delete(large.resolve("entry1000.txt"));
+            Resource smallListing = Resource.createFromURI(uri);
+            Assertions.assertFalse(smallListing.isRendered());
+            Assertions.assertNotNull(smallListing.getETag());
+            Assertions.assertFalse(new String(smallListing.getData(), "UTF-8").contains(">entry1000.txt<"));
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        } finally {
+            deleteDirectory(large);
+        }
+    }
+
+    /**
+     * Deletes a directory and its children
+     *
+     * @param directory The directory to delete. Nothing happens if it is null
+     */
+    private static void deleteDirectory(final Path directory) {
+
+        if (directory == null) {
+            return;
+        }
+
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+            for (Path child : children) {
+                Files.delete(child);
+            }
+            Files.delete(directory);
+        } catch (IOException ex) {
+            System.out.println("Test directory could not be deleted: " + ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testRendererFillsBoundedChunks() {
+
+        try {
+            Renderer renderer = new Renderer() {
+                private int step = 0;
+
+                @Override
+                protected boolean render(final StringBuilder out) {
+                    if (this.step == 3000) {
+                        return false;
+                    }
+                    out.append("<p>").append(this.step++).append("</p>");
+                    return true;
+                }
+            };
+
+            int total = 0;
+            byte[] part;
+            while ((part = renderer.next()) != null) {
+                Assertions.assertTrue(part.length < ChunkedBody.CHUNK_SIZE + 16);
+                total += part.length;
+            }
+            Assertions.assertEquals(3000 * 7 + 10 + 180 + 2700 + 8000, total);
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testDataIsGeneratedOnce() {
+
+        try {
+            int[] generated = {0};
+            Resource resource = new Resource(null) {
+                @Override
+                public byte[] getData() {
+                    generated[0]++;
+                    return "generated".getBytes();
+                }
+
+                @Override
+                public String getContentType() {
+                    return "text/plain; charset=utf-8";
+                }
+            };
+
+            Assertions.assertNotNull(resource.getETag());
+            Assertions.assertEquals(9, resource.getLength());
+            Assertions.assertEquals(9, resource.getBody().getLength());
+            Assertions.assertEquals(1, generated[0]);
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testWallPages() {
+
+        try {
+            Assertions.assertTrue(Resource.createFromURI("/Wally") instanceof WallResource);
+            Assertions.assertTrue(Resource.createFromURI("/Wally?before=5f1d7a3e9c1b2a0001a1b2c3") instanceof WallResource);
+
+            Assertions.assertNull(WallResource.parseBefore(null));
+            Assertions.assertNull(WallResource.parseBefore("page=2"));
+            Assertions.assertEquals("5f1d7a3e9c1b2a0001a1b2c3", WallResource.parseBefore("x=1&before=5f1d7a3e9c1b2a0001a1b2c3"));
+        } catch (UnsupportedEncodingException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testWallPagesAreCachedPerVersion() {
+
+        try {
+            byte[] page = "<html>page</html>".getBytes();
+            WallPageCache.Page cached = WallPageCache.put("test-before", 7, page);
+
+            Assertions.assertSame(cached, WallPageCache.get("test-before", 7));
+            Assertions.assertEquals(32, cached.getETag().length());
+            Assertions.assertNull(WallPageCache.get("test-before", 8));
+            Assertions.assertNull(WallPageCache.get("other-before", 7));
+
+            // A page rendered from older comments does not replace a newer one
+            WallPageCache.put("test-before", 6, "<html>old</html>".getBytes());
+            Assertions.assertSame(cached, WallPageCache.get("test-before", 7));
+
+            Assertions.assertNotEquals(cached.getETag(), WallPageCache.put("test-before", 8, "<html>new</html>".getBytes()).getETag());
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
 }
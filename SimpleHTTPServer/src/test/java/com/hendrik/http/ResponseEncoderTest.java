@@ -0,0 +1,133 @@
+package com.hendrik.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ResponseEncoderTest {
+
+    private static Response createResponse(final byte[] body) {
+        Header header = new Header();
+        header.addEntry(HeaderFields.Field.CONTENT_LENGTH, String.valueOf(body.length));
+        return new Response(HeaderFields.StatusCode.OK, header, body);
+    }
+
+    private static String concat(final List<ResponseBody> parts) {
+        StringBuilder result = new StringBuilder();
+        for (ResponseBody part : parts) {
+            result.append(StandardCharsets.ISO_8859_1.decode(((BufferBody) part).getBuffer().duplicate()));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testEncodeSmallResponse() {
+        ResponseEncoder encoder = new ResponseEncoder();
+        encoder.encode(createResponse("Hello".getBytes()));
+
+        List<ResponseBody> parts = encoder.finish();
+        Assertions.assertEquals(1, parts.size());
+        Assertions.assertEquals("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nHello", concat(parts));
+    }
+
+    @Test
+    public void testEncodeGeneralFields() {
+        Header header = new Header();
+        header.addEntry(HeaderFields.Field.CONTENT_LENGTH, "5");
+        Response response = new Response(HeaderFields.StatusCode.OK, header, new BufferBody("Hello".getBytes()), true);
+
+        ResponseEncoder encoder = new ResponseEncoder();
+        encoder.encode(response);
+        String encoded = concat(encoder.finish());
+        String date = ServerClock.getDate();
+
+        Assertions.assertTrue(encoded.equals("HTTP/1.1 200 OK\r\nContent-Length: 5\r\nServer: " + HTTPServer.getServerInfo()
+            + "\r\nDate: " + date + "\r\n\r\nHello") || !date.equals(ServerClock.getDate()));
+        Assertions.assertTrue(date.endsWith(" GMT"));
+        Assertions.assertEquals("Server: " + HTTPServer.getServerInfo(), response.getHeaderLine(HeaderFields.Field.SERVER).get());
+    }
+
+    @Test
+    public void testEncodeBatch() {
+        byte[] largeBody = new byte[64 * 1024];
+        Arrays.fill(largeBody, (byte) 'x');
+
+        ResponseEncoder encoder = new ResponseEncoder();
+        encoder.encode(createResponse("first".getBytes()));
+        encoder.encode(createResponse(largeBody));
+        encoder.encode(createResponse("last".getBytes()));
+
+        String encoded = concat(encoder.finish());
+        Assertions.assertTrue(encoded.startsWith("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nfirstHTTP/1.1 200 OK\r\nContent-Length: 65536\r\n\r\nxxx"));
+        Assertions.assertTrue(encoded.endsWith("xxxHTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\nlast"));
+
+        encoder.reset();
+        encoder.encode(createResponse("again".getBytes()));
+        Assertions.assertEquals("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nagain", concat(encoder.finish()));
+    }
+
+    @Test
+    public void testWriteFileBody() {
+
+        try {
+            File file = new File(HTTPServer.getRootDirectory() + "/Test2/Test21/subfolder.txt");
+            Header header = new Header();
+            header.addEntry(HeaderFields.Field.CONTENT_LENGTH, String.valueOf(file.length()));
+
+            ResponseEncoder encoder = new ResponseEncoder();
+            encoder.encode(new Response(HeaderFields.StatusCode.OK, header, new FileRegionBody(file.toPath(), 0, file.length())));
+            encoder.encode(createResponse("next".getBytes()));
+
+            List<ResponseBody> parts = encoder.finish();
+            Assertions.assertEquals(3, parts.size());
+            Assertions.assertTrue(parts.get(1) instanceof FileRegionBody);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ResponseWriter writer = new ResponseWriter();
+            writer.add(parts);
+            writer.writeFully(Channels.newChannel(output));
+            Assertions.assertTrue(writer.isEmpty());
+
+            String expected = "HTTP/1.1 200 OK\r\nContent-Length: " + file.length() + "\r\n\r\n"
+                + new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1)
+                + "HTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\nnext";
+            Assertions.assertEquals(expected, new String(output.toByteArray(), StandardCharsets.ISO_8859_1));
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+
+    @Test
+    public void testChunkedBody() {
+
+        try {
+            byte[] large = new byte[9000];
+            Arrays.fill(large, (byte) 'x');
+            Iterator<byte[]> pieces = Arrays.asList("Hello ".getBytes(), large).iterator();
+
+            ChunkedBody body = new ChunkedBody(() -> pieces.hasNext() ? pieces.next() : null);
+            Assertions.assertEquals(-1, body.getLength());
+
+            String expected = "2000\r\nHello " + new String(large, 0, 8186, StandardCharsets.ISO_8859_1) + "\r\n"
+                + "032e\r\n" + new String(large, 0, 814, StandardCharsets.ISO_8859_1) + "\r\n"
+                + "0\r\n\r\n";
+            Assertions.assertEquals(expected, new String(body.toByteArray(), StandardCharsets.ISO_8859_1));
+
+            ChunkedBody empty = new ChunkedBody(() -> null);
+            Assertions.assertEquals("0\r\n\r\n", new String(empty.toByteArray(), StandardCharsets.ISO_8859_1));
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.hendrik.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SelectorConnectionTest {
+
+    @Test
+    public void testSaturatedWorkersAnswerServiceUnavailable() {
+
+        // The only worker is busy and the queue is full, so the next request cannot be handed over
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(1), new ThreadPoolExecutor.AbortPolicy());
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blocker = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        workers.execute(blocker);
+        workers.execute(blocker);
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            EventLoop loop = new EventLoop(0, workers);
+            loop.setDaemon(true);
+            loop.start();
+
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress())) {
+                loop.register(server.accept());
+                client.write(ByteBuffer.wrap("GET /Test1/root.html HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+
+                String response = readUntilClosed(client);
+                Assertions.assertTrue(response.startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+                Assertions.assertTrue(response.contains("\r\nConnection: close\r\n"));
+            }
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        } finally {
+            release.countDown();
+            workers.shutdown();
+        }
+    }
+
+    @Test
+    public void testSlowBodyDoesNotBlockOtherConnections() {
+
+        CountDownLatch generating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Generates one piece of content once it is released, e.g. like a source reading from a slow disk
+        ChunkedBody.Source slowSource = new ChunkedBody.Source() {
+
+            private boolean generated = false;
+
+            @Override
+            public byte[] next() throws IOException {
+                if (this.generated) {
+                    return null;
+                }
+                generating.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException("Interrupted while generating", ex);
+                }
+                this.generated = true;
+                return "slow content".getBytes(StandardCharsets.ISO_8859_1);
+            }
+        };
+
+        Function<Request, Response> responder = request -> {
+            if (!request.getURI().equals("/slow")) {
+                return ResponseBuilder.respond(request);
+            }
+            Header header = new Header();
+            header.addEntry(HeaderFields.Field.TRANSFER_ENCODING, "chunked");
+            header.addEntry(HeaderFields.Field.CONNECTION, "close");
+            return new Response(HeaderFields.StatusCode.OK, header, new ChunkedBody(slowSource), true);
+        };
+
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            EventLoop loop = new EventLoop(0, workers, responder);
+            loop.setDaemon(true);
+            loop.start();
+
+            try (SocketChannel slowClient = SocketChannel.open(server.getLocalAddress());
+                SocketChannel fastClient = SocketChannel.open(server.getLocalAddress())) {
+
+                loop.register(server.accept());
+                loop.register(server.accept());
+
+                slowClient.write(ByteBuffer.wrap("GET /slow HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+                Assertions.assertTrue(generating.await(5, TimeUnit.SECONDS));
+
+                // The event loop still serves the other connection while the slow body's chunk is generated
+                fastClient.write(ByteBuffer.wrap("GET /Test1/root.html HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.ISO_8859_1)));
+                Assertions.assertTrue(readUntilClosed(fastClient).startsWith("HTTP/1.1 200 OK\r\n"));
+
+                release.countDown();
+                String slowResponse = readUntilClosed(slowClient);
+                Assertions.assertTrue(slowResponse.startsWith("HTTP/1.1 200 OK\r\n"));
+                Assertions.assertTrue(slowResponse.endsWith("000c\r\nslow content\r\n0\r\n\r\n"));
+            }
+        } catch (IOException | InterruptedException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        } finally {
+            release.countDown();
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Reads from a connection until the server closes it
+     *
+     * @param client The client side of the connection
+     * @return The received bytes
+     * @throws IOException Thrown if the server does not close the connection in time
+     */
+    private static String readUntilClosed(final SocketChannel client) throws IOException {
+
+        client.socket().setSoTimeout(5000);
+        InputStream input = client.socket().getInputStream();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = input.read(chunk)) != -1) {
+            received.write(chunk, 0, read);
+        }
+        return new String(received.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,63 @@
+package com.hendrik.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class WorkerPoolTest {
+
+    @Test
+    public void testLoadShedding() {
+
+        WorkerPool pool = new WorkerPool(1, 1);
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            // The first connection occupies the only worker, because it never sends a request
+            SocketChannel busy = SocketChannel.open(server.getLocalAddress());
+            SocketChannel queued = SocketChannel.open(server.getLocalAddress());
+            try (SocketChannel rejected = SocketChannel.open(server.getLocalAddress())) {
+                pool.serve(server.accept());
+                pool.serve(server.accept());
+                Assertions.assertEquals(0, pool.getRejectedCount());
+
+                rejected.write(ByteBuffer.wrap("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+                pool.serve(server.accept());
+                Assertions.assertEquals(1, pool.getRejectedCount());
+
+                rejected.socket().setSoTimeout(5000);
+                InputStream input = rejected.socket().getInputStream();
+                ByteArrayOutputStream received = new ByteArrayOutputStream();
+                byte[] chunk = new byte[1024];
+                int read;
+                while ((read = input.read(chunk)) != -1) {
+                    received.write(chunk, 0, read);
+                }
+
+                String response = new String(received.toByteArray(), StandardCharsets.ISO_8859_1);
+                Assertions.assertTrue(response.startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+                Assertions.assertTrue(response.contains("\r\nRetry-After: 1\r\n"));
+                Assertions.assertTrue(response.contains("\r\nConnection: close\r\n"));
+                Assertions.assertEquals(2, pool.getAcceptedCount());
+            } finally {
+                busy.close();
+                queued.close();
+            }
+        } catch (IOException ex) {
+            // Should not happen
+            Assertions.assertTrue(false);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}